@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class CacheConfig {
+
+	@Value("${cache.bridge-max-size:1000}")
+	private Integer bridgeMaxSize ;
+	
+	//Upper bound on how long a node may use a bridge changed elsewhere if invalidations do not reach it
+	@Value("${cache.bridge-ttl-seconds:300}")
+	private Integer bridgeTtlSeconds ;
+	
+	@Value("${cache.tenant-max-size:10000}")
+	private Integer tenantMaxSize ;
+	
+	@Value("${cache.tenant-ttl-seconds:60}")
+	private Integer tenantTtlSeconds ;
+	
+	//Rejected credentials are answered from memory for this long
+	@Value("${cache.tenant-negative-ttl-seconds:30}")
+	private Integer tenantNegativeTtlSeconds ;
+	
+	//Internal ids of received messages kept per node to answer client retries without a lookup
+	@Value("${cache.recent-keys-max-size:200000}")
+	private Integer recentKeysMaxSize ;
+	
+	@Value("${cache.recent-keys-ttl-minutes:60}")
+	private Integer recentKeysTtlMinutes ;
+	
+	@Value("${cache.invalidation-poll-seconds:5}")
+	private Integer invalidationPollSeconds ;
+	
+	@Value("${cache.invalidation-retention-minutes:60}")
+	private Integer invalidationRetentionMinutes ;
+	
+    public Integer getBridgeMaxSize() {
+    	return this.bridgeMaxSize ;
+    }
+    
+    public Integer getBridgeTtlSeconds() {
+    	return this.bridgeTtlSeconds ;
+    }
+    
+    public Integer getTenantMaxSize() {
+    	return this.tenantMaxSize ;
+    }
+    
+    public Integer getTenantTtlSeconds() {
+    	return this.tenantTtlSeconds ;
+    }
+    
+    public Integer getTenantNegativeTtlSeconds() {
+    	return this.tenantNegativeTtlSeconds ;
+    }
+    
+    public Integer getRecentKeysMaxSize() {
+    	return this.recentKeysMaxSize ;
+    }
+    
+    public Integer getRecentKeysTtlMinutes() {
+    	return this.recentKeysTtlMinutes ;
+    }
+    
+    public Integer getInvalidationPollSeconds() {
+    	return this.invalidationPollSeconds ;
+    }
+    
+    public Integer getInvalidationRetentionMinutes() {
+    	return this.invalidationRetentionMinutes ;
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class CircuitBreakerConfig {
+
+	//Consecutive transient failures of a bridge which open its circuit
+	@Value("${circuit-breaker.failure-threshold:5}")
+	private Integer failureThreshold ;
+	
+	@Value("${circuit-breaker.open-seconds:30}")
+	private Integer openSeconds ;
+	
+    public Integer getFailureThreshold() {
+    	return this.failureThreshold ;
+    }
+    
+    public Integer getOpenSeconds() {
+    	return this.openSeconds ;
+    }
+}
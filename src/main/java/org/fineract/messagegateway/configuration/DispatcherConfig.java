@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.configuration;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class DispatcherConfig {
+
+	//Number of dispatch partitions (one worker thread each). Zero or less means twice the available processors
+	@Value("${dispatcher.worker-threads:0}")
+	private Integer workerThreads ;
+	
+	//Capacity of each queue of a dispatch partition, at least the high-water mark
+	@Value("${dispatcher.queue-capacity:20000}")
+	private Integer queueCapacity ;
+	
+	//Maximum number of messages a node holds for dispatch, POST /sms is answered with 429 beyond it
+	@Value("${dispatcher.high-water-mark:20000}")
+	private Integer highWaterMark ;
+	
+	//Share of the high-water mark promotional messages may fill, the rest is kept for transactional traffic
+	@Value("${dispatcher.promotional-share:0.8}")
+	private Double promotionalShare ;
+	
+	//Transactional messages sent before one waiting promotional message is let through, zero or less means strict priority
+	@Value("${dispatcher.transactional-weight:0}")
+	private Integer transactionalWeight ;
+	
+	//platform: partition workers call the provider themselves, virtual: provider calls run on virtual threads
+	@Value("${dispatcher.mode:platform}")
+	private String mode ;
+	
+	//Upper bound of provider calls in flight per partition when running in virtual mode
+	@Value("${dispatcher.max-in-flight:500}")
+	private Integer maxInFlight ;
+	
+	//Messages a worker takes off its queue at once, they are sent in one request per bridge where the provider supports it
+	@Value("${dispatcher.batch-size:100}")
+	private Integer batchSize ;
+	
+	//Time a worker waits for more messages before sending a batch which is not full, zero sends what is queued right away
+	@Value("${dispatcher.batch-linger-millis:0}")
+	private Integer batchLingerMillis ;
+	
+	@PostConstruct
+	public void init() {
+		//All admitted messages may be for bridges of the same partition, beyond its capacity the request threads would block
+		if(this.highWaterMark > this.queueCapacity) {
+			throw new IllegalStateException("dispatcher.high-water-mark ("+this.highWaterMark
+					+") must not be larger than dispatcher.queue-capacity ("+this.queueCapacity+")") ;
+		}
+	}
+	
+    public Integer getWorkerThreads() {
+    	if(this.workerThreads == null || this.workerThreads <= 0) {
+    		return Runtime.getRuntime().availableProcessors() * 2 ;
+    	}
+    	return this.workerThreads ;
+    }
+    
+    public Integer getQueueCapacity() {
+    	return this.queueCapacity ;
+    }
+    
+    public Integer getHighWaterMark() {
+    	return this.highWaterMark ;
+    }
+    
+    public Integer getPromotionalHighWaterMark() {
+    	return (int) (this.highWaterMark * this.promotionalShare) ;
+    }
+    
+    public Integer getTransactionalWeight() {
+    	return this.transactionalWeight ;
+    }
+    
+    public boolean isVirtualThreadMode() {
+    	return "virtual".equalsIgnoreCase(this.mode) ;
+    }
+    
+    public Integer getMaxInFlight() {
+    	return this.maxInFlight ;
+    }
+    
+    public Integer getBatchSize() {
+    	return Math.max(1, this.batchSize) ;
+    }
+    
+    public Integer getBatchLingerMillis() {
+    	return this.batchLingerMillis ;
+    }
+}
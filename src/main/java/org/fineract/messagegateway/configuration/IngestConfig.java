@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class IngestConfig {
+
+	//Messages of a streamed upload stored together while the rest is still being read
+	@Value("${ingest.chunk-size:1000}")
+	private Integer chunkSize ;
+	
+	//Rejected lines listed in the answer to a streamed upload, further ones are only counted
+	@Value("${ingest.max-reported-rejections:100}")
+	private Integer maxReportedRejections ;
+	
+	//Longest line of a streamed upload in characters, longer lines are rejected without being held
+	@Value("${ingest.max-line-length:8192}")
+	private Integer maxLineLength ;
+	
+    public Integer getChunkSize() {
+    	return Math.max(1, this.chunkSize) ;
+    }
+    
+    public Integer getMaxReportedRejections() {
+    	return this.maxReportedRejections ;
+    }
+    
+    public Integer getMaxLineLength() {
+    	return Math.max(1, this.maxLineLength) ;
+    }
+}
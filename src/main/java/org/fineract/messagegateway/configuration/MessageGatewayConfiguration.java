@@ -19,6 +19,7 @@
 package org.fineract.messagegateway.configuration;
 
 import org.fineract.messagegateway.sms.domain.AbstractPersistableCustom;
+import org.fineract.messagegateway.sms.domain.Campaign;
 import org.fineract.messagegateway.sms.domain.SMSBridge;
 import org.fineract.messagegateway.sms.domain.SMSBridgeConfig;
 import org.fineract.messagegateway.sms.domain.SMSMessage;
@@ -41,6 +42,7 @@ import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 })
 @EntityScan(basePackageClasses = {
 		AbstractPersistableCustom.class,
+        Campaign.class,
         SMSBridge.class,
         SMSBridgeConfig.class,
         SMSMessage.class,
@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.configuration;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.UUID;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class OutboxConfig {
+
+	//Identifies this gateway node in claimed rows. Defaults to host name plus a random suffix
+	@Value("${outbox.node-id:}")
+	private String nodeId ;
+	
+	@Value("${outbox.lease-seconds:300}")
+	private Integer leaseSeconds ;
+	
+	@Value("${outbox.poll-interval-seconds:5}")
+	private Integer pollIntervalSeconds ;
+	
+	@Value("${outbox.claim-batch-size:500}")
+	private Integer claimBatchSize ;
+	
+	//Rows per multi-row INSERT when new messages are written, keep rows * 4 KB text below max_allowed_packet
+	@Value("${outbox.insert-batch-size:200}")
+	private Integer insertBatchSize ;
+	
+	//Rows per INSERT are further cut to about this size. The driver writes in 32 KB chunks without TCP_NODELAY,
+	//a larger statement waits for the server's delayed ACK before its last chunk goes out
+	@Value("${outbox.insert-statement-bytes:24000}")
+	private Integer insertStatementBytes ;
+	
+	//Pending rows read per page when recovering the backlog at startup
+	@Value("${outbox.recovery-page-size:1000}")
+	private Integer recoveryPageSize ;
+	
+	//Pages claimed and loaded in parallel while recovering
+	@Value("${outbox.recovery-threads:4}")
+	private Integer recoveryThreads ;
+	
+    @PostConstruct
+    public void init() {
+    	if(this.nodeId == null || this.nodeId.trim().isEmpty()) {
+    		String host ;
+    		try {
+    			host = InetAddress.getLocalHost().getHostName() ;
+    		} catch (UnknownHostException e) {
+    			host = "node" ;
+    		}
+    		this.nodeId = host + "-" + UUID.randomUUID().toString().substring(0, 8) ;
+    	}
+    }
+    
+    public String getNodeId() {
+    	return this.nodeId ;
+    }
+    
+    public Integer getLeaseSeconds() {
+    	return this.leaseSeconds ;
+    }
+    
+    public Integer getPollIntervalSeconds() {
+    	return this.pollIntervalSeconds ;
+    }
+    
+    public Integer getClaimBatchSize() {
+    	return this.claimBatchSize ;
+    }
+    
+    public Integer getRecoveryPageSize() {
+    	return this.recoveryPageSize ;
+    }
+    
+    public Integer getRecoveryThreads() {
+    	return Math.max(1, this.recoveryThreads) ;
+    }
+    
+    public Integer getInsertBatchSize() {
+    	return this.insertBatchSize ;
+    }
+    
+    public Integer getInsertStatementBytes() {
+    	return this.insertStatementBytes ;
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class ProviderClientConfig {
+
+	//Provider clients kept per provider, least recently used ones are closed first
+	@Value("${provider-client.max-clients:1000}")
+	private Integer maxClients ;
+	
+	@Value("${provider-client.idle-minutes:30}")
+	private Integer idleMinutes ;
+	
+	//Connections per client, a bridge can override it with its Max_Connections configuration
+	@Value("${provider-client.max-connections:20}")
+	private Integer maxConnections ;
+	
+	@Value("${provider-client.connect-timeout-millis:10000}")
+	private Integer connectTimeoutMillis ;
+	
+	@Value("${provider-client.socket-timeout-millis:30500}")
+	private Integer socketTimeoutMillis ;
+	
+	//Threads per provider running the calls of SDKs which only offer blocking calls, unused with dispatcher.mode=virtual
+	@Value("${provider-client.async-threads:64}")
+	private Integer asyncThreads ;
+	
+    public Integer getMaxClients() {
+    	return this.maxClients ;
+    }
+    
+    public Integer getIdleMinutes() {
+    	return this.idleMinutes ;
+    }
+    
+    public Integer getMaxConnections() {
+    	return this.maxConnections ;
+    }
+    
+    public Integer getConnectTimeoutMillis() {
+    	return this.connectTimeoutMillis ;
+    }
+    
+    public Integer getSocketTimeoutMillis() {
+    	return this.socketTimeoutMillis ;
+    }
+    
+    public Integer getAsyncThreads() {
+    	return this.asyncThreads ;
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class RetryConfig {
+
+	//Send attempts per message, a bridge can override it with its Max_Attempts configuration
+	@Value("${retry.max-attempts:5}")
+	private Integer maxAttempts ;
+	
+	@Value("${retry.initial-backoff-millis:2000}")
+	private Integer initialBackoffMillis ;
+	
+	@Value("${retry.max-backoff-seconds:600}")
+	private Integer maxBackoffSeconds ;
+	
+    public Integer getMaxAttempts() {
+    	return this.maxAttempts ;
+    }
+    
+    public Integer getInitialBackoffMillis() {
+    	return this.initialBackoffMillis ;
+    }
+    
+    public Integer getMaxBackoffSeconds() {
+    	return this.maxBackoffSeconds ;
+    }
+}
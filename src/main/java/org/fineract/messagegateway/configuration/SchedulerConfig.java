@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class SchedulerConfig {
+
+	@Value("${scheduler.tick-millis:100}")
+	private Integer tickMillis ;
+	
+	@Value("${scheduler.wheel-size:64}")
+	private Integer wheelSize ;
+	
+	//Messages due within this window are held in memory, the rest stays in the database
+	@Value("${scheduler.window-seconds:120}")
+	private Integer windowSeconds ;
+	
+	@Value("${scheduler.load-interval-seconds:30}")
+	private Integer loadIntervalSeconds ;
+	
+	@Value("${scheduler.max-held:100000}")
+	private Integer maxHeld ;
+	
+    public Integer getTickMillis() {
+    	return this.tickMillis ;
+    }
+    
+    public Integer getWheelSize() {
+    	return this.wheelSize ;
+    }
+    
+    public Integer getWindowSeconds() {
+    	return this.windowSeconds ;
+    }
+    
+    public Integer getLoadIntervalSeconds() {
+    	return this.loadIntervalSeconds ;
+    }
+    
+    public Integer getMaxHeld() {
+    	return this.maxHeld ;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class StatusWriterConfig {
+
+	//Time delivery reports are collected before they are written
+	@Value("${status-writer.linger-millis:20}")
+	private Integer lingerMillis ;
+	
+	@Value("${status-writer.batch-size:500}")
+	private Integer batchSize ;
+	
+	//Callbacks write through themselves once this many messages wait for their update
+	@Value("${status-writer.max-pending:50000}")
+	private Integer maxPending ;
+	
+	//Reports keyed by an external id may arrive before the id is stored, they are retried this long
+	@Value("${status-writer.unmatched-retention-seconds:60}")
+	private Integer unmatchedRetentionSeconds ;
+	
+	//Wait before an unmatched report is tried again, doubled after each try up to unmatched-max-retry-millis
+	@Value("${status-writer.unmatched-retry-millis:250}")
+	private Integer unmatchedRetryMillis ;
+	
+	@Value("${status-writer.unmatched-max-retry-millis:10000}")
+	private Integer unmatchedMaxRetryMillis ;
+	
+    public Integer getLingerMillis() {
+    	return this.lingerMillis ;
+    }
+    
+    public Integer getBatchSize() {
+    	return this.batchSize ;
+    }
+    
+    public Integer getMaxPending() {
+    	return this.maxPending ;
+    }
+    
+    public Integer getUnmatchedRetentionSeconds() {
+    	return this.unmatchedRetentionSeconds ;
+    }
+    
+    public Integer getUnmatchedRetryMillis() {
+    	return Math.max(1, this.unmatchedRetryMillis) ;
+    }
+    
+    public Integer getUnmatchedMaxRetryMillis() {
+    	return Math.max(getUnmatchedRetryMillis(), this.unmatchedMaxRetryMillis) ;
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class SweeperConfig {
+
+	@Value("${sweeper.interval-seconds:60}")
+	private Integer intervalSeconds ;
+	
+	//Messages waiting this long after they were submitted for a delivery report are failed
+	@Value("${sweeper.report-timeout-seconds:172800}")
+	private Integer reportTimeoutSeconds ;
+	
+	//PENDING messages a node leased or renewed this long ago, and has not sent since, are released for the outbox poller.
+	//Keep it above the longest a message may wait for rate limit permits or a request slot plus the provider call,
+	//and below outbox.lease-seconds, beyond it lease expiry comes first
+	@Value("${sweeper.pending-timeout-seconds:120}")
+	private Integer pendingTimeoutSeconds ;
+	
+	//Rows updated per statement, keeps row locks short while reports are being written
+	@Value("${sweeper.batch-size:1000}")
+	private Integer batchSize ;
+	
+    public Integer getIntervalSeconds() {
+    	return this.intervalSeconds ;
+    }
+    
+    public Integer getReportTimeoutSeconds() {
+    	return this.reportTimeoutSeconds ;
+    }
+    
+    public Integer getPendingTimeoutSeconds() {
+    	return this.pendingTimeoutSeconds ;
+    }
+    
+    public Integer getBatchSize() {
+    	return Math.max(1, this.batchSize) ;
+    }
+}
@@ -28,4 +28,16 @@ public interface MessageGatewayConstants {
 	String PROVIDER_ACCOUNT_ID = "Provider_Account_Id" ;
 	
 	String PROVIDER_AUTH_TOKEN = "Provider_Auth_Token" ;
+	
+	String PROVIDER_MAX_TPS = "Max_TPS" ;
+	
+	String PROVIDER_BURST_SIZE = "Burst_Size" ;
+	
+	String PROVIDER_MAX_ATTEMPTS = "Max_Attempts" ;
+	
+	String PROVIDER_MAX_CONNECTIONS = "Max_Connections" ;
+	
+	String PROVIDER_MAX_BATCH_SIZE = "Max_Batch_Size" ;
+	
+	String PROVIDER_SENDER_NUMBERS = "Sender_Numbers" ;
 }
@@ -190,6 +190,22 @@ public class ApiGlobalErrorResponse {
         return globalErrorResponse;
     }
 
+    public static ApiGlobalErrorResponse tooManyRequests(final String globalisationMessageCode, final String defaultUserMessage,
+            final Object... defaultUserMessageArgs) {
+
+        final ApiGlobalErrorResponse globalErrorResponse = new ApiGlobalErrorResponse();
+        globalErrorResponse.setHttpStatusCode("429");
+        globalErrorResponse.setDeveloperMessage("The server is receiving more requests than it can process, please retry after the indicated time.");
+        globalErrorResponse.setUserMessageGlobalisationCode("error.msg.platform.too.many.requests");
+        globalErrorResponse.setDefaultUserMessage("The server is receiving more requests than it can process, please retry after the indicated time.");
+
+        final List<ApiParameterError> errors = new ArrayList<>();
+        errors.add(ApiParameterError.generalError(globalisationMessageCode, defaultUserMessage, defaultUserMessageArgs));
+        globalErrorResponse.setErrors(errors);
+
+        return globalErrorResponse;
+    }
+
     protected ApiGlobalErrorResponse() {
         //
     }
@@ -0,0 +1,44 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.helpers;
+
+import org.fineract.messagegateway.sms.exception.MessageQueueFullException;
+import org.springframework.context.annotation.Scope;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+/**
+ * The {@link MessageQueueFullException} is thrown when the gateway has more
+ * messages waiting for dispatch than it accepts. The client is told when to
+ * retry through the Retry-After header.
+ */
+@Component
+@Scope("singleton")
+public class MessageQueueFullExceptionMapper {
+
+    public static ResponseEntity<ApiGlobalErrorResponse> toResponse(final MessageQueueFullException exception) {
+    	final ApiGlobalErrorResponse errorResponse = ApiGlobalErrorResponse.tooManyRequests("error.msg.sms.queue.full",
+    			exception.getMessage(), exception.getRetryAfterSeconds());
+    	final HttpHeaders headers = new HttpHeaders() ;
+    	headers.set("Retry-After", String.valueOf(exception.getRetryAfterSeconds()));
+        return new ResponseEntity<>(errorResponse, headers, HttpStatus.TOO_MANY_REQUESTS) ;
+    }
+}
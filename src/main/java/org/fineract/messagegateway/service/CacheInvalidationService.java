@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.fineract.messagegateway.configuration.CacheConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tells every gateway node to drop cached entries. Invalidations are rows in
+ * m_cache_invalidation, written in the transaction of the change they belong
+ * to, and each node polls for rows newer than the last one it has seen.
+ * Nodes apply their own invalidations right after the commit. Ids of
+ * concurrent transactions may become visible out of order, so every poll
+ * also reads the rows of the last minute again. Each node remembers the ids
+ * it applied within that window, so a row is applied once per node.
+ */
+@Service
+public class CacheInvalidationService {
+
+	private static final Logger logger = LoggerFactory.getLogger(CacheInvalidationService.class);
+	
+	private static final String PUBLISH = "insert into m_cache_invalidation (cache_name, cache_key, created_on) values (?, ?, current_timestamp)" ;
+	
+	private static final int REREAD_SECONDS = 60 ;
+	
+	private static final String POLL = "select id, cache_name, cache_key from m_cache_invalidation"
+			+ " where id > ? or created_on > timestampadd(SECOND, -" + REREAD_SECONDS + ", current_timestamp) order by id" ;
+	
+	//Applied ids are kept a while longer than rows are read again, node clocks and the database clock may differ
+	private static final long APPLIED_RETENTION_MILLIS = 2 * REREAD_SECONDS * 1000L ;
+	
+	private static final String PURGE = "delete from m_cache_invalidation where created_on < timestampadd(MINUTE, -?, current_timestamp)" ;
+	
+	private final JdbcTemplate jdbcTemplate ;
+	
+	private final CacheConfig cacheConfig ;
+	
+	private final ConcurrentMap<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>() ;
+	
+	private ScheduledExecutorService scheduledExecutorService ;
+	
+	private long lastSeenId ;
+	
+	//Ids of the invalidations this node applied recently, by the time they were applied
+	private final ConcurrentMap<Long, Long> applied = new ConcurrentHashMap<>() ;
+	
+	@Autowired
+	public CacheInvalidationService(final DataSource dataSource, final CacheConfig cacheConfig) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource) ;
+		this.cacheConfig = cacheConfig ;
+	}
+	
+	@PostConstruct
+	public void init() {
+		//Whatever was invalidated before this node started is not in its caches
+		this.lastSeenId = this.jdbcTemplate.queryForObject("select coalesce(max(id), 0) from m_cache_invalidation", Long.class) ;
+		final long interval = this.cacheConfig.getInvalidationPollSeconds() ;
+		this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor() ;
+		this.scheduledExecutorService.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				poll() ;
+			}
+		}, interval, interval, TimeUnit.SECONDS) ;
+	}
+	
+	@PreDestroy
+	public void destroy() {
+		this.scheduledExecutorService.shutdownNow() ;
+	}
+	
+	/**
+	 * @param listener called with the invalidated key
+	 */
+	public void register(final String cacheName, final Consumer<String> listener) {
+		List<Consumer<String>> cacheListeners = this.listeners.get(cacheName) ;
+		if(cacheListeners == null) {
+			final List<Consumer<String>> created = new CopyOnWriteArrayList<>() ;
+			cacheListeners = this.listeners.putIfAbsent(cacheName, created) ;
+			if(cacheListeners == null) {
+				cacheListeners = created ;
+			}
+		}
+		cacheListeners.add(listener) ;
+	}
+	
+	public void publish(final String cacheName, final String key) {
+		final KeyHolder keyHolder = new GeneratedKeyHolder() ;
+		this.jdbcTemplate.update(new PreparedStatementCreator() {
+			@Override
+			public PreparedStatement createPreparedStatement(final Connection connection) throws SQLException {
+				final PreparedStatement insert = connection.prepareStatement(PUBLISH, Statement.RETURN_GENERATED_KEYS) ;
+				insert.setString(1, cacheName);
+				insert.setString(2, key);
+				return insert ;
+			}
+		}, keyHolder) ;
+		//Applied here, the poll must not apply it again
+		this.applied.put(keyHolder.getKey().longValue(), System.currentTimeMillis()) ;
+		if(TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					notifyListeners(cacheName, key) ;
+				}
+			});
+		}else {
+			notifyListeners(cacheName, key) ;
+		}
+	}
+	
+	void poll() {
+		try {
+			final long now = System.currentTimeMillis() ;
+			final List<Map<String, Object>> rows = this.jdbcTemplate.queryForList(POLL, this.lastSeenId) ;
+			for(Map<String, Object> row: rows) {
+				final long id = ((Number) row.get("id")).longValue() ;
+				if(this.applied.putIfAbsent(id, now) == null) {
+					notifyListeners((String) row.get("cache_name"), (String) row.get("cache_key")) ;
+				}
+				this.lastSeenId = Math.max(this.lastSeenId, id) ;
+			}
+			final Iterator<Long> appliedOn = this.applied.values().iterator() ;
+			while(appliedOn.hasNext()) {
+				if(appliedOn.next() < now - APPLIED_RETENTION_MILLIS) {
+					appliedOn.remove();
+				}
+			}
+			this.jdbcTemplate.update(PURGE, this.cacheConfig.getInvalidationRetentionMinutes()) ;
+		} catch (RuntimeException e) {
+			logger.error("Polling cache invalidations failed with reason "+e.getMessage(), e);
+		}
+	}
+	
+	private void notifyListeners(final String cacheName, final String key) {
+		final List<Consumer<String>> cacheListeners = this.listeners.get(cacheName) ;
+		if(cacheListeners == null) {
+			return ;
+		}
+		for(Consumer<String> listener: cacheListeners) {
+			listener.accept(key);
+		}
+	}
+}
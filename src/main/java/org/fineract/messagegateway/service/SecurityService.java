@@ -21,37 +21,118 @@ package org.fineract.messagegateway.service;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+import javax.annotation.PostConstruct;
+
+import org.fineract.messagegateway.configuration.CacheConfig;
 import org.fineract.messagegateway.exception.UnexpectedException;
 import org.fineract.messagegateway.sms.domain.SMSBridge;
 import org.fineract.messagegateway.tenants.domain.Tenant;
+import org.fineract.messagegateway.tenants.exception.TenantNotFoundException;
 import org.fineract.messagegateway.tenants.repository.TenantRepository;
 import org.fineract.messagegateway.tenants.service.TenantsService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.CounterService;
 import org.springframework.stereotype.Service;
 import org.springframework.util.DigestUtils;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 @Service
 public class SecurityService {
 
     private static final Logger logger = LoggerFactory.getLogger(SecurityService.class);
 
+    private static final String TENANT_CACHE = "tenant" ;
+
     @Autowired
     private TenantRepository tenantRepository ;
     
     @Autowired
     private TenantsService tenantService ;
     
+    @Autowired
+    private CacheConfig cacheConfig ;
+    
+    @Autowired
+    private CounterService counterService ;
+    
+    @Autowired
+    private CacheInvalidationService cacheInvalidationService ;
+    
+    //Authenticated tenants and, for a shorter time, rejected credentials
+    private Cache<Credentials, Tenant> tenants ;
+    
+    private Cache<Credentials, Boolean> rejected ;
+    
     public SecurityService() {
         super();
     }
     
+    @PostConstruct
+    public void init() {
+    	this.tenants = CacheBuilder.newBuilder()
+    			.maximumSize(this.cacheConfig.getTenantMaxSize())
+    			.expireAfterWrite(this.cacheConfig.getTenantTtlSeconds(), TimeUnit.SECONDS)
+    			.build() ;
+    	this.rejected = CacheBuilder.newBuilder()
+    			.maximumSize(this.cacheConfig.getTenantMaxSize())
+    			.expireAfterWrite(this.cacheConfig.getTenantNegativeTtlSeconds(), TimeUnit.SECONDS)
+    			.build() ;
+    	this.cacheInvalidationService.register(TENANT_CACHE, new Consumer<String>() {
+    		@Override
+    		public void accept(final String tenantId) {
+    			evict(tenantId) ;
+    		}
+    	});
+    }
+    
     public Tenant authenticate(final String tenantId, final String tenantAppKey) {
-    	Tenant tenant = this.tenantService.findTenantByTenantIdAndTenantAppKey(tenantId, tenantAppKey) ;
+    	final Credentials credentials = new Credentials(tenantId, tenantAppKey) ;
+    	Tenant tenant = this.tenants.getIfPresent(credentials) ;
+    	if(tenant != null) {
+    		this.counterService.increment("tenant.cache.hit");
+    		return tenant ;
+    	}
+    	if(this.rejected.getIfPresent(credentials) != null) {
+    		this.counterService.increment("tenant.cache.rejected");
+    		throw new TenantNotFoundException(tenantId, tenantAppKey) ;
+    	}
+    	this.counterService.increment("tenant.cache.miss");
+    	try {
+    		tenant = this.tenantService.findTenantByTenantIdAndTenantAppKey(tenantId, tenantAppKey) ;
+    	} catch (TenantNotFoundException e) {
+    		this.rejected.put(credentials, Boolean.TRUE);
+    		throw e ;
+    	}
+    	this.tenants.put(credentials, tenant);
     	return tenant ;
     }
+    
+    /**
+     * Drops cached credentials of the tenant on every node, to be called whenever a tenant is created or its app key changes.
+     */
+    public void invalidateTenant(final String tenantId) {
+    	this.cacheInvalidationService.publish(TENANT_CACHE, tenantId);
+    }
+    
+    private void evict(final String tenantId) {
+    	for(Credentials credentials: this.tenants.asMap().keySet()) {
+    		if(credentials.tenantId.equals(tenantId)) {
+    			this.tenants.invalidate(credentials);
+    		}
+    	}
+    	for(Credentials credentials: this.rejected.asMap().keySet()) {
+    		if(credentials.tenantId.equals(tenantId)) {
+    			this.rejected.invalidate(credentials);
+    		}
+    	}
+    }
 
     /*public void verifyApiKey(final String apiKey, final String tenantId) {
         final SMSBridgeConfig smsBridgeConfigList = this.smsBridgeRepository.findByApiKey(apiKey);
@@ -85,4 +166,29 @@ public class SecurityService {
 			throw new UnexpectedException();
 		}
 	}
+    
+    static class Credentials {
+    	
+    	final String tenantId ;
+    	final String tenantAppKey ;
+    	
+    	Credentials(final String tenantId, final String tenantAppKey) {
+    		this.tenantId = String.valueOf(tenantId) ;
+    		this.tenantAppKey = String.valueOf(tenantAppKey) ;
+    	}
+    	
+    	@Override
+    	public boolean equals(final Object obj) {
+    		if(!(obj instanceof Credentials)) {
+    			return false ;
+    		}
+    		final Credentials other = (Credentials) obj ;
+    		return this.tenantId.equals(other.tenantId) && this.tenantAppKey.equals(other.tenantAppKey) ;
+    	}
+    	
+    	@Override
+    	public int hashCode() {
+    		return 31 * this.tenantId.hashCode() + this.tenantAppKey.hashCode() ;
+    	}
+    }
 }
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.fineract.messagegateway.constants.MessageGatewayConstants;
+import org.fineract.messagegateway.exception.AbstractPlatformResourceNotFoundException;
+import org.fineract.messagegateway.exception.PlatformApiDataValidationException;
+import org.fineract.messagegateway.helpers.ApiGlobalErrorResponse;
+import org.fineract.messagegateway.helpers.PlatformApiDataValidationExceptionMapper;
+import org.fineract.messagegateway.helpers.PlatformResourceNotFoundExceptionMapper;
+import org.fineract.messagegateway.sms.data.BulkSubmissionData;
+import org.fineract.messagegateway.sms.data.CampaignData;
+import org.fineract.messagegateway.sms.data.CampaignStatusData;
+import org.fineract.messagegateway.sms.exception.CampaignNotFoundException;
+import org.fineract.messagegateway.sms.exception.SMSBridgeNotFoundException;
+import org.fineract.messagegateway.sms.service.CampaignService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/campaigns")
+public class CampaignApiResource {
+
+	private final CampaignService campaignService ;
+	
+	@Autowired
+    public CampaignApiResource(final CampaignService campaignService) {
+		this.campaignService = campaignService ;
+    }
+
+    @RequestMapping(method = RequestMethod.POST, consumes = {"application/json"}, produces = {"application/json"})
+    public ResponseEntity<Long> createCampaign(@RequestHeader(MessageGatewayConstants.TENANT_IDENTIFIER_HEADER) final String tenantId,
+    		@RequestHeader(MessageGatewayConstants.TENANT_APPKEY_HEADER) final String appKey,
+    		@RequestBody final CampaignData campaign) {
+    	Long campaignId = this.campaignService.createCampaign(tenantId, appKey, campaign) ;
+    	return new ResponseEntity<>(campaignId, HttpStatus.CREATED);
+    }
+    
+    /**
+     * Takes the recipients as newline delimited JSON, one recipient per line, and sends the campaign to them while they are read.
+     */
+    @RequestMapping(value = "/{campaignId}/recipients", method = RequestMethod.POST, consumes = {"application/x-ndjson"}, produces = {"application/json"})
+    public ResponseEntity<BulkSubmissionData> addRecipients(@RequestHeader(MessageGatewayConstants.TENANT_IDENTIFIER_HEADER) final String tenantId,
+    		@RequestHeader(MessageGatewayConstants.TENANT_APPKEY_HEADER) final String appKey,
+    		@PathVariable("campaignId") final Long campaignId, final InputStream body) throws IOException {
+    	BulkSubmissionData submission = this.campaignService.addRecipients(tenantId, appKey, campaignId, body) ;
+    	return new ResponseEntity<>(submission, HttpStatus.ACCEPTED);
+    }
+    
+    @RequestMapping(value = "/{campaignId}", method = RequestMethod.GET, produces = {"application/json"})
+    public ResponseEntity<CampaignStatusData> getCampaign(@RequestHeader(MessageGatewayConstants.TENANT_IDENTIFIER_HEADER) final String tenantId,
+    		@RequestHeader(MessageGatewayConstants.TENANT_APPKEY_HEADER) final String appKey,
+    		@PathVariable("campaignId") final Long campaignId) {
+    	CampaignStatusData campaign = this.campaignService.retrieveCampaign(tenantId, appKey, campaignId) ;
+    	return new ResponseEntity<>(campaign, HttpStatus.OK);
+    }
+    
+    @ExceptionHandler({PlatformApiDataValidationException.class})
+    public ResponseEntity<ApiGlobalErrorResponse> handlePlatformApiDataValidationException(PlatformApiDataValidationException e) {
+    	return PlatformApiDataValidationExceptionMapper.toResponse(e) ;
+    }
+    
+    @ExceptionHandler({SMSBridgeNotFoundException.class, CampaignNotFoundException.class})
+    public ResponseEntity<ApiGlobalErrorResponse> handleResourceNotFoundException(AbstractPlatformResourceNotFoundException e) {
+    	return PlatformResourceNotFoundExceptionMapper.toResponse(e) ;
+    }
+}
@@ -18,16 +18,25 @@
  */
 package org.fineract.messagegateway.sms.api;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.List;
 
 import org.fineract.messagegateway.constants.MessageGatewayConstants;
+import org.fineract.messagegateway.helpers.ApiGlobalErrorResponse;
+import org.fineract.messagegateway.helpers.MessageQueueFullExceptionMapper;
+import org.fineract.messagegateway.sms.data.BulkSubmissionData;
 import org.fineract.messagegateway.sms.data.DeliveryStatusData;
+import org.fineract.messagegateway.sms.data.SubmissionData;
 import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.exception.MessageQueueFullException;
+import org.fineract.messagegateway.sms.service.BulkSubmissionService;
 import org.fineract.messagegateway.sms.service.SMSMessageService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -41,17 +50,32 @@ public class SmsApiResource {
 	//This class sends TRANSACTIONAL & PROMOTIONAL SMS
 	private SMSMessageService smsMessageService ;
 	
+	private BulkSubmissionService bulkSubmissionService ;
+	
 	@Autowired
-    public SmsApiResource(final SMSMessageService smsMessageService) {
+    public SmsApiResource(final SMSMessageService smsMessageService,
+    		final BulkSubmissionService bulkSubmissionService) {
 		this.smsMessageService = smsMessageService ;
+		this.bulkSubmissionService = bulkSubmissionService ;
     }
 
     @RequestMapping(method = RequestMethod.POST, consumes = {"application/json"}, produces = {"application/json"})
-    public ResponseEntity<Void> sendShortMessages(@RequestHeader(MessageGatewayConstants.TENANT_IDENTIFIER_HEADER) final String tenantId,
+    public ResponseEntity<SubmissionData> sendShortMessages(@RequestHeader(MessageGatewayConstants.TENANT_IDENTIFIER_HEADER) final String tenantId,
     		@RequestHeader(MessageGatewayConstants.TENANT_APPKEY_HEADER) final String appKey, 
     		@RequestBody final List<SMSMessage> payload) {
-    	this.smsMessageService.sendShortMessage(tenantId, appKey, payload);
-       return new ResponseEntity<>(HttpStatus.ACCEPTED);
+    	SubmissionData submission = this.smsMessageService.sendShortMessage(tenantId, appKey, payload);
+       return new ResponseEntity<>(submission, HttpStatus.ACCEPTED);
+    }
+    
+    /**
+     * Takes newline delimited JSON, one message per line, and stores it while it is read.
+     */
+    @RequestMapping(value = "/stream", method = RequestMethod.POST, consumes = {"application/x-ndjson"}, produces = {"application/json"})
+    public ResponseEntity<BulkSubmissionData> sendShortMessageStream(@RequestHeader(MessageGatewayConstants.TENANT_IDENTIFIER_HEADER) final String tenantId,
+    		@RequestHeader(MessageGatewayConstants.TENANT_APPKEY_HEADER) final String appKey, 
+    		final InputStream body) throws IOException {
+    	BulkSubmissionData submission = this.bulkSubmissionService.submit(tenantId, appKey, body) ;
+    	return new ResponseEntity<>(submission, HttpStatus.ACCEPTED);
     }
     
     @RequestMapping(value = "/report", method = RequestMethod.POST, consumes = {"application/json"}, produces = {"application/json"})
@@ -61,4 +85,9 @@ public class SmsApiResource {
     	Collection<DeliveryStatusData> deliveryStatus = this.smsMessageService.getDeliveryStatus(tenantId, appKey, internalIds) ;
     	return new ResponseEntity<>(deliveryStatus, HttpStatus.OK);
     }
+    
+    @ExceptionHandler({MessageQueueFullException.class})
+    public ResponseEntity<ApiGlobalErrorResponse> handleMessageQueueFullException(MessageQueueFullException e) {
+    	return MessageQueueFullExceptionMapper.toResponse(e) ;
+    }
 }
@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.data;
+
+import java.util.List;
+
+/**
+ * Answer to a streamed upload. Lines are counted, only the first rejected
+ * lines are listed with the reason.
+ */
+public class BulkSubmissionData {
+
+	private final Long lines;
+	private final Long accepted;
+	private final Long duplicates;
+	private final Long rejected;
+	private final List<Rejection> rejections;
+
+	public BulkSubmissionData(final Long lines, final Long accepted, final Long duplicates, final Long rejected,
+			final List<Rejection> rejections) {
+		this.lines = lines;
+		this.accepted = accepted;
+		this.duplicates = duplicates;
+		this.rejected = rejected;
+		this.rejections = rejections;
+	}
+
+	public Long getLines() {
+		return lines;
+	}
+
+	public Long getAccepted() {
+		return accepted;
+	}
+
+	public Long getDuplicates() {
+		return duplicates;
+	}
+
+	public Long getRejected() {
+		return rejected;
+	}
+
+	public List<Rejection> getRejections() {
+		return rejections;
+	}
+
+	public static class Rejection {
+
+		private final Long line;
+		private final String reason;
+
+		public Rejection(final Long line, final String reason) {
+			this.line = line;
+			this.reason = reason;
+		}
+
+		public Long getLine() {
+			return line;
+		}
+
+		public String getReason() {
+			return reason;
+		}
+	}
+
+}
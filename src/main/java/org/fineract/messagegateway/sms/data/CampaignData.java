@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.data;
+
+import java.util.Date;
+
+/**
+ * Request to create a campaign.
+ */
+public class CampaignData {
+
+	private Long providerId;
+	private String message;
+	private String priority;
+	private Date sendAt;
+	private String description;
+
+	public Long getProviderId() {
+		return providerId;
+	}
+
+	public void setProviderId(final Long providerId) {
+		this.providerId = providerId;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void setMessage(final String message) {
+		this.message = message;
+	}
+
+	public String getPriority() {
+		return priority;
+	}
+
+	public void setPriority(final String priority) {
+		this.priority = priority;
+	}
+
+	public Date getSendAt() {
+		return sendAt;
+	}
+
+	public void setSendAt(final Date sendAt) {
+		this.sendAt = sendAt;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public void setDescription(final String description) {
+		this.description = description;
+	}
+
+}
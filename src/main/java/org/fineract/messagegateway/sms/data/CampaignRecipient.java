@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.data;
+
+import java.util.Map;
+
+/**
+ * A line of a campaign's recipient upload.
+ */
+public class CampaignRecipient {
+
+	private Long internalId;
+	private String mobileNumber;
+	private Map<String, String> parameters;
+
+	public Long getInternalId() {
+		return internalId;
+	}
+
+	public void setInternalId(final Long internalId) {
+		this.internalId = internalId;
+	}
+
+	public String getMobileNumber() {
+		return mobileNumber;
+	}
+
+	public void setMobileNumber(final String mobileNumber) {
+		this.mobileNumber = mobileNumber;
+	}
+
+	public Map<String, String> getParameters() {
+		return parameters;
+	}
+
+	public void setParameters(final Map<String, String> parameters) {
+		this.parameters = parameters;
+	}
+
+}
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.data;
+
+import java.util.Date;
+
+/**
+ * A campaign with the number of its messages per delivery status. Messages
+ * waiting for a delivery report count as sent.
+ */
+public class CampaignStatusData {
+
+	private final Long id;
+	private final Long providerId;
+	private final String description;
+	private final Date sendAt;
+	private final Date createdOnDate;
+	private final Long total;
+	private final Long queued;
+	private final Long sent;
+	private final Long delivered;
+	private final Long failed;
+
+	public CampaignStatusData(final Long id, final Long providerId, final String description, final Date sendAt,
+			final Date createdOnDate, final Long total, final Long queued, final Long sent, final Long delivered,
+			final Long failed) {
+		this.id = id;
+		this.providerId = providerId;
+		this.description = description;
+		this.sendAt = sendAt;
+		this.createdOnDate = createdOnDate;
+		this.total = total;
+		this.queued = queued;
+		this.sent = sent;
+		this.delivered = delivered;
+		this.failed = failed;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public Long getProviderId() {
+		return providerId;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public Date getSendAt() {
+		return sendAt;
+	}
+
+	public Date getCreatedOnDate() {
+		return createdOnDate;
+	}
+
+	public Long getTotal() {
+		return total;
+	}
+
+	public Long getQueued() {
+		return queued;
+	}
+
+	public Long getSent() {
+		return sent;
+	}
+
+	public Long getDelivered() {
+		return delivered;
+	}
+
+	public Long getFailed() {
+		return failed;
+	}
+
+}
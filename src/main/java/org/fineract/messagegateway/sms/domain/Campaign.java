@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.domain;
+
+import java.util.Date;
+import java.util.Map;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.fineract.messagegateway.sms.util.SmsMessagePriorityType;
+
+/**
+ * One message text sent to many recipients. The text may hold {{name}}
+ * placeholders which are filled from the parameters of each recipient.
+ */
+@Entity
+@Table(name = "m_sms_campaign")
+public class Campaign extends AbstractPersistableCustom<Long> {
+
+	@Column(name = "tenant_id", nullable = false)
+	private Long tenantId;
+
+	@Column(name = "sms_bridge_id", nullable = false)
+	private Long bridgeId;
+
+	@Column(name = "message", nullable = false)
+	private String message;
+
+	@Column(name = "priority", nullable = false)
+	private Integer priority = SmsMessagePriorityType.PROMOTIONAL.getValue();
+
+	@Column(name = "send_at", nullable = true)
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date sendAt;
+
+	@Column(name = "description", nullable = true)
+	private String description;
+
+	@Column(name = "created_on", nullable = true)
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date createdOnDate;
+
+	protected Campaign() {
+		
+	}
+	
+	/**
+	 * @param priority TRANSACTIONAL, PROMOTIONAL or the numeric value of a {@link SmsMessagePriorityType}, PROMOTIONAL if null
+	 */
+	public Campaign(final Long tenantId, final Long bridgeId, final String message, final String priority,
+			final Date sendAt, final String description) {
+		this.tenantId = tenantId ;
+		this.bridgeId = bridgeId ;
+		this.message = message ;
+		this.priority = priority == null ? SmsMessagePriorityType.PROMOTIONAL.getValue() : SmsMessagePriorityType.fromString(priority).getValue() ;
+		this.sendAt = sendAt ;
+		this.description = description ;
+		this.createdOnDate = new Date() ;
+	}
+	
+	public Long getTenantId() {
+		return this.tenantId ;
+	}
+	
+	public Long getProviderId() {
+		return this.bridgeId ;
+	}
+	
+	public String getMessage() {
+		return this.message ;
+	}
+	
+	public Integer getPriority() {
+		return this.priority ;
+	}
+	
+	public Date getSendAt() {
+		return this.sendAt ;
+	}
+	
+	public String getDescription() {
+		return this.description ;
+	}
+	
+	public Date getCreatedOnDate() {
+		return this.createdOnDate ;
+	}
+	
+	/**
+	 * @return the message of a recipient, placeholders without a parameter are left as they are
+	 */
+	public String messageFor(final Map<String, String> parameters) {
+		if(parameters == null || parameters.isEmpty()) {
+			return this.message ;
+		}
+		String text = this.message ;
+		for(Map.Entry<String, String> parameter: parameters.entrySet()) {
+			text = text.replace("{{" + parameter.getKey() + "}}", String.valueOf(parameter.getValue())) ;
+		}
+		return text ;
+	}
+	
+	/**
+	 * @return a PENDING message of the campaign to the recipient
+	 */
+	public SMSMessage newMessage(final Long internalId, final String mobileNumber, final Map<String, String> parameters) {
+		final SMSMessage sms = SMSMessage.getPendingMessages(null, internalId, this.tenantId, null, null, null, null,
+				mobileNumber, messageFor(parameters), this.bridgeId) ;
+		sms.setPriority(this.priority.toString());
+		sms.setSendAt(this.sendAt);
+		sms.setCampaignId(getId());
+		return sms ;
+	}
+}
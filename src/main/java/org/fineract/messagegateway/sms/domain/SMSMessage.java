@@ -25,7 +25,9 @@ import javax.persistence.Entity;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
+import javax.persistence.Transient;
 
+import org.fineract.messagegateway.sms.util.SmsMessagePriorityType;
 import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
 
 @Entity
@@ -43,7 +45,7 @@ public class SMSMessage extends AbstractPersistableCustom<Long> {
 	private Long internalId;
 
 	@Column(name = "submitted_on_date", nullable = true)
-	@Temporal(TemporalType.DATE)
+	@Temporal(TemporalType.TIMESTAMP)
 	private Date submittedOnDate;
 
 	@Column(name = "delivered_on_date", nullable = true)
@@ -68,6 +70,40 @@ public class SMSMessage extends AbstractPersistableCustom<Long> {
 	@Column(name = "sms_bridge_id", nullable = false)
 	private Long bridgeId;
 
+	@Column(name = "priority", nullable = false)
+	private Integer priority = SmsMessagePriorityType.TRANSACTIONAL.getValue();
+
+	@Column(name = "send_at", nullable = true)
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date sendAt;
+
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	@Column(name = "attempt_count", nullable = false)
+	private Integer attemptCount = 0;
+
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	@Column(name = "next_attempt_on", nullable = true)
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date nextAttemptOn;
+
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	@Column(name = "lease_owner", nullable = true)
+	private String leaseOwner;
+
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	@Column(name = "lease_expires_on", nullable = true)
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date leaseExpiresOn;
+
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	@Column(name = "campaign_id", nullable = true)
+	private Long campaignId;
+
+	//Number of the bridge's sender pool the current attempt goes out from
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	@Transient
+	private String pooledSender;
+
 	protected SMSMessage() {
 		
 	}
@@ -136,6 +172,15 @@ public class SMSMessage extends AbstractPersistableCustom<Long> {
 		this.tenantId = tenantId;
 	}
 
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	public String getPooledSender() {
+		return this.pooledSender ;
+	}
+	
+	public void setPooledSender(final String pooledSender) {
+		this.pooledSender = pooledSender ;
+	}
+	
 	public String getSourceAddress() {
 		return sourceAddress;
 	}
@@ -172,6 +217,21 @@ public class SMSMessage extends AbstractPersistableCustom<Long> {
 		this.submittedOnDate = submittedDate ;
 	}
 	
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	public Date getSubmittedOnDate() {
+		return this.submittedOnDate ;
+	}
+	
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	public String getDeliveryErrorMessage() {
+		return this.deliveryErrorMessage ;
+	}
+	
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	public Date getDeliveredOnDate() {
+		return this.deliveredOnDate ;
+	}
+	
 	public void setDeliveryErrorMessage(final String deliveryErrorMessage) {
 		this.deliveryErrorMessage = deliveryErrorMessage ;
 	}
@@ -188,6 +248,103 @@ public class SMSMessage extends AbstractPersistableCustom<Long> {
 		return this.deliveryStatus ;
 	}
 	
+	public Integer getPriority() {
+		return this.priority ;
+	}
+	
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	public SmsMessagePriorityType getPriorityType() {
+		return SmsMessagePriorityType.fromInt(this.priority) ;
+	}
+	
+	/**
+	 * @param priority TRANSACTIONAL, PROMOTIONAL or the numeric value of a {@link SmsMessagePriorityType}
+	 */
+	public void setPriority(final String priority) {
+		this.priority = SmsMessagePriorityType.fromString(priority).getValue() ;
+	}
+	
+	/**
+	 * Sets the id of a message which is written without Hibernate, see {@link org.fineract.messagegateway.sms.service.OutboundMessageWriter}
+	 */
+	public void assignId(final Long id) {
+		setId(id) ;
+	}
+	
+	public Date getSendAt() {
+		return this.sendAt ;
+	}
+	
+	/**
+	 * @param sendAt time at which the message is due, null to send it right away
+	 */
+	public void setSendAt(final Date sendAt) {
+		this.sendAt = sendAt ;
+	}
+	
+	/**
+	 * @return true if the message must not be sent before the given time
+	 */
+	public boolean isScheduledAfter(final long timeMillis) {
+		return this.sendAt != null && this.sendAt.getTime() > timeMillis ;
+	}
+	
+	public Integer getAttemptCount() {
+		return this.attemptCount ;
+	}
+	
+	/**
+	 * Counts a new send attempt, clearing the time it was waiting for. The
+	 * message counts as submitted from now on.
+	 */
+	public void startAttempt() {
+		this.attemptCount = this.attemptCount == null ? 1 : this.attemptCount + 1 ;
+		this.nextAttemptOn = null ;
+		this.submittedOnDate = new Date() ;
+	}
+	
+	public Date getNextAttemptOn() {
+		return this.nextAttemptOn ;
+	}
+	
+	public void setNextAttemptOn(final Date nextAttemptOn) {
+		this.nextAttemptOn = nextAttemptOn ;
+	}
+	
+	/**
+	 * @return true if a transient failure left the message waiting for another attempt
+	 */
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	public boolean isRetryScheduled() {
+		return this.nextAttemptOn != null && SmsMessageStatusType.PENDING.getValue().equals(this.deliveryStatus) ;
+	}
+	
+	public String getLeaseOwner() {
+		return this.leaseOwner ;
+	}
+	
+	public Date getLeaseExpiresOn() {
+		return this.leaseExpiresOn ;
+	}
+	
+	public void lease(final String leaseOwner, final Date leaseExpiresOn) {
+		this.leaseOwner = leaseOwner ;
+		this.leaseExpiresOn = leaseExpiresOn ;
+	}
+	
+	public void releaseLease() {
+		this.leaseOwner = null ;
+		this.leaseExpiresOn = null ;
+	}
+	
+	public Long getCampaignId() {
+		return this.campaignId ;
+	}
+	
+	public void setCampaignId(final Long campaignId) {
+		this.campaignId = campaignId ;
+	}
+	
 	@Override
     public String toString() {
         return "SmsOutboundMessage [externalId=" + externalId + ", internalId=" + internalId
@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+
+import org.fineract.messagegateway.configuration.CacheConfig;
+import org.fineract.messagegateway.service.CacheInvalidationService;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.exception.SMSBridgeNotFoundException;
+import org.fineract.messagegateway.sms.repository.SMSBridgeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Caches {@link ResolvedBridge} snapshots by tenant and bridge id so that
+ * sending a message does not load the bridge and its configurations again.
+ * Entries are bounded by cache.bridge-max-size and cache.bridge-ttl-seconds
+ * and are dropped on all nodes when the bridge is updated or deleted.
+ */
+@Component
+public class BridgeCache implements ApplicationContextAware {
+
+	private static final Logger logger = LoggerFactory.getLogger(BridgeCache.class);
+	
+	public static final String CACHE_NAME = "bridge" ;
+	
+	private final SMSBridgeRepository smsBridgeRepository ;
+	
+	private final CacheConfig cacheConfig ;
+	
+	private final CacheInvalidationService cacheInvalidationService ;
+	
+	private ApplicationContext applicationContext ;
+	
+	private Cache<String, ResolvedBridge> bridges ;
+	
+	@Autowired
+	public BridgeCache(final SMSBridgeRepository smsBridgeRepository,
+			final CacheConfig cacheConfig,
+			final CacheInvalidationService cacheInvalidationService) {
+		this.smsBridgeRepository = smsBridgeRepository ;
+		this.cacheConfig = cacheConfig ;
+		this.cacheInvalidationService = cacheInvalidationService ;
+	}
+	
+	@PostConstruct
+	public void init() {
+		this.bridges = CacheBuilder.newBuilder()
+				.maximumSize(this.cacheConfig.getBridgeMaxSize())
+				.expireAfterWrite(this.cacheConfig.getBridgeTtlSeconds(), TimeUnit.SECONDS)
+				.build() ;
+		this.cacheInvalidationService.register(CACHE_NAME, new Consumer<String>() {
+			@Override
+			public void accept(final String key) {
+				invalidateLocally(key) ;
+			}
+		});
+	}
+	
+	@Override
+	public void setApplicationContext(final ApplicationContext applicationContext) throws BeansException {
+		this.applicationContext = applicationContext ;
+	}
+	
+	/**
+	 * @throws SMSBridgeNotFoundException if the tenant has no such bridge, which is not cached
+	 * @throws BeansException if no provider is registered under the bridge's provider key
+	 */
+	public ResolvedBridge resolve(final Long tenantId, final Long bridgeId) {
+		try {
+			return this.bridges.get(key(tenantId, bridgeId), new Callable<ResolvedBridge>() {
+				@Override
+				public ResolvedBridge call() {
+					logger.debug("Loading SMS bridge "+bridgeId+" of tenant "+tenantId);
+					final SMSBridge bridge = smsBridgeRepository.findByIdAndTenantId(bridgeId, tenantId) ;
+					if(bridge == null) {
+						throw new SMSBridgeNotFoundException(bridgeId) ;
+					}
+					final SMSProvider provider = (SMSProvider) applicationContext.getBean(bridge.getProviderKey()) ;
+					return new ResolvedBridge(bridge, provider) ;
+				}
+			}) ;
+		} catch (UncheckedExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause() ;
+			}
+			throw e ;
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause()) ;
+		}
+	}
+	
+	/**
+	 * Drops the bridge on this node once the current transaction commits and on the other nodes with their next poll.
+	 */
+	public void invalidate(final Long tenantId, final Long bridgeId) {
+		this.cacheInvalidationService.publish(CACHE_NAME, key(tenantId, bridgeId));
+	}
+	
+	private void invalidateLocally(final String key) {
+		this.bridges.invalidate(key);
+		//Clients created with the old credentials are closed once the sends using them are over, instead of idling out
+		final Long bridgeId = Long.valueOf(key.substring(key.indexOf(':') + 1)) ;
+		for(SMSProvider provider: this.applicationContext.getBeansOfType(SMSProvider.class).values()) {
+			provider.invalidateClients(bridgeId);
+		}
+	}
+	
+	private static String key(final Long tenantId, final Long bridgeId) {
+		return tenantId + ":" + bridgeId ;
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers;
+
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.fineract.messagegateway.configuration.CircuitBreakerConfig;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps a {@link CircuitBreaker} per SMS bridge. While a bridge's circuit is
+ * open its messages are parked for the time it stays open instead of each
+ * waiting on another timeout, so the dispatch workers keep serving the
+ * healthy bridges. Parked messages stay PENDING and go through the retry
+ * queue without using up an attempt.
+ */
+@Component
+public class BridgeCircuitBreaker {
+
+	private static final Logger logger = LoggerFactory.getLogger(BridgeCircuitBreaker.class);
+	
+	private final ConcurrentMap<Long, CircuitBreaker> breakers = new ConcurrentHashMap<>() ;
+	
+	private final CircuitBreakerConfig circuitBreakerConfig ;
+	
+	private final CounterService counterService ;
+	
+	private final GaugeService gaugeService ;
+	
+	@Autowired
+	public BridgeCircuitBreaker(final CircuitBreakerConfig circuitBreakerConfig,
+			final CounterService counterService,
+			final GaugeService gaugeService) {
+		this.circuitBreakerConfig = circuitBreakerConfig ;
+		this.counterService = counterService ;
+		this.gaugeService = gaugeService ;
+	}
+	
+	/**
+	 * @return true if the message may be sent through the bridge now, otherwise
+	 * the message was given a next attempt time after the circuit's open period
+	 */
+	public boolean allow(final SMSBridge bridge, final SMSMessage message) {
+		final CircuitBreaker breaker = breakerFor(bridge) ;
+		final long now = System.currentTimeMillis() ;
+		if(breaker.tryAcquire(now)) {
+			if(breaker.getState() != CircuitBreaker.State.CLOSED) {
+				logger.info("Probing SMS bridge "+bridge.getId()+" with message "+message.getId());
+				reportState(bridge, breaker);
+			}
+			return true ;
+		}
+		//Spread the parked messages so that they do not all come back in the same instant
+		final long jitter = ThreadLocalRandom.current().nextLong(breaker.getOpenMillis() / 10 + 1) ;
+		message.setNextAttemptOn(new Date(breaker.getRetryAt(now) + jitter));
+		this.counterService.increment("circuit.bridge." + bridge.getId() + ".parked");
+		return false ;
+	}
+	
+	public void onSuccess(final SMSBridge bridge) {
+		final CircuitBreaker breaker = breakerFor(bridge) ;
+		if(breaker.onSuccess()) {
+			logger.info("SMS bridge "+bridge.getId()+" recovered, closing its circuit");
+			reportState(bridge, breaker);
+		}
+	}
+	
+	public void onFailure(final SMSBridge bridge) {
+		final CircuitBreaker breaker = breakerFor(bridge) ;
+		if(breaker.onFailure(System.currentTimeMillis())) {
+			logger.warn("SMS bridge "+bridge.getId()+" is failing, opening its circuit for "+breaker.getOpenMillis()+" ms");
+			this.counterService.increment("circuit.bridge." + bridge.getId() + ".opened");
+			reportState(bridge, breaker);
+		}
+	}
+	
+	public void invalidate(final Long bridgeId) {
+		this.breakers.remove(bridgeId) ;
+	}
+	
+	private CircuitBreaker breakerFor(final SMSBridge bridge) {
+		CircuitBreaker breaker = this.breakers.get(bridge.getId()) ;
+		if(breaker == null) {
+			final CircuitBreaker created = new CircuitBreaker(this.circuitBreakerConfig.getFailureThreshold(),
+					this.circuitBreakerConfig.getOpenSeconds() * 1000L) ;
+			breaker = this.breakers.putIfAbsent(bridge.getId(), created) ;
+			if(breaker == null) {
+				breaker = created ;
+			}
+		}
+		return breaker ;
+	}
+	
+	private void reportState(final SMSBridge bridge, final CircuitBreaker breaker) {
+		this.gaugeService.submit("circuit.bridge." + bridge.getId() + ".state", breaker.getState().getValue());
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounds the provider requests in flight per SMS bridge. Requests are sent
+ * asynchronously, without a limit a slow provider would collect every queued
+ * message of its bridge. A request beyond the limit waits in its bridge's
+ * queue instead of blocking the caller, the request giving up its slot hands
+ * it to the first one waiting.
+ */
+@Component
+public class BridgeInFlightLimiter {
+
+	private final ConcurrentMap<Long, InFlight> limits = new ConcurrentHashMap<>() ;
+	
+	/**
+	 * @return the requests in flight of the bridge, requests in flight when
+	 *         the limit changed keep releasing the one they started on
+	 */
+	public InFlight limitFor(final SMSBridge bridge, final int maxInFlight) {
+		final int limit = Math.max(1, maxInFlight) ;
+		final InFlight current = this.limits.get(bridge.getId()) ;
+		if(current != null && current.maxInFlight == limit) {
+			return current ;
+		}
+		//First use or the limit changed
+		final InFlight created = new InFlight(limit) ;
+		final boolean stored = current == null ? this.limits.putIfAbsent(bridge.getId(), created) == null : this.limits.replace(bridge.getId(), current, created) ;
+		if(stored) {
+			return created ;
+		}
+		//Another request got there first, share its limit
+		final InFlight raced = this.limits.get(bridge.getId()) ;
+		return raced == null ? created : raced ;
+	}
+	
+	public void invalidate(final Long bridgeId) {
+		this.limits.remove(bridgeId) ;
+	}
+	
+	public static final class InFlight {
+		
+		private final int maxInFlight ;
+		
+		private final Queue<Runnable> waiting = new ArrayDeque<>() ;
+		
+		private int inFlight ;
+		
+		InFlight(final int maxInFlight) {
+			this.maxInFlight = maxInFlight ;
+		}
+		
+		/**
+		 * @return true if the request got a slot and the caller starts it,
+		 *         false if it waits for a request to give up its slot
+		 */
+		public synchronized boolean tryStart(final Runnable request) {
+			if(this.inFlight < this.maxInFlight) {
+				this.inFlight++ ;
+				return true ;
+			}
+			this.waiting.add(request) ;
+			return false ;
+		}
+		
+		/**
+		 * Gives up the slot of a request which completed.
+		 * 
+		 * @return the waiting request which got the slot, the caller starts
+		 *         it, null if no request was waiting
+		 */
+		public synchronized Runnable release() {
+			final Runnable next = this.waiting.poll() ;
+			if(next == null) {
+				this.inFlight-- ;
+			}
+			return next ;
+		}
+	}
+}
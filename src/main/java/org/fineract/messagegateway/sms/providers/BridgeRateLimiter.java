@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.fineract.messagegateway.constants.MessageGatewayConstants;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Paces provider calls per SMS bridge so that we stay within the throughput
+ * the provider allows for the account or sender. The limit is configured
+ * through the Max_TPS and Burst_Size bridge configurations, bridges without
+ * Max_TPS are not limited. For a bridge with Sender_Numbers the limit applies
+ * to each sender number.
+ */
+@Component
+public class BridgeRateLimiter {
+
+	private static final Logger logger = LoggerFactory.getLogger(BridgeRateLimiter.class);
+	
+	//By bridge id and sender number, the bridge id alone for bridges without sender numbers
+	private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>() ;
+	
+	/**
+	 * Takes permits for the bridge without waiting for them.
+	 * 
+	 * @return nanoseconds the caller has to hold the messages back
+	 */
+	public long reserve(final SMSBridge bridge, final int permits) {
+		return reserve(bridge, null, permits) ;
+	}
+	
+	/**
+	 * Takes permits for the sender number of the bridge without waiting for
+	 * them. Reservations are served in call order, so a caller which sends
+	 * once its wait is over keeps the order of its messages.
+	 * 
+	 * @param sender null for the bridge as a whole
+	 * @return nanoseconds the caller has to hold the messages back
+	 */
+	public long reserve(final SMSBridge bridge, final String sender, final int permits) {
+		final TokenBucket bucket = bucketFor(bridge, sender == null ? String.valueOf(bridge.getId()) : bridge.getId() + ":" + sender) ;
+		return bucket == null ? 0 : bucket.reserve(permits) ;
+	}
+	
+	public void invalidate(final Long bridgeId) {
+		final String prefix = bridgeId + ":" ;
+		for(String key: this.buckets.keySet()) {
+			if(key.equals(String.valueOf(bridgeId)) || key.startsWith(prefix)) {
+				this.buckets.remove(key) ;
+			}
+		}
+	}
+	
+	private TokenBucket bucketFor(final SMSBridge bridge, final String key) {
+		final String maxTps = bridge.getConfigValue(MessageGatewayConstants.PROVIDER_MAX_TPS) ;
+		if(maxTps == null) {
+			this.buckets.remove(key) ;
+			return null ;
+		}
+		final String burst = bridge.getConfigValue(MessageGatewayConstants.PROVIDER_BURST_SIZE) ;
+		final double permitsPerSecond ;
+		final int burstSize ;
+		try {
+			permitsPerSecond = Double.parseDouble(maxTps) ;
+			burstSize = burst == null ? 1 : Integer.parseInt(burst) ;
+		} catch (NumberFormatException e) {
+			logger.error("Invalid rate limit configuration for SMS bridge "+bridge.getId()+", sending without limit");
+			return null ;
+		}
+		if(permitsPerSecond <= 0) {
+			return null ;
+		}
+		final int burstPermits = Math.max(1, burstSize) ;
+		final TokenBucket bucket = this.buckets.get(key) ;
+		if(bucket != null && bucket.getPermitsPerSecond() == permitsPerSecond && bucket.getBurstSize() == burstPermits) {
+			return bucket ;
+		}
+		//First use or the configuration changed, start over with a full bucket
+		final TokenBucket created = new TokenBucket(permitsPerSecond, burstPermits) ;
+		final boolean stored = bucket == null ? this.buckets.putIfAbsent(key, created) == null : this.buckets.replace(key, bucket, created) ;
+		if(stored) {
+			return created ;
+		}
+		//Another sender got there first, share its bucket
+		final TokenBucket raced = this.buckets.get(key) ;
+		return raced == null ? created : raced ;
+	}
+}
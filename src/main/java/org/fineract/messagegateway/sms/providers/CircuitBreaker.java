@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers;
+
+/**
+ * Closed, open and half-open circuit breaker. After failureThreshold
+ * consecutive failures it opens and rejects calls for openMillis, then lets
+ * a single probe through. The probe closes it again on success or reopens it
+ * on failure. A probe that never reports back is replaced after openMillis.
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED(0), HALF_OPEN(1), OPEN(2) ;
+		
+		private final int value ;
+		
+		private State(final int value) {
+			this.value = value ;
+		}
+		
+		public int getValue() {
+			return this.value ;
+		}
+	}
+	
+	private final int failureThreshold ;
+	
+	private final long openMillis ;
+	
+	private State state = State.CLOSED ;
+	
+	private int consecutiveFailures ;
+	
+	private long openUntil ;
+	
+	private long probeStartedOn ;
+	
+	public CircuitBreaker(final int failureThreshold, final long openMillis) {
+		this.failureThreshold = Math.max(1, failureThreshold) ;
+		this.openMillis = openMillis ;
+	}
+	
+	/**
+	 * @return true if the call may go ahead
+	 */
+	public synchronized boolean tryAcquire(final long now) {
+		switch (this.state) {
+			case OPEN:
+				if(now < this.openUntil) {
+					return false ;
+				}
+				this.state = State.HALF_OPEN ;
+				this.probeStartedOn = now ;
+				return true ;
+			case HALF_OPEN:
+				if(now < this.probeStartedOn + this.openMillis) {
+					return false ;
+				}
+				this.probeStartedOn = now ;
+				return true ;
+			default:
+				return true ;
+		}
+	}
+	
+	/**
+	 * @return true if this closed a breaker which was not closed
+	 */
+	public synchronized boolean onSuccess() {
+		final boolean closed = this.state != State.CLOSED ;
+		this.state = State.CLOSED ;
+		this.consecutiveFailures = 0 ;
+		return closed ;
+	}
+	
+	/**
+	 * @return true if this failure opened the breaker
+	 */
+	public synchronized boolean onFailure(final long now) {
+		this.consecutiveFailures++ ;
+		if(this.state == State.HALF_OPEN || (this.state == State.CLOSED && this.consecutiveFailures >= this.failureThreshold)) {
+			this.state = State.OPEN ;
+			this.openUntil = now + this.openMillis ;
+			this.consecutiveFailures = 0 ;
+			return true ;
+		}
+		return false ;
+	}
+	
+	/**
+	 * @return earliest time a rejected call is worth trying again
+	 */
+	public synchronized long getRetryAt(final long now) {
+		if(this.state == State.OPEN) {
+			return Math.max(now, this.openUntil) ;
+		}
+		return now + this.openMillis ;
+	}
+	
+	public synchronized State getState() {
+		return this.state ;
+	}
+	
+	public int getFailureThreshold() {
+		return this.failureThreshold ;
+	}
+	
+	public long getOpenMillis() {
+		return this.openMillis ;
+	}
+}
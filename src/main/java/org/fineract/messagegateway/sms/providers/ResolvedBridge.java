@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.fineract.messagegateway.constants.MessageGatewayConstants;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.domain.SMSBridgeConfig;
+
+/**
+ * Snapshot of an SMS bridge as the dispatcher needs it: the bridge, its
+ * configurations, its sender numbers and the provider implementation behind
+ * its provider key.
+ */
+public final class ResolvedBridge {
+
+	private final SMSBridge bridge ;
+	
+	private final Map<String, String> configurations ;
+	
+	private final SMSProvider provider ;
+	
+	private final SenderPool senderPool ;
+	
+	public ResolvedBridge(final SMSBridge bridge, final SMSProvider provider) {
+		this.bridge = bridge ;
+		final Map<String, String> configurations = new HashMap<>() ;
+		for(SMSBridgeConfig config: bridge.getBridgeConfigurations()) {
+			configurations.put(config.getConfigName(), config.getConfigValue()) ;
+		}
+		this.configurations = Collections.unmodifiableMap(configurations) ;
+		this.provider = provider ;
+		this.senderPool = SenderPool.parse(this.configurations.get(MessageGatewayConstants.PROVIDER_SENDER_NUMBERS)) ;
+	}
+	
+	public SMSBridge getBridge() {
+		return this.bridge ;
+	}
+	
+	public String getConfigValue(final String configName) {
+		return this.configurations.get(configName) ;
+	}
+	
+	public Map<String, String> getConfigurations() {
+		return this.configurations ;
+	}
+	
+	public SMSProvider getProvider() {
+		return this.provider ;
+	}
+	
+	public SenderPool getSenderPool() {
+		return this.senderPool ;
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.fineract.messagegateway.configuration.RetryConfig;
+import org.fineract.messagegateway.constants.MessageGatewayConstants;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides what happens to a message after a transient provider failure. The
+ * message stays PENDING with its next attempt time set until the bridge
+ * maximum of attempts is used up, the wait doubles with every attempt and
+ * is jittered so that a burst of failures is not retried in lockstep.
+ */
+@Component
+public class RetryPolicy {
+
+	private static final Logger logger = LoggerFactory.getLogger(RetryPolicy.class);
+	
+	private final RetryConfig retryConfig ;
+	
+	private final CounterService counterService ;
+	
+	@Autowired
+	public RetryPolicy(final RetryConfig retryConfig, final CounterService counterService) {
+		this.retryConfig = retryConfig ;
+		this.counterService = counterService ;
+	}
+	
+	/**
+	 * @return true if the message was scheduled for another attempt, false if
+	 * it ran out of attempts and was marked FAILED
+	 */
+	public boolean retryLater(final SMSBridge bridge, final SMSMessage message, final String reason) {
+		final int maxAttempts = getMaxAttempts(bridge) ;
+		message.setDeliveryErrorMessage(reason);
+		if(message.getAttemptCount() >= maxAttempts) {
+			logger.error("Giving up on message "+message.getId()+" after "+message.getAttemptCount()+" attempts, last failure "+reason);
+			message.setDeliveryStatus(SmsMessageStatusType.FAILED.getValue());
+			this.counterService.increment("retry.exhausted");
+			return false ;
+		}
+		final long backoff = backoffMillis(message.getAttemptCount()) ;
+		logger.info("Retrying message "+message.getId()+" in "+backoff+" ms, attempt "+message.getAttemptCount()+" failed with reason "+reason);
+		message.setNextAttemptOn(new Date(System.currentTimeMillis() + backoff));
+		this.counterService.increment("retry.scheduled");
+		this.counterService.increment("retry.bridge." + bridge.getId() + ".scheduled");
+		return true ;
+	}
+	
+	/**
+	 * Half of the exponential delay plus a random share of the other half.
+	 */
+	long backoffMillis(final int attempt) {
+		final long cap = this.retryConfig.getMaxBackoffSeconds() * 1000L ;
+		long delay = this.retryConfig.getInitialBackoffMillis() ;
+		for(int i = 1 ; i < attempt && delay < cap; i++) {
+			delay *= 2 ;
+		}
+		delay = Math.min(delay, cap) ;
+		final long half = delay / 2 ;
+		return half + ThreadLocalRandom.current().nextLong(half + 1) ;
+	}
+	
+	private int getMaxAttempts(final SMSBridge bridge) {
+		final String configured = bridge.getConfigValue(MessageGatewayConstants.PROVIDER_MAX_ATTEMPTS) ;
+		if(configured != null && !configured.trim().isEmpty()) {
+			try {
+				return Integer.parseInt(configured.trim()) ;
+			} catch (NumberFormatException e) {
+				logger.warn("Ignoring invalid "+MessageGatewayConstants.PROVIDER_MAX_ATTEMPTS+" "+configured+" of bridge "+bridge.getId());
+			}
+		}
+		return this.retryConfig.getMaxAttempts() ;
+	}
+}
@@ -18,18 +18,272 @@
  */
 package org.fineract.messagegateway.sms.providers;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.fineract.messagegateway.configuration.DispatcherConfig;
+import org.fineract.messagegateway.configuration.ProviderClientConfig;
 import org.fineract.messagegateway.constants.MessageGatewayConstants;
 import org.fineract.messagegateway.exception.MessageGatewayException;
 import org.fineract.messagegateway.sms.domain.SMSBridge;
 import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.util.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 public abstract class SMSProvider {
 	
+	private static final Logger logger = LoggerFactory.getLogger(SMSProvider.class);
+	
+	@Autowired
+	private ProviderClientConfig providerClientConfig ;
+	
+	@Autowired
+	private DispatcherConfig dispatcherConfig ;
+	
+	//Provider clients by bridge id and credential fingerprint, closed once evicted and no longer leased
+	private Cache<ClientKey, ClientHandle> clients ;
+	
+	//Runs blocking provider calls for the asynchronous SPI
+	private ExecutorService asyncExecutor ;
+	
 	public abstract void sendMessage(final SMSBridge smsBridgeConfig, final SMSMessage message)
 	        throws MessageGatewayException ;
 	
+	/**
+	 * Sends up to {@link #getMaxBatchSize(SMSBridge)} messages of the bridge.
+	 * Providers taking several messages per request override both methods,
+	 * by default the messages are sent one by one.
+	 */
+	public void sendMessages(final SMSBridge smsBridgeConfig, final List<SMSMessage> messages)
+			throws MessageGatewayException {
+		for(SMSMessage message: messages) {
+			sendMessage(smsBridgeConfig, message) ;
+		}
+	}
+	
+	public int getMaxBatchSize(final SMSBridge smsBridge) {
+		return 1 ;
+	}
+	
+	/**
+	 * Sends the message without blocking the caller. The future completes
+	 * with the message once the provider outcome is applied to it, or
+	 * exceptionally with what {@link #sendMessage(SMSBridge, SMSMessage)} would
+	 * throw. By default sendMessage runs on one of provider-client.async-threads
+	 * threads, or on a virtual thread of its own with dispatcher.mode=virtual.
+	 * Providers whose SDK has truly non-blocking calls, which do not just move
+	 * the blocking call to a thread pool of their own, override this.
+	 */
+	public CompletableFuture<SMSMessage> sendMessageAsync(final SMSBridge smsBridgeConfig, final SMSMessage message) {
+		return callAsync(new Callable<SMSMessage>() {
+			@Override
+			public SMSMessage call() throws MessageGatewayException {
+				sendMessage(smsBridgeConfig, message) ;
+				return message ;
+			}
+		}) ;
+	}
+	
+	/**
+	 * Asynchronous variant of {@link #sendMessages(SMSBridge, List)}, see
+	 * {@link #sendMessageAsync(SMSBridge, SMSMessage)}.
+	 */
+	public CompletableFuture<List<SMSMessage>> sendMessagesAsync(final SMSBridge smsBridgeConfig, final List<SMSMessage> messages) {
+		return callAsync(new Callable<List<SMSMessage>>() {
+			@Override
+			public List<SMSMessage> call() throws MessageGatewayException {
+				sendMessages(smsBridgeConfig, messages) ;
+				return messages ;
+			}
+		}) ;
+	}
+	
+	/**
+	 * @return the number to send the message from, the one assigned from the
+	 * bridge's Sender_Numbers or else the bridge phone number
+	 */
+	protected String getSender(final SMSBridge smsBridge, final SMSMessage message) {
+		final String assigned = getPooledSender(message) ;
+		return assigned != null ? assigned : smsBridge.getPhoneNo() ;
+	}
+	
+	/**
+	 * @return the number {@link SMSProviderFactory} assigned from the bridge's
+	 * Sender_Numbers, null if the bridge has none. A source address the
+	 * message came with is only used if it is one of them.
+	 */
+	protected String getPooledSender(final SMSMessage message) {
+		return message.getPooledSender() ;
+	}
+	
+	/**
+	 * @return provider requests of the bridge which may be in flight at the same time
+	 */
+	public int getMaxInFlight(final SMSBridge smsBridge) {
+		return getMaxConnections(smsBridge) ;
+	}
+	
+	@PostConstruct
+	public void initClients() {
+		this.clients = CacheBuilder.newBuilder()
+				.maximumSize(this.providerClientConfig.getMaxClients())
+				.expireAfterAccess(this.providerClientConfig.getIdleMinutes(), TimeUnit.MINUTES)
+				.removalListener(new RemovalListener<ClientKey, ClientHandle>() {
+					@Override
+					public void onRemoval(final RemovalNotification<ClientKey, ClientHandle> notification) {
+						//Requests still using the client close it when they release it
+						if(notification.getValue().retire()) {
+							closeClient(notification.getValue().client);
+						}
+					}
+				})
+				.build() ;
+		//A blocking call only holds a carrier thread until it waits on the network
+		this.asyncExecutor = this.dispatcherConfig.isVirtualThreadMode() ? VirtualThreads.newVirtualThreadPerTaskExecutor()
+				: Executors.newFixedThreadPool(this.providerClientConfig.getAsyncThreads()) ;
+	}
+	
+	@PreDestroy
+	public void closeClients() {
+		this.asyncExecutor.shutdown();
+		this.clients.invalidateAll();
+	}
+	
+	/**
+	 * Drops the clients of a bridge, e.g. after its credentials changed. A
+	 * client is closed once the requests which leased it are over.
+	 */
+	public void invalidateClients(final Long bridgeId) {
+		for(ClientKey key: this.clients.asMap().keySet()) {
+			if(key.bridgeId.equals(bridgeId)) {
+				this.clients.invalidate(key);
+			}
+		}
+	}
+	
+	/**
+	 * Leases the client of the bridge for its current credentials, creating it
+	 * with factory on first use. Safe to call from any number of dispatch
+	 * threads. The client stays open until the lease is closed, even if it is
+	 * evicted meanwhile, so a lease must only be held for the requests of one
+	 * send.
+	 */
+	protected <C> ClientLease<C> leaseClient(final SMSBridge smsBridge, final Callable<C> factory) {
+		final ClientKey key = new ClientKey(smsBridge.getId(), fingerprint(smsBridge)) ;
+		final Callable<ClientHandle> handleFactory = new Callable<ClientHandle>() {
+			@Override
+			public ClientHandle call() throws Exception {
+				return new ClientHandle(factory.call()) ;
+			}
+		} ;
+		while(true) {
+			final ClientHandle handle ;
+			try {
+				handle = this.clients.get(key, handleFactory) ;
+			} catch (UncheckedExecutionException e) {
+				if(e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause() ;
+				}
+				throw e ;
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause()) ;
+			}
+			//A client retired between the lookup and here is already out of the cache, the next lookup creates a new one
+			if(handle.retain()) {
+				return new ClientLease<>(handle) ;
+			}
+		}
+	}
+	
+	/**
+	 * @return connections a client of the bridge may keep open
+	 */
+	protected int getMaxConnections(final SMSBridge smsBridge) {
+		final String configured = smsBridge.getConfigValue(MessageGatewayConstants.PROVIDER_MAX_CONNECTIONS) ;
+		if(configured != null) {
+			try {
+				return Math.max(1, Integer.parseInt(configured.trim())) ;
+			} catch (NumberFormatException e) {
+				logger.warn("Ignoring invalid "+MessageGatewayConstants.PROVIDER_MAX_CONNECTIONS+" "+configured+" of bridge "+smsBridge.getId());
+			}
+		}
+		return this.providerClientConfig.getMaxConnections() ;
+	}
+	
+	/**
+	 * @return Max_Batch_Size of the bridge, or defaultSize if it has none
+	 */
+	protected int getConfiguredBatchSize(final SMSBridge smsBridge, final int defaultSize) {
+		final String configured = smsBridge.getConfigValue(MessageGatewayConstants.PROVIDER_MAX_BATCH_SIZE) ;
+		if(configured != null) {
+			try {
+				return Math.max(1, Integer.parseInt(configured.trim())) ;
+			} catch (NumberFormatException e) {
+				logger.warn("Ignoring invalid "+MessageGatewayConstants.PROVIDER_MAX_BATCH_SIZE+" "+configured+" of bridge "+smsBridge.getId());
+			}
+		}
+		return defaultSize ;
+	}
+	
+	/**
+	 * Adapts a blocking provider call, the future completes with its outcome.
+	 */
+	protected <T> CompletableFuture<T> callAsync(final Callable<T> call) {
+		final CompletableFuture<T> future = new CompletableFuture<>() ;
+		try {
+			this.asyncExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						future.complete(call.call()) ;
+					} catch (Throwable e) {
+						future.completeExceptionally(e) ;
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e) ;
+		}
+		return future ;
+	}
+	
+	protected ProviderClientConfig getProviderClientConfig() {
+		return this.providerClientConfig ;
+	}
+	
+	protected void closeClient(final Object client) {
+		if(client instanceof Closeable) {
+			try {
+				((Closeable) client).close();
+			} catch (IOException e) {
+				logger.warn("Closing provider client failed with reason "+e.getMessage());
+			}
+		}
+	}
+	
 	protected String encodeBase64(final SMSBridge smsBridgeConfig) {
 		String tenant = smsBridgeConfig.getTenantId().toString() ;
 		String username = smsBridgeConfig.getConfigValue(MessageGatewayConstants.PROVIDER_ACCOUNT_ID) ;
@@ -37,4 +291,110 @@ public abstract class SMSProvider {
         String userPass = username + ":" + password + ":" + tenant;
         return Base64.getEncoder().encodeToString(userPass.getBytes());
     }
+	
+	/**
+	 * Digest of the bridge credentials, so that clients are not looked up by the credentials themselves.
+	 */
+	protected String fingerprint(final SMSBridge smsBridgeConfig) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256") ;
+			return Base64.getEncoder().encodeToString(digest.digest(encodeBase64(smsBridgeConfig).getBytes(StandardCharsets.UTF_8))) ;
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e) ;
+		}
+	}
+	
+	/**
+	 * A provider client leased for the requests of one send, see
+	 * {@link SMSProvider#leaseClient(SMSBridge, Callable)}.
+	 */
+	public final class ClientLease<C> implements AutoCloseable {
+		
+		private final ClientHandle handle ;
+		
+		private boolean closed ;
+		
+		ClientLease(final ClientHandle handle) {
+			this.handle = handle ;
+		}
+		
+		@SuppressWarnings("unchecked")
+		public C get() {
+			return (C) this.handle.client ;
+		}
+		
+		@Override
+		public void close() {
+			if(this.closed) {
+				return ;
+			}
+			this.closed = true ;
+			if(this.handle.release()) {
+				closeClient(this.handle.client);
+			}
+		}
+	}
+	
+	//Counts the leases of a client, so that evicting it does not close it under a request
+	static final class ClientHandle {
+		
+		final Object client ;
+		
+		private int leases ;
+		
+		private boolean retired ;
+		
+		ClientHandle(final Object client) {
+			this.client = client ;
+		}
+		
+		synchronized boolean retain() {
+			if(this.retired) {
+				return false ;
+			}
+			this.leases++ ;
+			return true ;
+		}
+		
+		/**
+		 * @return true if the client was retired and this was its last lease
+		 */
+		synchronized boolean release() {
+			this.leases-- ;
+			return this.retired && this.leases == 0 ;
+		}
+		
+		/**
+		 * @return true if no lease holds the client, it is to be closed right away
+		 */
+		synchronized boolean retire() {
+			this.retired = true ;
+			return this.leases == 0 ;
+		}
+	}
+	
+	static final class ClientKey {
+		
+		final Long bridgeId ;
+		final String fingerprint ;
+		
+		ClientKey(final Long bridgeId, final String fingerprint) {
+			this.bridgeId = bridgeId ;
+			this.fingerprint = fingerprint ;
+		}
+		
+		@Override
+		public boolean equals(final Object obj) {
+			if(!(obj instanceof ClientKey)) {
+				return false ;
+			}
+			final ClientKey other = (ClientKey) obj ;
+			return this.bridgeId.equals(other.bridgeId) && this.fingerprint.equals(other.fingerprint) ;
+		}
+		
+		@Override
+		public int hashCode() {
+			return 31 * this.bridgeId.hashCode() + this.fingerprint.hashCode() ;
+		}
+	}
 }
@@ -18,90 +18,318 @@
  */
 package org.fineract.messagegateway.sms.providers;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.fineract.messagegateway.exception.MessageGatewayException;
+import org.fineract.messagegateway.exception.ProviderUnavailableException;
 import org.fineract.messagegateway.sms.domain.SMSBridge;
 import org.fineract.messagegateway.sms.domain.SMSMessage;
 import org.fineract.messagegateway.sms.exception.ProviderNotDefinedException;
 import org.fineract.messagegateway.sms.exception.SMSBridgeNotFoundException;
-import org.fineract.messagegateway.sms.repository.SMSBridgeRepository;
+import org.fineract.messagegateway.sms.providers.BridgeInFlightLimiter.InFlight;
 import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
-import org.springframework.context.ApplicationContextAware;
 import org.springframework.stereotype.Component;
 
 @Component
-public class SMSProviderFactory implements ApplicationContextAware {
+public class SMSProviderFactory {
 
 	 private static final Logger logger = LoggerFactory.getLogger(SMSProviderFactory.class);
 	 
-	private ApplicationContext applicationContext;
+	private final BridgeCache bridgeCache;
+
+	private final BridgeRateLimiter bridgeRateLimiter;
+
+	private final RetryPolicy retryPolicy;
+
+	private final BridgeCircuitBreaker bridgeCircuitBreaker;
+
+	private final BridgeInFlightLimiter bridgeInFlightLimiter;
 
-	private final SMSBridgeRepository smsBridgeRepository;
+	//Sends the requests which had to wait for rate limit permits or a request slot
+	private ScheduledExecutorService pacingTimer;
 
 	@Autowired
-	public SMSProviderFactory(final SMSBridgeRepository smsBridgeRepository) {
-		this.smsBridgeRepository = smsBridgeRepository;
+	public SMSProviderFactory(final BridgeCache bridgeCache,
+			final BridgeRateLimiter bridgeRateLimiter,
+			final RetryPolicy retryPolicy,
+			final BridgeCircuitBreaker bridgeCircuitBreaker,
+			final BridgeInFlightLimiter bridgeInFlightLimiter) {
+		this.bridgeCache = bridgeCache;
+		this.bridgeRateLimiter = bridgeRateLimiter;
+		this.retryPolicy = retryPolicy;
+		this.bridgeCircuitBreaker = bridgeCircuitBreaker;
+		this.bridgeInFlightLimiter = bridgeInFlightLimiter;
 	}
 
-	public SMSProvider getSMSProvider(final SMSMessage message) throws SMSBridgeNotFoundException, ProviderNotDefinedException {
-		SMSBridge bridge = this.smsBridgeRepository.findByIdAndTenantId(message.getBridgeId(),
-				message.getTenantId());
-		if (bridge == null) {
-			throw new SMSBridgeNotFoundException(message.getBridgeId());
-		}
-		SMSProvider provider = (SMSProvider) this.applicationContext.getBean(bridge.getProviderKey()) ;
-		if(provider == null) throw new ProviderNotDefinedException() ;
-		return provider ;
+	@PostConstruct
+	public void init() {
+		this.pacingTimer = Executors.newSingleThreadScheduledExecutor() ;
 	}
 
-	@Override
-	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
-		this.applicationContext = applicationContext;
+	@PreDestroy
+	public void destroy() {
+		this.pacingTimer.shutdown();
 	}
 
-	public void sendShortMessage(final SMSMessage message) {
-		SMSBridge bridge = this.smsBridgeRepository.findByIdAndTenantId(message.getBridgeId(),
-				message.getTenantId());
-		SMSProvider provider = null;
-		try {
-			if (bridge == null) {
-				throw new SMSBridgeNotFoundException(message.getBridgeId());
+	public SMSProvider getSMSProvider(final SMSMessage message) throws SMSBridgeNotFoundException, ProviderNotDefinedException {
+		return this.bridgeCache.resolve(message.getTenantId(), message.getBridgeId()).getProvider() ;
+	}
+
+	/**
+	 * Sends the messages bridge by bridge, in requests of up to the provider's
+	 * batch size, without waiting for the providers. Each bridge has up to
+	 * {@link SMSProvider#getMaxInFlight(SMSBridge)} requests in flight, further
+	 * requests wait in the bridge's queue. A request which has to wait for
+	 * rate limit permits is held back on a timer. Either way the caller goes
+	 * on with the next one. Requests of a bridge leave in message order.
+	 * 
+	 * @return completes once the outcome of every message is applied to it
+	 */
+	public CompletableFuture<Void> sendShortMessages(final Collection<SMSMessage> messages) {
+		final Map<String, List<SMSMessage>> byBridge = new LinkedHashMap<>() ;
+		for(SMSMessage message: messages) {
+			final String key = message.getTenantId() + ":" + message.getBridgeId() ;
+			List<SMSMessage> sameBridge = byBridge.get(key) ;
+			if(sameBridge == null) {
+				sameBridge = new ArrayList<>() ;
+				byBridge.put(key, sameBridge) ;
 			}
-			provider = (SMSProvider) this.applicationContext.getBean(bridge.getProviderKey()) ;
-			if (provider == null) throw new ProviderNotDefinedException();
-			provider.sendMessage(bridge, message);
-			message.setDeliveryStatus(SmsMessageStatusType.SENT.getValue());
-		} catch (SMSBridgeNotFoundException | MessageGatewayException | ProviderNotDefinedException | BeansException e) {
-			logger.error(e.getMessage());
-			message.setDeliveryErrorMessage(e.getMessage());
-			message.setDeliveryStatus(SmsMessageStatusType.FAILED.getValue());
+			sameBridge.add(message) ;
+		}
+		final List<CompletableFuture<Void>> requests = new ArrayList<>() ;
+		for(List<SMSMessage> sameBridge: byBridge.values()) {
+			send(sameBridge, requests) ;
+		}
+		return CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[requests.size()])) ;
+	}
+	
+	/**
+	 * @return messages of the message's bridge which may go out in one provider request
+	 */
+	public int getMaxBatchSize(final SMSMessage message) {
+		try {
+			final ResolvedBridge resolved = this.bridgeCache.resolve(message.getTenantId(), message.getBridgeId());
+			return Math.max(1, resolved.getProvider().getMaxBatchSize(resolved.getBridge())) ;
+		} catch (SMSBridgeNotFoundException | BeansException e) {
+			//Sending reports the problem
+			return 1 ;
 		}
 	}
 	
-	public void sendShortMessage(final Collection<SMSMessage> messages) {
+	private void send(final List<SMSMessage> messages, final List<CompletableFuture<Void>> requests) {
+		final ResolvedBridge resolved ;
+		try {
+			resolved = this.bridgeCache.resolve(messages.get(0).getTenantId(), messages.get(0).getBridgeId());
+		} catch (SMSBridgeNotFoundException | BeansException e) {
+			logger.error(e.getMessage());
+			fail(messages, e.getMessage()) ;
+			return ;
+		}
+		final SMSBridge bridge = resolved.getBridge();
+		final List<SMSMessage> allowed = new ArrayList<>(messages.size()) ;
 		for(SMSMessage message: messages) {
-			SMSBridge bridge = this.smsBridgeRepository.findByIdAndTenantId(message.getBridgeId(),
-					message.getTenantId());
-			SMSProvider provider = null;
-			try {
-				if (bridge == null) {
-					throw new SMSBridgeNotFoundException(message.getBridgeId());
+			//Parked until the bridge is probed again otherwise
+			if (this.bridgeCircuitBreaker.allow(bridge, message)) {
+				allowed.add(message) ;
+			}
+		}
+		final int batchSize = Math.max(1, resolved.getProvider().getMaxBatchSize(bridge)) ;
+		for(int from = 0 ; from < allowed.size(); from += batchSize) {
+			requests.add(send(resolved, allowed.subList(from, Math.min(allowed.size(), from + batchSize)))) ;
+		}
+	}
+	
+	//Completes once the outcome of the batch is applied, also when it waited for a request slot
+	private CompletableFuture<Void> send(final ResolvedBridge resolved, final List<SMSMessage> batch) {
+		final InFlight inFlight = this.bridgeInFlightLimiter.limitFor(resolved.getBridge(), resolved.getProvider().getMaxInFlight(resolved.getBridge())) ;
+		final CompletableFuture<Void> done = new CompletableFuture<>() ;
+		final Runnable request = new Runnable() {
+			@Override
+			public void run() {
+				start(resolved, batch, inFlight).whenComplete(new BiConsumer<Void, Throwable>() {
+					@Override
+					public void accept(final Void result, final Throwable error) {
+						done.complete(null) ;
+					}
+				}) ;
+			}
+		} ;
+		if(inFlight.tryStart(request)) {
+			request.run();
+		}
+		return done ;
+	}
+	
+	private CompletableFuture<Void> start(final ResolvedBridge resolved, final List<SMSMessage> batch, final InFlight inFlight) {
+		final SMSBridge bridge = resolved.getBridge();
+		final long waitNanos ;
+		try {
+			assignSenders(resolved.getSenderPool(), batch) ;
+			//Wait for our turn instead of having the provider throttle us
+			waitNanos = reservePermits(bridge, resolved.getSenderPool(), batch) ;
+		} catch (RuntimeException e) {
+			release(inFlight) ;
+			applyOutcome(bridge, batch, e) ;
+			return CompletableFuture.completedFuture(null) ;
+		}
+		if(waitNanos <= 0) {
+			return send(resolved, batch, inFlight) ;
+		}
+		final CompletableFuture<Void> done = new CompletableFuture<>() ;
+		try {
+			this.pacingTimer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					send(resolved, batch, inFlight).whenComplete(new BiConsumer<Void, Throwable>() {
+						@Override
+						public void accept(final Void result, final Throwable error) {
+							done.complete(null) ;
+						}
+					}) ;
 				}
-				provider = (SMSProvider) this.applicationContext.getBean(bridge.getProviderKey()) ;
-				if (provider == null)
-					throw new ProviderNotDefinedException();
-				provider.sendMessage(bridge, message);
-			} catch (SMSBridgeNotFoundException | MessageGatewayException | ProviderNotDefinedException | BeansException e) {
-				logger.error(e.getMessage());
-				message.setDeliveryErrorMessage(e.getMessage());
-				message.setDeliveryStatus(SmsMessageStatusType.FAILED.getValue());
+			}, waitNanos, TimeUnit.NANOSECONDS) ;
+		} catch (RejectedExecutionException e) {
+			//Shutting down, the messages stay PENDING and are sent again once their lease expires
+			release(inFlight) ;
+			logger.info("Not sending "+batch.size()+" messages through SMS bridge "+bridge.getId()+", shutting down");
+			done.complete(null) ;
+		}
+		return done ;
+	}
+	
+	private CompletableFuture<Void> send(final ResolvedBridge resolved, final List<SMSMessage> batch, final InFlight inFlight) {
+		final SMSBridge bridge = resolved.getBridge();
+		final SMSProvider provider = resolved.getProvider();
+		final CompletableFuture<?> sent ;
+		try {
+			for(SMSMessage message: batch) {
+				message.startAttempt();
 			}
+			sent = batch.size() == 1 ? provider.sendMessageAsync(bridge, batch.get(0)) : provider.sendMessagesAsync(bridge, batch) ;
+		} catch (RuntimeException e) {
+			release(inFlight) ;
+			applyOutcome(bridge, batch, e) ;
+			return CompletableFuture.completedFuture(null) ;
+		}
+		return sent.handle(new BiFunction<Object, Throwable, Void>() {
+			@Override
+			public Void apply(final Object result, final Throwable error) {
+				release(inFlight) ;
+				applyOutcome(bridge, batch, error) ;
+				return null ;
+			}
+		}) ;
+	}
+	
+	//The next request of the bridge starts on the pacing thread, a chain of requests completing right away would nest otherwise
+	private void release(final InFlight inFlight) {
+		final Runnable next = inFlight.release() ;
+		if(next == null) {
+			return ;
+		}
+		try {
+			this.pacingTimer.execute(next);
+		} catch (RejectedExecutionException e) {
+			next.run();
+		}
+	}
+	
+	//A recipient keeps its sender number, also across attempts. A source address the client chose is kept if it is one of the pool
+	private void assignSenders(final SenderPool senderPool, final List<SMSMessage> batch) {
+		for(SMSMessage message: batch) {
+			if(senderPool.isEmpty()) {
+				message.setPooledSender(null);
+				continue ;
+			}
+			final String requested = message.getSourceAddress() ;
+			final String sender = requested != null && senderPool.contains(requested) ? requested : senderPool.senderFor(message.getMobileNumber()) ;
+			message.setSourceAddress(sender);
+			message.setPooledSender(sender);
+		}
+	}
+	
+	//Bridges with sender numbers are limited per number, the batch leaves once the last of its senders may send
+	private long reservePermits(final SMSBridge bridge, final SenderPool senderPool, final List<SMSMessage> batch) {
+		final Map<String, Integer> permits = new LinkedHashMap<>() ;
+		for(SMSMessage message: batch) {
+			final String sender = senderPool.isEmpty() ? null : message.getSourceAddress() ;
+			final Integer counted = permits.get(sender) ;
+			permits.put(sender, counted == null ? 1 : counted + 1) ;
+		}
+		long waitNanos = 0 ;
+		for(Map.Entry<String, Integer> sender: permits.entrySet()) {
+			waitNanos = Math.max(waitNanos, this.bridgeRateLimiter.reserve(bridge, sender.getKey(), sender.getValue())) ;
+		}
+		return waitNanos ;
+	}
+	
+	//Every outcome is reported to the circuit breaker, a half-open circuit waits for its probe otherwise
+	private void applyOutcome(final SMSBridge bridge, final List<SMSMessage> batch, final Throwable error) {
+		if(error == null) {
+			this.bridgeCircuitBreaker.onSuccess(bridge);
+			for(SMSMessage message: batch) {
+				accepted(message) ;
+			}
+			return ;
+		}
+		final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error ;
+		if(cause instanceof ProviderUnavailableException) {
+			this.bridgeCircuitBreaker.onFailure(bridge);
+			//Leaves the messages PENDING with a next attempt time unless they ran out of attempts
+			for(SMSMessage message: batch) {
+				this.retryPolicy.retryLater(bridge, message, cause.getMessage());
+			}
+		} else if(cause instanceof MessageGatewayException) {
+			//The bridge answered, turning down these messages does not make it unhealthy
+			this.bridgeCircuitBreaker.onSuccess(bridge);
+			logger.error(cause.getMessage());
+			fail(batch, cause.getMessage()) ;
+		} else if(cause instanceof BeansException) {
+			this.bridgeCircuitBreaker.onFailure(bridge);
+			logger.error(cause.getMessage());
+			fail(batch, cause.getMessage()) ;
+		} else {
+			//Left PENDING, the messages are sent again once their lease expires
+			this.bridgeCircuitBreaker.onFailure(bridge);
+			logger.error("Sending "+batch.size()+" messages through SMS bridge "+bridge.getId()+" failed with reason "+cause.getMessage(), cause);
+		}
+	}
+	
+	/**
+	 * The provider took the message, a status it left below WAITING_FOR_REPORT
+	 * (e.g. Twilio's accepted or queued) would keep it leased and have it sent
+	 * again once the lease expires. The report moves it on from here.
+	 */
+	private void accepted(final SMSMessage message) {
+		final Integer status = message.getDeliveryStatus() ;
+		if(status == null || status < SmsMessageStatusType.WAITING_FOR_REPORT.getValue()) {
+			message.setDeliveryStatus(SmsMessageStatusType.WAITING_FOR_REPORT.getValue());
+		}
+	}
+	
+	private void fail(final List<SMSMessage> messages, final String reason) {
+		for(SMSMessage message: messages) {
+			message.setDeliveryErrorMessage(reason);
+			message.setDeliveryStatus(SmsMessageStatusType.FAILED.getValue());
 		}
 	}
 }
@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Sender numbers of a bridge configured with Sender_Numbers. Providers cap
+ * the throughput per sending number, spreading the messages of a bridge over
+ * several numbers multiplies what the bridge can send.
+ * <p>
+ * A recipient keeps getting its messages from the same number. Numbers are
+ * picked by rendezvous hashing, adding or removing a number only moves the
+ * recipients of that number.
+ */
+public final class SenderPool {
+
+	private static final HashFunction HASH = Hashing.murmur3_32() ;
+	
+	private final List<String> senders ;
+	
+	private SenderPool(final List<String> senders) {
+		this.senders = senders ;
+	}
+	
+	/**
+	 * @param configured comma separated numbers, null for a bridge without pool
+	 */
+	public static SenderPool parse(final String configured) {
+		final Set<String> senders = new LinkedHashSet<>() ;
+		if(configured != null) {
+			for(String sender: configured.split(",")) {
+				if(!sender.trim().isEmpty()) {
+					senders.add(sender.trim()) ;
+				}
+			}
+		}
+		return new SenderPool(Collections.unmodifiableList(new ArrayList<>(senders))) ;
+	}
+	
+	public boolean isEmpty() {
+		return this.senders.isEmpty() ;
+	}
+	
+	public List<String> getSenders() {
+		return this.senders ;
+	}
+	
+	public boolean contains(final String sender) {
+		return this.senders.contains(sender) ;
+	}
+	
+	/**
+	 * @return the number sending to recipient, null if the pool is empty
+	 */
+	public String senderFor(final String recipient) {
+		String chosen = null ;
+		long highest = Long.MIN_VALUE ;
+		for(String sender: this.senders) {
+			final long weight = HASH.newHasher()
+					.putString(recipient, StandardCharsets.UTF_8)
+					.putChar('|')
+					.putString(sender, StandardCharsets.UTF_8)
+					.hash().asInt() ;
+			if(chosen == null || weight > highest) {
+				chosen = sender ;
+				highest = weight ;
+			}
+		}
+		return chosen ;
+	}
+}
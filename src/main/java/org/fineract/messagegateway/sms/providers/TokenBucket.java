@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket refilled at a fixed rate. Callers reserve a token and are told
+ * how long to wait for it, so waiting happens outside the bucket's lock and
+ * callers are served in arrival order.
+ */
+public class TokenBucket {
+
+	private final double permitsPerSecond ;
+	
+	private final int burstSize ;
+	
+	private final long nanosPerPermit ;
+	
+	private double storedPermits ;
+	
+	//time at which the next permit is available, may lie in the future when permits are owed
+	private long nextFreeNanos ;
+	
+	public TokenBucket(final double permitsPerSecond, final int burstSize) {
+		if(permitsPerSecond <= 0) {
+			throw new IllegalArgumentException("permitsPerSecond must be positive") ;
+		}
+		this.permitsPerSecond = permitsPerSecond ;
+		this.burstSize = Math.max(1, burstSize) ;
+		this.nanosPerPermit = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond) ;
+		this.storedPermits = this.burstSize ;
+		this.nextFreeNanos = System.nanoTime() ;
+	}
+	
+	/**
+	 * Takes permits from the bucket.
+	 * 
+	 * @return nanoseconds the caller has to wait before using them
+	 */
+	public synchronized long reserve(final int permits) {
+		final long now = System.nanoTime() ;
+		if(now > this.nextFreeNanos) {
+			this.storedPermits = Math.min(this.burstSize, this.storedPermits + (now - this.nextFreeNanos) / (double) this.nanosPerPermit) ;
+			this.nextFreeNanos = now ;
+		}
+		final long waitNanos = this.nextFreeNanos - now ;
+		final double fromStore = Math.min(permits, this.storedPermits) ;
+		final double owed = permits - fromStore ;
+		this.storedPermits -= fromStore ;
+		this.nextFreeNanos += (long) (owed * this.nanosPerPermit) ;
+		return waitNanos ;
+	}
+	
+	public double getPermitsPerSecond() {
+		return this.permitsPerSecond ;
+	}
+	
+	public int getBurstSize() {
+		return this.burstSize ;
+	}
+}
@@ -19,6 +19,13 @@
 package org.fineract.messagegateway.sms.providers.impl.dummy;
 
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.fineract.messagegateway.exception.MessageGatewayException;
 import org.fineract.messagegateway.sms.domain.SMSBridge;
@@ -30,8 +37,54 @@ import org.springframework.stereotype.Service;
 @Service(value="Dummy")
 public class DummySMSProvider extends SMSProvider{
 
+	//Optional bridge configuration to simulate a slow provider, e.g. to compare dispatcher modes
+	public static final String LATENCY_MILLIS = "Dummy_Latency_Millis" ;
+	
+	//Completes asynchronous sends once the simulated latency is over, without a thread waiting for it
+	private ScheduledExecutorService latencyTimer ;
+	
+	@PostConstruct
+	public void init() {
+		this.latencyTimer = Executors.newSingleThreadScheduledExecutor() ;
+	}
+	
+	@PreDestroy
+	public void destroy() {
+		this.latencyTimer.shutdownNow() ;
+	}
+	
 	@Override
 	public void sendMessage(SMSBridge smsBridgeConfig, SMSMessage message) throws MessageGatewayException {
+		simulateLatency(smsBridgeConfig);
+		applyOutcome(message) ;
+	}
+	
+	@Override
+	public CompletableFuture<SMSMessage> sendMessageAsync(final SMSBridge smsBridgeConfig, final SMSMessage message) {
+		final CompletableFuture<SMSMessage> future = new CompletableFuture<>() ;
+		final long latency ;
+		try {
+			latency = latencyMillis(smsBridgeConfig) ;
+		} catch (MessageGatewayException e) {
+			future.completeExceptionally(e) ;
+			return future ;
+		}
+		final Runnable send = new Runnable() {
+			@Override
+			public void run() {
+				applyOutcome(message) ;
+				future.complete(message) ;
+			}
+		} ;
+		if(latency <= 0) {
+			send.run();
+		} else {
+			this.latencyTimer.schedule(send, latency, TimeUnit.MILLISECONDS) ;
+		}
+		return future ;
+	}
+	
+	private void applyOutcome(final SMSMessage message) {
 		if (message.getMessage().toUpperCase().contains("DELIVERED")) {
 			message.setDeliveryStatus(SmsMessageStatusType.DELIVERED.getValue());
 		} else if (message.getMessage().toUpperCase().contains("FAILED")) {
@@ -46,4 +99,25 @@ public class DummySMSProvider extends SMSProvider{
 			message.setDeliveredOnDate(new Date());
 		}
 	}
+	
+	private void simulateLatency(final SMSBridge smsBridgeConfig) throws MessageGatewayException {
+		long latency = latencyMillis(smsBridgeConfig) ;
+		if(latency <= 0) return ;
+		try {
+			Thread.sleep(latency);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MessageGatewayException("Interrupted while simulating provider latency") ;
+		}
+	}
+	
+	private long latencyMillis(final SMSBridge smsBridgeConfig) throws MessageGatewayException {
+		String latency = smsBridgeConfig.getConfigValue(LATENCY_MILLIS) ;
+		if(latency == null) return 0 ;
+		try {
+			return Long.parseLong(latency) ;
+		} catch (NumberFormatException e) {
+			throw new MessageGatewayException("Invalid "+LATENCY_MILLIS+" value "+latency) ;
+		}
+	}
 }
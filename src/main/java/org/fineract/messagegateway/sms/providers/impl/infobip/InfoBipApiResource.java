@@ -18,8 +18,10 @@
  */
 package org.fineract.messagegateway.sms.providers.impl.infobip;
 
-import org.fineract.messagegateway.sms.domain.SMSMessage;
-import org.fineract.messagegateway.sms.repository.SmsOutboundMessageRepository;
+import java.util.Date;
+
+import org.fineract.messagegateway.sms.service.DeliveryStatusWriter;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -40,24 +42,42 @@ public class InfoBipApiResource {
 
 	private static final Logger logger = LoggerFactory.getLogger(InfoBipApiResource.class);
 	
-	private final SmsOutboundMessageRepository smsOutboundMessageRepository ;
+	private final DeliveryStatusWriter deliveryStatusWriter ;
 	
 	@Autowired
-	public InfoBipApiResource(final SmsOutboundMessageRepository smsOutboundMessageRepository) {
-		this.smsOutboundMessageRepository = smsOutboundMessageRepository ;
+	public InfoBipApiResource(final DeliveryStatusWriter deliveryStatusWriter) {
+		this.deliveryStatusWriter = deliveryStatusWriter ;
 	}
 	
-	@RequestMapping(value = "/report/{messageId}", method = RequestMethod.POST, consumes = {"application/json"}, produces = {"application/json"})
-    public ResponseEntity<Void> updateDeliveryStatus(@PathVariable("messageId") final Long messageId, @RequestBody final SMSReportResponse payload) {
-    	SMSMessage message = this.smsOutboundMessageRepository.findOne(messageId) ;
-    	if(message != null) {
-    		SMSReport report = payload.getResults().get(0) ;
-    		logger.debug("Status Callback received from InfoBip for "+messageId+" with status:"+report.getStatus());
-    		message.setDeliveryStatus(InfoBipStatus.smsStatus(report.getStatus().getGroupId()).getValue());
-    		this.smsOutboundMessageRepository.save(message) ;
-    	}else {
-    		logger.info("Message with Message id "+messageId+" Not found");
+	//InfoBip batches the reports of several messages into one callback, they are matched by the InfoBip message id
+	@RequestMapping(value = "/report", method = RequestMethod.POST, consumes = {"application/json"}, produces = {"application/json"})
+    public ResponseEntity<Void> updateDeliveryStatus(@RequestBody final SMSReportResponse payload) {
+    	if(payload.getResults() != null) {
+    		for(SMSReport report: payload.getResults()) {
+    			updateDeliveryStatus(report) ;
+    		}
     	}
        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
+	
+	//Messages sent before the bulk callback was registered still report here, the path only names the first of them
+	@RequestMapping(value = "/report/{messageId}", method = RequestMethod.POST, consumes = {"application/json"}, produces = {"application/json"})
+    public ResponseEntity<Void> updateDeliveryStatus(@PathVariable("messageId") final Long messageId, @RequestBody final SMSReportResponse payload) {
+    	return updateDeliveryStatus(payload) ;
+    }
+	
+	private void updateDeliveryStatus(final SMSReport report) {
+		if(report.getMessageId() == null || report.getStatus() == null || report.getStatus().getGroupId() == null) {
+			logger.info("Ignoring InfoBip report without message id or status");
+			return ;
+		}
+		logger.debug("Status Callback received from InfoBip for "+report.getMessageId()+" with status:"+report.getStatus().getName());
+		final SmsMessageStatusType status = InfoBipStatus.smsStatus(report.getStatus().getGroupId()) ;
+		final Date deliveredOn = SmsMessageStatusType.DELIVERED.equals(status) ? report.getDoneAt() : null ;
+		String errorMessage = null ;
+		if(report.getError() != null && report.getError().getGroupId() != null && report.getError().getGroupId() != 0) {
+			errorMessage = report.getError().getDescription() ;
+		}
+		this.deliveryStatusWriter.updateByExternalId(report.getMessageId(), status.getValue(), deliveredOn, errorMessage);
+	}
 }
@@ -18,15 +18,23 @@
  */
 package org.fineract.messagegateway.sms.providers.impl.infobip;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 import org.fineract.messagegateway.configuration.HostConfig;
 import org.fineract.messagegateway.constants.MessageGatewayConstants;
 import org.fineract.messagegateway.exception.MessageGatewayException;
+import org.fineract.messagegateway.exception.ProviderUnavailableException;
 import org.fineract.messagegateway.sms.domain.SMSBridge;
 import org.fineract.messagegateway.sms.domain.SMSMessage;
 import org.fineract.messagegateway.sms.providers.SMSProvider;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -39,60 +47,122 @@ import infobip.api.model.sms.mt.send.Message;
 import infobip.api.model.sms.mt.send.SMSResponse;
 import infobip.api.model.sms.mt.send.SMSResponseDetails;
 import infobip.api.model.sms.mt.send.textual.SMSAdvancedTextualRequest;
+import retrofit.RetrofitError;
 
 @Service(value = "InfoBip")
 public class InfoBipMessageProvider extends SMSProvider {
 
 	private static final Logger logger = LoggerFactory.getLogger(InfoBipMessageProvider.class);
 
-	private HashMap<String, SendMultipleTextualSmsAdvanced> restClients = new HashMap<>() ; //tenantId, twilio clients
+	//Messages per advanced request unless the bridge sets Max_Batch_Size
+	private static final int DEFAULT_BATCH_SIZE = 100 ;
+	
 	private final String callBackUrl ;
-	 
-	private final StringBuilder builder ;
 	  
 	@Autowired
 	public InfoBipMessageProvider(final HostConfig hostConfig) {
-		callBackUrl = String.format("%s://%s:%d/infobip/report/", hostConfig.getProtocol(),  hostConfig.getHostName(), hostConfig.getPort());
+		callBackUrl = String.format("%s://%s:%d/infobip/report", hostConfig.getProtocol(),  hostConfig.getHostName(), hostConfig.getPort());
     	logger.info("Registering call back to InfoBip:"+callBackUrl);
-    	builder = new StringBuilder() ;
 	}
 
 	@Override
 	public void sendMessage(SMSBridge smsBridgeConfig, SMSMessage message) throws MessageGatewayException {
-		String statusCallback = callBackUrl+message.getId() ;
-		//Based on message id, register call back. so that we get notification from Infobip about message status
-		SendMultipleTextualSmsAdvanced client = getRestClient(smsBridgeConfig) ;
-		Destination destination = new Destination();
-		builder.setLength(0);
-        builder.append(smsBridgeConfig.getCountryCode()) ;
-        builder.append(message.getMobileNumber()) ;
-        String mobile = builder.toString() ;
-        logger.info("Sending SMS to " + mobile + " ...");
-		destination.setTo(mobile);
-		Message infoBipMessage = new Message();
-		infoBipMessage.setDestinations(Collections.singletonList(destination));
-		infoBipMessage.setText(message.getMessage());
-		infoBipMessage.setNotifyUrl(statusCallback);
-		infoBipMessage.setNotifyContentType("application/json") ;
-		infoBipMessage.setNotify(true) ;
+		sendMessages(smsBridgeConfig, Collections.singletonList(message)) ;
+	}
+	
+	/**
+	 * Sends the messages with one advanced request, one InfoBip message with a
+	 * single destination per gateway message. Each destination carries its own
+	 * message id, the entries of the response are matched by it, so a message
+	 * InfoBip left out fails on its own whatever order the others come back in.
+	 */
+	@Override
+	public void sendMessages(SMSBridge smsBridgeConfig, List<SMSMessage> messages) throws MessageGatewayException {
+		//Reports are matched by the InfoBip message id, so one callback url serves all messages and InfoBip may batch them
+		String statusCallback = callBackUrl ;
+		List<Message> infoBipMessages = new ArrayList<>(messages.size()) ;
+		for(SMSMessage message: messages) {
+			Destination destination = new Destination();
+	        String mobile = smsBridgeConfig.getCountryCode() + message.getMobileNumber() ;
+			destination.setTo(mobile);
+			destination.setMessageId(messageId(message));
+			Message infoBipMessage = new Message();
+			infoBipMessage.setDestinations(Collections.singletonList(destination));
+			infoBipMessage.setText(message.getMessage());
+			//Without sender numbers InfoBip picks the sender of the account
+			String sender = getPooledSender(message) ;
+			if(sender != null) {
+				infoBipMessage.setFrom(sender);
+			}
+			infoBipMessage.setNotifyUrl(statusCallback);
+			infoBipMessage.setNotifyContentType("application/json") ;
+			infoBipMessage.setNotify(true) ;
+			infoBipMessages.add(infoBipMessage) ;
+		}
+		logger.info("Sending " + messages.size() + " SMS through bridge " + smsBridgeConfig.getId() + " ...");
 		SMSAdvancedTextualRequest requestBody = new SMSAdvancedTextualRequest();
-		requestBody.setMessages(Collections.singletonList(infoBipMessage));
-		SMSResponse response = client.execute(requestBody);
-		SMSResponseDetails sentMessageInfo = response.getMessages().get(0);
-		message.setExternalId(sentMessageInfo.getMessageId());
-		message.setDeliveryStatus(InfoBipStatus.smsStatus(sentMessageInfo.getStatus().getGroupId()).getValue());
-		logger.debug("InfoBipMessageProvider.sendMessage():"+InfoBipStatus.smsStatus(sentMessageInfo.getStatus().getGroupId()).getValue());
+		requestBody.setMessages(infoBipMessages);
+		SMSResponse response ;
+		try (ClientLease<SendMultipleTextualSmsAdvanced> client = getRestClient(smsBridgeConfig)) {
+			response = client.get().execute(requestBody);
+		} catch (RetrofitError e) {
+			//No response, throttled or an InfoBip side error, worth another attempt later
+			if(e.isNetworkError() || e.getResponse() == null || e.getResponse().getStatus() == 429 || e.getResponse().getStatus() >= 500) {
+				logger.warn("InfoBip call failed while sending "+messages.size()+" messages with reason "+e.getMessage());
+				throw new ProviderUnavailableException(e.getMessage()) ;
+			}
+			logger.error("InfoBip rejected "+messages.size()+" messages with status "+e.getResponse().getStatus());
+			throw new MessageGatewayException(e.getMessage()) ;
+		}
+		List<SMSResponseDetails> sent = response.getMessages() == null ? Collections.<SMSResponseDetails>emptyList() : response.getMessages() ;
+		Map<String, SMSResponseDetails> sentByMessageId = new HashMap<>() ;
+		for(SMSResponseDetails sentMessageInfo: sent) {
+			if(sentMessageInfo.getMessageId() != null) {
+				sentByMessageId.put(sentMessageInfo.getMessageId(), sentMessageInfo) ;
+			}
+		}
+		for(SMSMessage message: messages) {
+			SMSResponseDetails sentMessageInfo = sentByMessageId.get(messageId(message)) ;
+			if(sentMessageInfo == null) {
+				message.setDeliveryErrorMessage("InfoBip did not return the message");
+				message.setDeliveryStatus(SmsMessageStatusType.FAILED.getValue());
+				continue ;
+			}
+			message.setExternalId(sentMessageInfo.getMessageId());
+			message.setDeliveryStatus(InfoBipStatus.smsStatus(sentMessageInfo.getStatus().getGroupId()).getValue());
+			logger.debug("InfoBipMessageProvider.sendMessages():"+message.getDeliveryStatus());
+		}
 	}
 	
+	//InfoBip reports under this id, a new one per attempt keeps a late report of an earlier attempt apart
+	private static String messageId(final SMSMessage message) {
+		return message.getId() + "-" + message.getAttemptCount() ;
+	}
 	
-	private SendMultipleTextualSmsAdvanced getRestClient(final SMSBridge smsBridge) {
-		String authorizationKey = encodeBase64(smsBridge) ;
-		 SendMultipleTextualSmsAdvanced client = this.restClients.get(authorizationKey) ;
-		if(client == null) {
-			client = this.get(smsBridge) ;
-			this.restClients.put(authorizationKey, client) ;
-		}
-	    return client ;
+	//The SDK only has blocking calls, single messages share the batch request and its adapter
+	@Override
+	public CompletableFuture<SMSMessage> sendMessageAsync(final SMSBridge smsBridgeConfig, final SMSMessage message) {
+		return sendMessagesAsync(smsBridgeConfig, Collections.singletonList(message)).thenApply(new Function<List<SMSMessage>, SMSMessage>() {
+			@Override
+			public SMSMessage apply(final List<SMSMessage> sent) {
+				return message ;
+			}
+		}) ;
+	}
+	
+	@Override
+	public int getMaxBatchSize(final SMSBridge smsBridge) {
+		return getConfiguredBatchSize(smsBridge, DEFAULT_BATCH_SIZE) ;
+	}
+	
+	//The SDK builds its own HTTP client, so Max_Connections does not apply to InfoBip clients
+	private ClientLease<SendMultipleTextualSmsAdvanced> getRestClient(final SMSBridge smsBridge) {
+		return leaseClient(smsBridge, new Callable<SendMultipleTextualSmsAdvanced>() {
+			@Override
+			public SendMultipleTextualSmsAdvanced call() {
+				return get(smsBridge) ;
+			}
+		}) ;
 	 }
 	 
 	SendMultipleTextualSmsAdvanced get(final SMSBridge smsBridgeConfig) {
@@ -18,8 +18,7 @@
  */
 package org.fineract.messagegateway.sms.providers.impl.twilio;
 
-import org.fineract.messagegateway.sms.domain.SMSMessage;
-import org.fineract.messagegateway.sms.repository.SmsOutboundMessageRepository;
+import org.fineract.messagegateway.sms.service.DeliveryStatusWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -37,23 +36,17 @@ public class TwilioApiResource {
 
 	private static final Logger logger = LoggerFactory.getLogger(TwilioApiResource.class);
 	
-	private final SmsOutboundMessageRepository smsOutboundMessageRepository ;
+	private final DeliveryStatusWriter deliveryStatusWriter ;
 	
 	@Autowired
-	public TwilioApiResource(final SmsOutboundMessageRepository smsOutboundMessageRepository) {
-		this.smsOutboundMessageRepository = smsOutboundMessageRepository ;
+	public TwilioApiResource(final DeliveryStatusWriter deliveryStatusWriter) {
+		this.deliveryStatusWriter = deliveryStatusWriter ;
 	}
 	
 	@RequestMapping(value = "/report/{messageId}", method = RequestMethod.POST, consumes = {"application/x-www-form-urlencoded"}, produces = {"application/x-www-form-urlencoded"})
     public ResponseEntity<Void> updateDeliveryStatus(@PathVariable("messageId") final Long messageId, @ModelAttribute final TwilioReponseData payload) {
-    	SMSMessage message = this.smsOutboundMessageRepository.findOne(messageId) ;
-    	if(message != null) {
-    		logger.info("Status Callback received from Twilio for "+messageId+" with status:"+payload.getMessageStatus());
-    		message.setDeliveryStatus(TwilioStatus.smsStatus(payload.getMessageStatus()).getValue());
-    		this.smsOutboundMessageRepository.save(message) ;
-    	}else {
-    		logger.info("Message with Message id "+messageId+" Not found");
-    	}
+    	logger.info("Status Callback received from Twilio for "+messageId+" with status:"+payload.getMessageStatus());
+    	this.deliveryStatusWriter.update(messageId, TwilioStatus.smsStatus(payload.getMessageStatus()).getValue(), null, null);
        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 }
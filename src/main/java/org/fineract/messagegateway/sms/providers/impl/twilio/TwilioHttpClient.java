@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers.impl.twilio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+
+import com.twilio.exception.ApiConnectionException;
+import com.twilio.http.HttpClient;
+import com.twilio.http.HttpMethod;
+import com.twilio.http.Request;
+import com.twilio.http.Response;
+
+/**
+ * Same requests as the SDK's NetworkHttpClient, but with a connection pool
+ * sized per bridge, configurable timeouts and a way to close the pool. The
+ * response body is read right away so that the connection goes back to the
+ * pool before the SDK parses it.
+ */
+public class TwilioHttpClient extends HttpClient implements Closeable {
+
+	private final CloseableHttpClient client ;
+	
+	public TwilioHttpClient(final int maxConnections, final int connectTimeoutMillis, final int socketTimeoutMillis) {
+		final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager() ;
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnections);
+		final RequestConfig config = RequestConfig.custom()
+				.setConnectTimeout(connectTimeoutMillis)
+				.setSocketTimeout(socketTimeoutMillis)
+				.build() ;
+		final List<Header> headers = Arrays.<Header>asList(
+				new BasicHeader("X-Twilio-Client", "java-7.1.0"),
+				new BasicHeader("Accept", "application/json"),
+				new BasicHeader("Accept-Encoding", "utf-8")) ;
+		this.client = HttpClientBuilder.create()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(config)
+				.setDefaultHeaders(headers)
+				.build() ;
+	}
+	
+	@Override
+	public Response makeRequest(final Request request) {
+		final RequestBuilder builder = RequestBuilder.create(request.getMethod().toString())
+				.setUri(request.constructURL().toString())
+				.setVersion(HttpVersion.HTTP_1_1) ;
+		if(request.requiresAuthentication()) {
+			builder.addHeader("Authorization", request.getAuthString()) ;
+		}
+		if(HttpMethod.POST.equals(request.getMethod())) {
+			final List<NameValuePair> params = new ArrayList<>() ;
+			for(Map.Entry<String, List<String>> param: request.getPostParams().entrySet()) {
+				for(String value: param.getValue()) {
+					params.add(new BasicNameValuePair(param.getKey(), value)) ;
+				}
+			}
+			builder.setEntity(new UrlEncodedFormEntity(params, StandardCharsets.UTF_8)) ;
+		}
+		try {
+			final HttpResponse response = this.client.execute(builder.build()) ;
+			final HttpEntity entity = response.getEntity() ;
+			final String content = entity == null ? null : EntityUtils.toString(entity, StandardCharsets.UTF_8) ;
+			return new Response(content, response.getStatusLine().getStatusCode()) ;
+		} catch (IOException e) {
+			throw new ApiConnectionException(e.getMessage(), e) ;
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		this.client.close();
+	}
+}
@@ -19,11 +19,12 @@
 package org.fineract.messagegateway.sms.providers.impl.twilio;
 
 import java.util.Date;
-import java.util.HashMap;
+import java.util.concurrent.Callable;
 
 import org.fineract.messagegateway.configuration.HostConfig;
 import org.fineract.messagegateway.constants.MessageGatewayConstants;
 import org.fineract.messagegateway.exception.MessageGatewayException;
+import org.fineract.messagegateway.exception.ProviderUnavailableException;
 import org.fineract.messagegateway.sms.domain.SMSBridge;
 import org.fineract.messagegateway.sms.domain.SMSMessage;
 import org.fineract.messagegateway.sms.providers.SMSProvider;
@@ -33,27 +34,28 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.twilio.exception.ApiConnectionException;
 import com.twilio.exception.ApiException;
 import com.twilio.http.TwilioRestClient;
 import com.twilio.rest.api.v2010.account.Message;
 import com.twilio.rest.api.v2010.account.MessageCreator;
 import com.twilio.type.PhoneNumber;
 
+/**
+ * Sends through the SDK's blocking create. The asynchronous SPI runs it like
+ * any blocking provider call, on a virtual thread with dispatcher.mode=virtual,
+ * and not through the SDK's createAsync, whose executor is an unbounded pool
+ * of platform threads.
+ */
 @Service(value="Twilio")
 public class TwilioMessageProvider extends SMSProvider {
 
     private static final Logger logger = LoggerFactory.getLogger(TwilioMessageProvider.class);
 
-    private HashMap<String, TwilioRestClient> restClients = new HashMap<>() ; //tenantId, twilio clients
-    
-    
     private final String callBackUrl ;
     
-    private final StringBuilder builder ;
-    
     @Autowired
     TwilioMessageProvider(final HostConfig hostConfig) {
-    	builder = new StringBuilder() ;
     	callBackUrl = String.format("%s://%s:%d/twilio/report/", hostConfig.getProtocol(),  hostConfig.getHostName(), hostConfig.getPort());
     	logger.info("Registering call back to twilio:"+callBackUrl);
     }
@@ -62,48 +64,76 @@ public class TwilioMessageProvider extends SMSProvider {
     @Override
     public void sendMessage(final SMSBridge smsBridgeConfig, final SMSMessage message)
         throws MessageGatewayException {
+        MessageCreator creator = creator(smsBridgeConfig, message) ;
+        try (ClientLease<TwilioRestClient> twilioRestClient = this.getRestClient(smsBridgeConfig)) {
+        	message.setSubmittedOnDate(new Date());
+        	applyResult(message, creator.create(twilioRestClient.get())) ;
+        }catch (ApiConnectionException | ApiException e) {
+        	applyFailure(message, e) ;
+        }
+    }
+    
+    private MessageCreator creator(final SMSBridge smsBridgeConfig, final SMSMessage message) {
     	//Based on message id, register call back. so that we get notification from Twilio about message status
     	String statusCallback = callBackUrl+message.getId() ;
-        final TwilioRestClient twilioRestClient = this.getRestClient(smsBridgeConfig);
-        builder.setLength(0);
-        builder.append(smsBridgeConfig.getCountryCode()) ;
-        builder.append(message.getMobileNumber()) ;
-        String mobile = builder.toString() ;
+        String mobile = smsBridgeConfig.getCountryCode() + message.getMobileNumber() ;
         logger.info("Sending SMS to " + mobile + " ...");
-        MessageCreator creator = new MessageCreator(new PhoneNumber(mobile), new PhoneNumber(smsBridgeConfig.getPhoneNo()) , message.getMessage() ) ;
+        MessageCreator creator = new MessageCreator(new PhoneNumber(mobile), new PhoneNumber(getSender(smsBridgeConfig, message)) , message.getMessage() ) ;
         creator.setStatusCallback(statusCallback) ;
-        try {
-        	message.setSubmittedOnDate(new Date());
-        	Message twilioMessage = creator.create(twilioRestClient) ;
-        	message.setExternalId(twilioMessage.getSid());
-        	logger.debug("TwilioMessageProvider.sendMessage():"+TwilioStatus.smsStatus(twilioMessage.getStatus()).getValue());
-        	message.setDeliveryStatus(TwilioStatus.smsStatus(twilioMessage.getStatus()).getValue()) ;
-        	if(message.getDeliveryStatus().equals(SmsMessageStatusType.FAILED.getValue())) {
-        		message.setDeliveryErrorMessage(twilioMessage.getErrorMessage());
-        		logger.error("Sending SMS to :"+message.getMobileNumber()+" failed with reason "+twilioMessage.getErrorMessage());
-        	}
-        }catch (ApiException e) {
-        	logger.error("ApiException while sending message to :"+message.getMobileNumber()+" with reason "+e.getMessage());
-        	message.setDeliveryStatus(SmsMessageStatusType.FAILED.getValue());
-        	message.setDeliveryErrorMessage(e.getMessage());
-        }
+        return creator ;
     }
     
-    private TwilioRestClient getRestClient(final SMSBridge smsBridge) {
-    	String authorizationKey = encodeBase64(smsBridge) ;
-    	TwilioRestClient client = this.restClients.get(authorizationKey) ;
-		if(client == null) {
-			client = this.get(smsBridge) ;
-			this.restClients.put(authorizationKey, client) ;
-		}
-	    return client ;
+    private void applyResult(final SMSMessage message, final Message twilioMessage) {
+    	message.setExternalId(twilioMessage.getSid());
+    	logger.debug("TwilioMessageProvider.sendMessage():"+TwilioStatus.smsStatus(twilioMessage.getStatus()).getValue());
+    	message.setDeliveryStatus(TwilioStatus.smsStatus(twilioMessage.getStatus()).getValue()) ;
+    	if(message.getDeliveryStatus().equals(SmsMessageStatusType.FAILED.getValue())) {
+    		message.setDeliveryErrorMessage(twilioMessage.getErrorMessage());
+    		logger.error("Sending SMS to :"+message.getMobileNumber()+" failed with reason "+twilioMessage.getErrorMessage());
+    	}
+    }
+    
+    //Either the message failed for good or a ProviderUnavailableException asks for another attempt
+    private void applyFailure(final SMSMessage message, final RuntimeException failure) throws MessageGatewayException {
+    	if(failure instanceof ApiConnectionException) {
+        	logger.warn("Could not reach Twilio while sending message to :"+message.getMobileNumber()+" with reason "+failure.getMessage());
+        	throw new ProviderUnavailableException(failure.getMessage()) ;
+    	}
+    	final ApiException e = (ApiException) failure ;
+    	//Throttled or a Twilio side error, worth another attempt later. A 5xx without a body comes without a status
+    	final Integer status = e.getStatusCode() ;
+    	if(status == null || status == 429 || status >= 500) {
+    		logger.warn("Twilio returned "+status+" while sending message to :"+message.getMobileNumber()+" with reason "+e.getMessage());
+    		throw new ProviderUnavailableException(e.getMessage()) ;
+    	}
+    	logger.error("ApiException while sending message to :"+message.getMobileNumber()+" with reason "+e.getMessage());
+    	message.setDeliveryStatus(SmsMessageStatusType.FAILED.getValue());
+    	message.setDeliveryErrorMessage(e.getMessage());
+    }
+    
+    private ClientLease<TwilioRestClient> getRestClient(final SMSBridge smsBridge) {
+    	return leaseClient(smsBridge, new Callable<TwilioRestClient>() {
+			@Override
+			public TwilioRestClient call() {
+				return get(smsBridge) ;
+			}
+		}) ;
     }
     
     TwilioRestClient get(final SMSBridge smsBridgeConfig) {
     	logger.debug("Creating a new Twilio Client ....");
     	String providerAccountId = smsBridgeConfig.getConfigValue(MessageGatewayConstants.PROVIDER_ACCOUNT_ID) ;
     	String providerAuthToken = smsBridgeConfig.getConfigValue(MessageGatewayConstants.PROVIDER_AUTH_TOKEN) ;
-        final TwilioRestClient client = new TwilioRestClient.Builder(providerAccountId, providerAuthToken).build();
+    	final TwilioHttpClient httpClient = new TwilioHttpClient(getMaxConnections(smsBridgeConfig),
+    			getProviderClientConfig().getConnectTimeoutMillis(), getProviderClientConfig().getSocketTimeoutMillis()) ;
+        final TwilioRestClient client = new TwilioRestClient.Builder(providerAccountId, providerAuthToken)
+        		.httpClient(httpClient)
+        		.build();
         return client;
     }
+    
+    @Override
+    protected void closeClient(final Object client) {
+    	super.closeClient(((TwilioRestClient) client).getHttpClient());
+    }
 }
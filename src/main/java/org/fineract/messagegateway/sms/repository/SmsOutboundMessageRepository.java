@@ -49,11 +49,19 @@ public interface SmsOutboundMessageRepository extends JpaRepository<SMSMessage,
     SMSMessage findByExternalId(String externalId);
 	
 	/** 
-	 * find {@link SmsMessageStatusType} objects with id in "idList" and mifosTenantIdentifier equal to "mifosTenantIdentifier"
+	 * find {@link SmsMessageStatusType} objects with id in "idList" and tenantId equal to "tenantId"
 	 * 
 	 * @param idList -- {@link SmsMessageStatusType} id list
-	 * @param mifosTenantIdentifier -- Mifos X tenant identifier e.g. demo
+	 * @param tenantId -- id of the tenant owning the messages
 	 * @return List of {@link SmsMessageStatusType} objects
 	 **/
-	List<SMSMessage> findByIdInAndTenantId(List<Long> idList, String mifosTenantIdentifier);
+	List<SMSMessage> findByIdInAndTenantId(List<Long> idList, Long tenantId);
+	
+	/** 
+	 * find {@link SMSMessage} objects claimed by a lease owner
+	 * 
+	 * @param leaseOwner -- lease token written while claiming outbox rows
+	 * @return List of {@link SMSMessage} objects
+	 **/
+	List<SMSMessage> findByLeaseOwner(String leaseOwner);
 }
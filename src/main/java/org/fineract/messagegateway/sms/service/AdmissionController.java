@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import java.util.Arrays;
+
+import org.fineract.messagegateway.configuration.DispatcherConfig;
+import org.fineract.messagegateway.exception.PlatformApiDataValidationException;
+import org.fineract.messagegateway.helpers.ApiParameterError;
+import org.fineract.messagegateway.sms.exception.MessageQueueFullException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.stereotype.Service;
+
+/**
+ * Bounds the number of messages a node holds for dispatch (queued or being
+ * sent). Every message handed to the {@link MessageDispatcher} has to be
+ * admitted here first, the dispatcher releases it once the send attempt is
+ * over. The observed drain rate is used to tell rejected clients when to
+ * come back. Promotional batches may only fill part of the queue, so that
+ * a bulk campaign does not lock transactional traffic out. The high-water
+ * mark is at most the capacity of a dispatch queue, so admitted messages
+ * always fit into the queue of whichever partition they land on.
+ */
+@Service
+public class AdmissionController {
+
+	private static final long MAX_RETRY_AFTER_SECONDS = 300 ;
+	
+	private static final long RATE_SAMPLE_MILLIS = 1000 ;
+	
+	private final DispatcherConfig dispatcherConfig ;
+	
+	private final GaugeService gaugeService ;
+	
+	private final CounterService counterService ;
+	
+	private int depth ;
+	
+	private long rejected ;
+	
+	private long completed ;
+	
+	private long sampledCompleted ;
+	
+	private long sampledAt = System.currentTimeMillis() ;
+	
+	//messages per second, exponentially weighted
+	private double drainRate ;
+	
+	@Autowired
+	public AdmissionController(final DispatcherConfig dispatcherConfig,
+			final GaugeService gaugeService,
+			final CounterService counterService) {
+		this.dispatcherConfig = dispatcherConfig ;
+		this.gaugeService = gaugeService ;
+		this.counterService = counterService ;
+	}
+	
+	/**
+	 * Admits count messages or throws {@link MessageQueueFullException} telling
+	 * the caller how long to back off. A batch larger than the high-water mark
+	 * can never be admitted and is turned down with
+	 * {@link PlatformApiDataValidationException}.
+	 */
+	public void admit(final int count, final boolean promotional) {
+		final int maxBatchSize = promotional ? this.dispatcherConfig.getPromotionalHighWaterMark() : this.dispatcherConfig.getHighWaterMark() ;
+		if(count > maxBatchSize) {
+			final ApiParameterError error = ApiParameterError.generalError("error.msg.sms.batch.too.large",
+					"A batch of "+count+" messages is larger than the "+maxBatchSize+" the gateway accepts at once", count, maxBatchSize) ;
+			throw new PlatformApiDataValidationException(Arrays.asList(error)) ;
+		}
+		final int currentDepth ;
+		final long retryAfter ;
+		synchronized (this) {
+			if(canAdmit(count, promotional ? this.dispatcherConfig.getPromotionalHighWaterMark() : this.dispatcherConfig.getHighWaterMark())) {
+				this.depth += count ;
+				reportDepth() ;
+				return ;
+			}
+			this.rejected++ ;
+			currentDepth = this.depth ;
+			retryAfter = retryAfterSeconds(count, promotional ? this.dispatcherConfig.getPromotionalHighWaterMark() : this.dispatcherConfig.getHighWaterMark()) ;
+		}
+		this.counterService.increment("admission.rejected");
+		throw new MessageQueueFullException(currentDepth, retryAfter) ;
+	}
+	
+	public boolean tryAdmit(final int count) {
+		return tryAdmit(count, false) ;
+	}
+	
+	/**
+	 * Admits count messages if there is room below the high-water mark of
+	 * their kind, without blocking or throwing.
+	 */
+	public synchronized boolean tryAdmit(final int count, final boolean promotional) {
+		if(!canAdmit(count, promotional ? this.dispatcherConfig.getPromotionalHighWaterMark() : this.dispatcherConfig.getHighWaterMark())) {
+			return false ;
+		}
+		this.depth += count ;
+		reportDepth() ;
+		return true ;
+	}
+	
+	/**
+	 * Waits until count messages can be admitted, for internal producers such
+	 * as recovery jobs which have nobody to push back on. Such producers keep
+	 * their batches within {@link #getMaxBatchSize()}.
+	 */
+	public synchronized void acquire(final int count) throws InterruptedException {
+		if(count > this.dispatcherConfig.getHighWaterMark()) {
+			throw new IllegalArgumentException("Cannot admit "+count+" messages at once, the high-water mark is "
+					+this.dispatcherConfig.getHighWaterMark()) ;
+		}
+		while(!canAdmit(count, this.dispatcherConfig.getHighWaterMark())) {
+			wait(RATE_SAMPLE_MILLIS) ;
+		}
+		this.depth += count ;
+		reportDepth() ;
+	}
+	
+	public synchronized void release(final int count) {
+		if(count <= 0) return ;
+		this.depth = Math.max(0, this.depth - count) ;
+		this.completed += count ;
+		sampleDrainRate() ;
+		reportDepth() ;
+		notifyAll() ;
+	}
+	
+	/**
+	 * @return the largest batch internal producers may acquire at once
+	 */
+	public int getMaxBatchSize() {
+		return this.dispatcherConfig.getHighWaterMark() ;
+	}
+	
+	public synchronized int getDepth() {
+		return this.depth ;
+	}
+	
+	public synchronized long getRejected() {
+		return this.rejected ;
+	}
+	
+	public synchronized double getDrainRate() {
+		sampleDrainRate() ;
+		return this.drainRate ;
+	}
+	
+	private boolean canAdmit(final int count, final int highWaterMark) {
+		return this.depth + count <= highWaterMark ;
+	}
+	
+	private long retryAfterSeconds(final int count, final int highWaterMark) {
+		sampleDrainRate() ;
+		if(this.drainRate <= 0) {
+			return MAX_RETRY_AFTER_SECONDS ;
+		}
+		final int excess = Math.max(1, this.depth + count - highWaterMark) ;
+		long seconds = (long) Math.ceil(excess / this.drainRate) ;
+		return Math.max(1, Math.min(MAX_RETRY_AFTER_SECONDS, seconds)) ;
+	}
+	
+	private void sampleDrainRate() {
+		final long now = System.currentTimeMillis() ;
+		final long elapsed = now - this.sampledAt ;
+		if(elapsed < RATE_SAMPLE_MILLIS) return ;
+		final double rate = (this.completed - this.sampledCompleted) * 1000.0 / elapsed ;
+		this.drainRate = this.drainRate == 0 ? rate : 0.7 * this.drainRate + 0.3 * rate ;
+		this.sampledCompleted = this.completed ;
+		this.sampledAt = now ;
+	}
+	
+	private void reportDepth() {
+		this.gaugeService.submit("admission.queue", this.depth);
+	}
+}
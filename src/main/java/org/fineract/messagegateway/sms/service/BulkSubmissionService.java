@@ -0,0 +1,237 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fineract.messagegateway.configuration.IngestConfig;
+import org.fineract.messagegateway.service.SecurityService;
+import org.fineract.messagegateway.sms.data.BulkSubmissionData;
+import org.fineract.messagegateway.sms.data.BulkSubmissionData.Rejection;
+import org.fineract.messagegateway.sms.data.SubmissionData;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Takes uploads of newline delimited JSON, one message per line, without
+ * holding the upload in memory. Lines are parsed as they are read and stored
+ * ingest.chunk-size messages at a time, so memory use does not grow with the
+ * upload. Lines which do not parse, lack a mandatory field or are longer than
+ * ingest.max-line-length are rejected on their own, the rest of the upload is
+ * still taken.
+ * <p>
+ * An upload failing halfway, e.g. on a lost connection, keeps the chunks
+ * stored so far. Sending it again is safe, messages already stored are
+ * reported as duplicates.
+ */
+@Service
+public class BulkSubmissionService {
+
+	private static final Logger logger = LoggerFactory.getLogger(BulkSubmissionService.class);
+	
+	private final SMSMessageService smsMessageService ;
+	
+	private final SecurityService securityService ;
+	
+	private final IngestConfig ingestConfig ;
+	
+	private final ObjectReader messageReader ;
+	
+	@Autowired
+	public BulkSubmissionService(final SMSMessageService smsMessageService,
+			final SecurityService securityService,
+			final IngestConfig ingestConfig,
+			final ObjectMapper objectMapper) {
+		this.smsMessageService = smsMessageService ;
+		this.securityService = securityService ;
+		this.ingestConfig = ingestConfig ;
+		this.messageReader = objectMapper.reader(SMSMessage.class) ;
+	}
+	
+	/**
+	 * Turns a line of an upload into the message to send.
+	 */
+	public interface LineParser {
+		
+		/**
+		 * @return the message, null if the line holds none
+		 * @throws JsonProcessingException if the line can not be read
+		 */
+		SMSMessage parse(String line) throws IOException ;
+	}
+	
+	/**
+	 * Reads an upload of messages, one JSON {@link SMSMessage} per line.
+	 */
+	public BulkSubmissionData submit(final String tenantId, final String tenantAppKey, final InputStream body) throws IOException {
+		return submit(tenantId, tenantAppKey, body, new LineParser() {
+			@Override
+			public SMSMessage parse(final String line) throws IOException {
+				return messageReader.readValue(line) ;
+			}
+		}) ;
+	}
+	
+	public BulkSubmissionData submit(final String tenantId, final String tenantAppKey, final InputStream body, final LineParser parser) throws IOException {
+		//Turns bad credentials down before anything is read
+		this.securityService.authenticate(tenantId, tenantAppKey) ;
+		final int chunkSize = this.ingestConfig.getChunkSize() ;
+		final int maxReported = this.ingestConfig.getMaxReportedRejections() ;
+		final int maxLineLength = this.ingestConfig.getMaxLineLength() ;
+		final BoundedLineReader reader = new BoundedLineReader(new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)),
+				maxLineLength) ;
+		final List<Rejection> rejections = new ArrayList<>() ;
+		List<SMSMessage> chunk = new ArrayList<>(chunkSize) ;
+		long lines = 0 ;
+		long accepted = 0 ;
+		long duplicates = 0 ;
+		long rejected = 0 ;
+		String line ;
+		while((line = reader.readLine()) != null) {
+			lines++ ;
+			String reason ;
+			if(reader.isTooLong()) {
+				reason = "Line is longer than "+maxLineLength+" characters" ;
+			}else if(line.trim().isEmpty()) {
+				continue ;
+			}else {
+				try {
+					final SMSMessage message = parser.parse(line) ;
+					reason = validate(message) ;
+					if(reason == null) {
+						chunk.add(message) ;
+					}
+				} catch (JsonProcessingException e) {
+					reason = e.getOriginalMessage() ;
+				}
+			}
+			if(reason != null) {
+				rejected++ ;
+				if(rejections.size() < maxReported) {
+					rejections.add(new Rejection(lines, reason)) ;
+				}
+			}
+			if(chunk.size() == chunkSize) {
+				final SubmissionData submission = this.smsMessageService.queueShortMessage(tenantId, tenantAppKey, chunk) ;
+				accepted += submission.getAccepted() ;
+				duplicates += submission.getDuplicates().size() ;
+				chunk = new ArrayList<>(chunkSize) ;
+			}
+		}
+		if(!chunk.isEmpty()) {
+			final SubmissionData submission = this.smsMessageService.queueShortMessage(tenantId, tenantAppKey, chunk) ;
+			accepted += submission.getAccepted() ;
+			duplicates += submission.getDuplicates().size() ;
+		}
+		logger.info("Streamed upload of tenant "+tenantId+" read "+lines+" lines, accepted "+accepted+", duplicates "+duplicates
+				+", rejected "+rejected);
+		return new BulkSubmissionData(lines, accepted, duplicates, rejected, rejections) ;
+	}
+	
+	private static String validate(final SMSMessage message) {
+		if(message == null) {
+			return "Line holds no message" ;
+		}
+		if(message.getInternalId() == null) {
+			return "internalId is mandatory" ;
+		}
+		if(message.getMobileNumber() == null || message.getMobileNumber().trim().isEmpty()) {
+			return "mobileNumber is mandatory" ;
+		}
+		if(message.getMessage() == null || message.getMessage().isEmpty()) {
+			return "message is mandatory" ;
+		}
+		if(message.getBridgeId() == null) {
+			return "providerId is mandatory" ;
+		}
+		return null ;
+	}
+	
+	/**
+	 * Reads lines like {@link BufferedReader#readLine()}, but keeps at most
+	 * maxLength characters of a line, so a client can not make the server
+	 * buffer an arbitrarily long one. The rest of a longer line is skipped.
+	 */
+	static final class BoundedLineReader {
+		
+		private final Reader reader ;
+		
+		private final int maxLength ;
+		
+		private final StringBuilder line = new StringBuilder() ;
+		
+		private boolean tooLong ;
+		
+		BoundedLineReader(final Reader reader, final int maxLength) {
+			this.reader = reader ;
+			this.maxLength = maxLength ;
+		}
+		
+		/**
+		 * @return the next line without its terminator, empty if it is too
+		 * long, null at the end of the stream
+		 */
+		String readLine() throws IOException {
+			this.line.setLength(0);
+			this.tooLong = false ;
+			int c = this.reader.read() ;
+			if(c == -1) {
+				return null ;
+			}
+			for(; c != -1 && c != '\n'; c = this.reader.read()) {
+				if(this.tooLong) {
+					continue ;
+				}
+				this.line.append((char) c) ;
+				//One more character for a \r ending the line
+				if(this.line.length() > this.maxLength + 1) {
+					this.tooLong = true ;
+					this.line.setLength(0);
+				}
+			}
+			final int length = this.line.length() ;
+			if(length > 0 && this.line.charAt(length - 1) == '\r') {
+				this.line.setLength(length - 1);
+			}
+			if(this.line.length() > this.maxLength) {
+				this.tooLong = true ;
+				this.line.setLength(0);
+			}
+			return this.line.toString() ;
+		}
+		
+		boolean isTooLong() {
+			return this.tooLong ;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.fineract.messagegateway.exception.PlatformApiDataValidationException;
+import org.fineract.messagegateway.helpers.ApiParameterError;
+import org.fineract.messagegateway.helpers.DataValidatorBuilder;
+import org.fineract.messagegateway.service.SecurityService;
+import org.fineract.messagegateway.sms.data.BulkSubmissionData;
+import org.fineract.messagegateway.sms.data.CampaignData;
+import org.fineract.messagegateway.sms.data.CampaignRecipient;
+import org.fineract.messagegateway.sms.data.CampaignStatusData;
+import org.fineract.messagegateway.sms.domain.Campaign;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.exception.CampaignNotFoundException;
+import org.fineract.messagegateway.sms.exception.SMSBridgeNotFoundException;
+import org.fineract.messagegateway.sms.repository.CampaignRepository;
+import org.fineract.messagegateway.sms.repository.SMSBridgeRepository;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.fineract.messagegateway.tenants.domain.Tenant;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Campaigns send one message text to many recipients. The client creates the
+ * campaign once and uploads the recipients as newline delimited JSON, the
+ * gateway builds the messages while the upload is read and sends them like
+ * any other message. Progress is counted from the campaign's messages.
+ */
+@Service
+public class CampaignService {
+
+	private static final String STATUS_COUNTS = "select delivery_status, count(*) from m_outbound_messages where campaign_id=? group by delivery_status" ;
+	
+	private static final int MAX_MESSAGE_LENGTH = 4096 ;
+	
+	private final CampaignRepository campaignRepository ;
+	
+	private final SMSBridgeRepository smsBridgeRepository ;
+	
+	private final SecurityService securityService ;
+	
+	private final BulkSubmissionService bulkSubmissionService ;
+	
+	private final JdbcTemplate jdbcTemplate ;
+	
+	private final ObjectReader recipientReader ;
+	
+	@Autowired
+	public CampaignService(final CampaignRepository campaignRepository,
+			final SMSBridgeRepository smsBridgeRepository,
+			final SecurityService securityService,
+			final BulkSubmissionService bulkSubmissionService,
+			final DataSource dataSource,
+			final ObjectMapper objectMapper) {
+		this.campaignRepository = campaignRepository ;
+		this.smsBridgeRepository = smsBridgeRepository ;
+		this.securityService = securityService ;
+		this.bulkSubmissionService = bulkSubmissionService ;
+		this.jdbcTemplate = new JdbcTemplate(dataSource) ;
+		this.recipientReader = objectMapper.reader(CampaignRecipient.class) ;
+	}
+	
+	public Long createCampaign(final String tenantId, final String tenantAppKey, final CampaignData data) {
+		final Tenant tenant = this.securityService.authenticate(tenantId, tenantAppKey) ;
+		final List<ApiParameterError> dataValidationErrors = new ArrayList<>();
+		final DataValidatorBuilder baseDataValidator = new DataValidatorBuilder(dataValidationErrors)
+				.resource("campaign");
+		baseDataValidator.reset().parameter("providerId").value(data.getProviderId()).notNull();
+		baseDataValidator.reset().parameter("message").value(data.getMessage()).notBlank().notExceedingLengthOf(MAX_MESSAGE_LENGTH);
+		if (!dataValidationErrors.isEmpty()) {
+			throw new PlatformApiDataValidationException(dataValidationErrors);
+		}
+		if(this.smsBridgeRepository.findByIdAndTenantId(data.getProviderId(), tenant.getId()) == null) {
+			throw new SMSBridgeNotFoundException(data.getProviderId()) ;
+		}
+		final Campaign campaign = new Campaign(tenant.getId(), data.getProviderId(), data.getMessage(), data.getPriority(),
+				data.getSendAt(), data.getDescription()) ;
+		return this.campaignRepository.save(campaign).getId() ;
+	}
+	
+	/**
+	 * Sends the campaign to the recipients of the upload, one JSON {@link CampaignRecipient} per line.
+	 */
+	public BulkSubmissionData addRecipients(final String tenantId, final String tenantAppKey, final Long campaignId,
+			final InputStream body) throws IOException {
+		final Campaign campaign = findCampaign(tenantId, tenantAppKey, campaignId) ;
+		return this.bulkSubmissionService.submit(tenantId, tenantAppKey, body, new BulkSubmissionService.LineParser() {
+			@Override
+			public SMSMessage parse(final String line) throws IOException {
+				final CampaignRecipient recipient = recipientReader.readValue(line) ;
+				if(recipient == null) {
+					return null ;
+				}
+				return campaign.newMessage(recipient.getInternalId(), recipient.getMobileNumber(), recipient.getParameters()) ;
+			}
+		}) ;
+	}
+	
+	public CampaignStatusData retrieveCampaign(final String tenantId, final String tenantAppKey, final Long campaignId) {
+		final Campaign campaign = findCampaign(tenantId, tenantAppKey, campaignId) ;
+		final Map<SmsMessageStatusType, Long> counts = new EnumMap<>(SmsMessageStatusType.class) ;
+		this.jdbcTemplate.query(STATUS_COUNTS, new RowCallbackHandler() {
+			@Override
+			public void processRow(final ResultSet rs) throws SQLException {
+				final SmsMessageStatusType status = SmsMessageStatusType.fromInt(rs.getInt(1)) ;
+				counts.put(status, count(counts, status) + rs.getLong(2)) ;
+			}
+		}, campaign.getId()) ;
+		long total = 0 ;
+		for(Long count: counts.values()) {
+			total += count ;
+		}
+		return new CampaignStatusData(campaign.getId(), campaign.getProviderId(), campaign.getDescription(), campaign.getSendAt(),
+				campaign.getCreatedOnDate(), total,
+				count(counts, SmsMessageStatusType.PENDING),
+				count(counts, SmsMessageStatusType.WAITING_FOR_REPORT) + count(counts, SmsMessageStatusType.SENT),
+				count(counts, SmsMessageStatusType.DELIVERED),
+				count(counts, SmsMessageStatusType.FAILED)) ;
+	}
+	
+	private static long count(final Map<SmsMessageStatusType, Long> counts, final SmsMessageStatusType status) {
+		final Long count = counts.get(status) ;
+		return count == null ? 0 : count ;
+	}
+	
+	private Campaign findCampaign(final String tenantId, final String tenantAppKey, final Long campaignId) {
+		final Tenant tenant = this.securityService.authenticate(tenantId, tenantAppKey) ;
+		final Campaign campaign = this.campaignRepository.findByIdAndTenantId(campaignId, tenant.getId()) ;
+		if(campaign == null) {
+			throw new CampaignNotFoundException(campaignId) ;
+		}
+		return campaign ;
+	}
+}
@@ -0,0 +1,391 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.fineract.messagegateway.configuration.StatusWriterConfig;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusTransitions;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Writes delivery status updates received from provider callbacks. Callbacks
+ * only record the update and return, every status-writer.linger-millis the
+ * writer takes what has been recorded, keeps the furthest update per message
+ * and applies them with batched UPDATE statements, without loading the
+ * messages.
+ * <p>
+ * Updates are keyed either by the gateway message id or by the id the
+ * provider returned for the message (external id). A provider may report on
+ * a message before its external id is stored, such updates are kept for
+ * status-writer.unmatched-retention-seconds until a row matches. They are
+ * tried again with a backoff starting at status-writer.unmatched-retry-millis
+ * rather than on every flush, so that reports on messages of another system
+ * do not cost a query every linger-millis.
+ * <p>
+ * Each UPDATE only applies a transition {@link SmsMessageStatusTransitions}
+ * allows from the stored status, so a report arriving late never moves a
+ * message back and callbacks handled on several nodes need no locking.
+ * Dropped stale reports are counted in status.transition.stale.
+ */
+@Service
+public class DeliveryStatusWriter {
+
+	private static final Logger logger = LoggerFactory.getLogger(DeliveryStatusWriter.class);
+	
+	private static final String UPDATE = "update m_outbound_messages set delivery_status=?,"
+			+ " delivered_on_date=coalesce(?, delivered_on_date), delivery_error_message=coalesce(?, delivery_error_message) where %s=? and %s" ;
+	
+	private static final String ID = "id" ;
+	
+	private static final String EXTERNAL_ID = "external_id" ;
+	
+	private final JdbcTemplate jdbcTemplate ;
+	
+	private final StatusWriterConfig statusWriterConfig ;
+	
+	private final GaugeService gaugeService ;
+	
+	private final CounterService counterService ;
+	
+	private final ConcurrentMap<Long, StatusUpdate> pending = new ConcurrentHashMap<>() ;
+	
+	private final ConcurrentMap<String, StatusUpdate> pendingByExternalId = new ConcurrentHashMap<>() ;
+	
+	//Reports whose external id matched no row yet, each waiting for its next try
+	private final ConcurrentMap<String, StatusUpdate> unmatchedByExternalId = new ConcurrentHashMap<>() ;
+	
+	private ScheduledExecutorService scheduledExecutorService ;
+	
+	//A report which arrived late does not replace one further along
+	private static final BiFunction<StatusUpdate, StatusUpdate, StatusUpdate> FURTHEST = new BiFunction<StatusUpdate, StatusUpdate, StatusUpdate>() {
+		@Override
+		public StatusUpdate apply(final StatusUpdate recorded, final StatusUpdate update) {
+			final SmsMessageStatusType from = SmsMessageStatusType.fromInt(recorded.deliveryStatus) ;
+			final SmsMessageStatusType to = SmsMessageStatusType.fromInt(update.deliveryStatus) ;
+			return from.equals(to) || SmsMessageStatusTransitions.isAllowed(from, to) ? update : recorded ;
+		}
+	} ;
+	
+	//Putting back an update which was not written, whatever was recorded meanwhile is the later report
+	private static final BiFunction<StatusUpdate, StatusUpdate, StatusUpdate> REQUEUE = new BiFunction<StatusUpdate, StatusUpdate, StatusUpdate>() {
+		@Override
+		public StatusUpdate apply(final StatusUpdate recorded, final StatusUpdate requeued) {
+			return FURTHEST.apply(requeued, recorded) ;
+		}
+	} ;
+	
+	//Keeps the furthest report, tried again as soon as either of them was due and counting the tries of both
+	private static final BiFunction<StatusUpdate, StatusUpdate, StatusUpdate> UNMATCHED = new BiFunction<StatusUpdate, StatusUpdate, StatusUpdate>() {
+		@Override
+		public StatusUpdate apply(final StatusUpdate recorded, final StatusUpdate unmatched) {
+			return REQUEUE.apply(recorded, unmatched).retry(Math.max(recorded.tries, unmatched.tries),
+					Math.min(recorded.retryOn, unmatched.retryOn)) ;
+		}
+	} ;
+	
+	@Autowired
+	public DeliveryStatusWriter(final DataSource dataSource,
+			final StatusWriterConfig statusWriterConfig,
+			final GaugeService gaugeService,
+			final CounterService counterService) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource) ;
+		this.statusWriterConfig = statusWriterConfig ;
+		this.gaugeService = gaugeService ;
+		this.counterService = counterService ;
+	}
+	
+	@PostConstruct
+	public void init() {
+		final long linger = this.statusWriterConfig.getLingerMillis() ;
+		this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor() ;
+		this.scheduledExecutorService.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				flush() ;
+			}
+		}, linger, linger, TimeUnit.MILLISECONDS) ;
+	}
+	
+	@PreDestroy
+	public void destroy() {
+		this.scheduledExecutorService.shutdown() ;
+		try {
+			this.scheduledExecutorService.awaitTermination(5, TimeUnit.SECONDS) ;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush() ;
+	}
+	
+	/**
+	 * Records a status update, replacing one for the same message which was not
+	 * written yet unless that one is further along.
+	 * 
+	 * @param deliveredOn null to keep the stored date
+	 * @param errorMessage null to keep the stored message
+	 */
+	public void update(final Long messageId, final Integer deliveryStatus, final Date deliveredOn, final String errorMessage) {
+		this.pending.merge(messageId, new StatusUpdate(messageId, null, deliveryStatus, deliveredOn, errorMessage), FURTHEST) ;
+		throttle() ;
+	}
+	
+	/**
+	 * Records a status update of the message the provider knows by externalId,
+	 * replacing one for the same message which was not written yet unless that
+	 * one is further along.
+	 * 
+	 * @param deliveredOn null to keep the stored date
+	 * @param errorMessage null to keep the stored message
+	 */
+	public void updateByExternalId(final String externalId, final Integer deliveryStatus, final Date deliveredOn, final String errorMessage) {
+		this.pendingByExternalId.merge(externalId, new StatusUpdate(null, externalId, deliveryStatus, deliveredOn, errorMessage), FURTHEST) ;
+		throttle() ;
+	}
+	
+	private void throttle() {
+		if(this.pending.size() + this.pendingByExternalId.size() >= this.statusWriterConfig.getMaxPending()) {
+			//The writer is falling behind, make the callers pay for it instead of growing without bound
+			flush() ;
+		}
+	}
+	
+	//Serialized so that an older update of a message is never written after a newer one
+	synchronized void flush() {
+		final List<StatusUpdate> updates = drain(this.pending) ;
+		final List<StatusUpdate> updatesByExternalId = drain(this.pendingByExternalId) ;
+		final long now = System.currentTimeMillis() ;
+		updatesByExternalId.addAll(drainDue(this.unmatchedByExternalId, now)) ;
+		if(updates.isEmpty() && updatesByExternalId.isEmpty()) {
+			return ;
+		}
+		for(List<StatusUpdate> batch: batches(updates)) {
+			try {
+				for(StatusUpdate update: write(ID, batch)) {
+					logger.info("Message with Message id "+update.messageId+" Not found");
+				}
+			} catch (RuntimeException e) {
+				logger.error("Writing "+batch.size()+" delivery status updates failed with reason "+e.getMessage(), e);
+				//Keep them for the next round unless a further update came in meanwhile
+				for(StatusUpdate update: batch) {
+					this.pending.merge(update.messageId, update, REQUEUE) ;
+				}
+			}
+		}
+		final long unmatchedBefore = now - TimeUnit.SECONDS.toMillis(this.statusWriterConfig.getUnmatchedRetentionSeconds()) ;
+		for(List<StatusUpdate> batch: batches(updatesByExternalId)) {
+			try {
+				for(StatusUpdate update: write(EXTERNAL_ID, batch)) {
+					if(update.receivedOn >= unmatchedBefore) {
+						//Most likely the sender has not stored the external id yet
+						retryUnmatched(update, now) ;
+					}
+				}
+			} catch (RuntimeException e) {
+				logger.error("Writing "+batch.size()+" delivery status updates failed with reason "+e.getMessage(), e);
+				for(StatusUpdate update: batch) {
+					this.pendingByExternalId.merge(update.externalId, update, REQUEUE) ;
+				}
+			}
+		}
+		this.gaugeService.submit("status.writer.pending", this.pending.size() + this.pendingByExternalId.size());
+		this.gaugeService.submit("status.writer.unmatched", this.unmatchedByExternalId.size());
+		this.gaugeService.submit("status.writer.flushed", updates.size() + updatesByExternalId.size());
+	}
+	
+	private void retryUnmatched(final StatusUpdate update, final long now) {
+		final int tries = update.tries + 1 ;
+		final long delay = Math.min((long) this.statusWriterConfig.getUnmatchedMaxRetryMillis(),
+				(long) this.statusWriterConfig.getUnmatchedRetryMillis() << Math.min(tries - 1, 20)) ;
+		this.unmatchedByExternalId.merge(update.externalId, update.retry(tries, now + delay), UNMATCHED) ;
+	}
+	
+	//One statement per target status, split into status-writer.batch-size chunks
+	private List<List<StatusUpdate>> batches(final List<StatusUpdate> updates) {
+		final Map<Integer, List<StatusUpdate>> byStatus = new LinkedHashMap<>() ;
+		for(StatusUpdate update: updates) {
+			List<StatusUpdate> sameStatus = byStatus.get(update.deliveryStatus) ;
+			if(sameStatus == null) {
+				sameStatus = new ArrayList<>() ;
+				byStatus.put(update.deliveryStatus, sameStatus) ;
+			}
+			sameStatus.add(update) ;
+		}
+		final int batchSize = this.statusWriterConfig.getBatchSize() ;
+		final List<List<StatusUpdate>> batches = new ArrayList<>() ;
+		for(List<StatusUpdate> sameStatus: byStatus.values()) {
+			for(int from = 0 ; from < sameStatus.size(); from += batchSize) {
+				batches.add(sameStatus.subList(from, Math.min(sameStatus.size(), from + batchSize))) ;
+			}
+		}
+		return batches ;
+	}
+	
+	private static <K> List<StatusUpdate> drain(final ConcurrentMap<K, StatusUpdate> pending) {
+		final List<StatusUpdate> updates = new ArrayList<>() ;
+		for(K key: pending.keySet()) {
+			final StatusUpdate update = pending.remove(key) ;
+			if(update != null) {
+				updates.add(update) ;
+			}
+		}
+		return updates ;
+	}
+	
+	private static <K> List<StatusUpdate> drainDue(final ConcurrentMap<K, StatusUpdate> unmatched, final long now) {
+		final List<StatusUpdate> updates = new ArrayList<>() ;
+		for(Map.Entry<K, StatusUpdate> entry: unmatched.entrySet()) {
+			if(entry.getValue().retryOn <= now && unmatched.remove(entry.getKey(), entry.getValue())) {
+				updates.add(entry.getValue()) ;
+			}
+		}
+		return updates ;
+	}
+	
+	/**
+	 * Applies a batch of updates to the same status.
+	 * 
+	 * @return the updates whose message was not found
+	 */
+	private List<StatusUpdate> write(final String keyColumn, final List<StatusUpdate> batch) {
+		final SmsMessageStatusType status = SmsMessageStatusType.fromInt(batch.get(0).deliveryStatus) ;
+		final String sql = String.format(UPDATE, keyColumn, SmsMessageStatusTransitions.condition(status, false)) ;
+		final int[] counts = this.jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+			@Override
+			public void setValues(final PreparedStatement ps, final int i) throws SQLException {
+				final StatusUpdate update = batch.get(i) ;
+				ps.setInt(1, update.deliveryStatus);
+				if(update.deliveredOn == null) {
+					ps.setNull(2, Types.TIMESTAMP);
+				} else {
+					ps.setTimestamp(2, new Timestamp(update.deliveredOn.getTime()));
+				}
+				if(update.errorMessage == null) {
+					ps.setNull(3, Types.VARCHAR);
+				} else {
+					ps.setString(3, update.errorMessage);
+				}
+				ps.setObject(4, update.key());
+			}
+
+			@Override
+			public int getBatchSize() {
+				return batch.size() ;
+			}
+		}) ;
+		final List<StatusUpdate> missed = new ArrayList<>() ;
+		for(int i = 0 ; i < counts.length; i++) {
+			if(counts[i] == 0) {
+				missed.add(batch.get(i)) ;
+			}
+		}
+		if(missed.isEmpty()) {
+			return missed ;
+		}
+		//Tell the reports on messages which moved past them from the ones on unknown messages
+		final Set<String> existing = existing(keyColumn, missed) ;
+		final List<StatusUpdate> notFound = new ArrayList<>() ;
+		for(StatusUpdate update: missed) {
+			if(existing.contains(String.valueOf(update.key()))) {
+				this.counterService.increment("status.transition.stale");
+			} else {
+				notFound.add(update) ;
+			}
+		}
+		return notFound ;
+	}
+	
+	private Set<String> existing(final String keyColumn, final List<StatusUpdate> updates) {
+		final StringBuilder sql = new StringBuilder("select ").append(keyColumn).append(" from m_outbound_messages where ")
+				.append(keyColumn).append(" in (") ;
+		final Object[] keys = new Object[updates.size()] ;
+		for(int i = 0 ; i < keys.length; i++) {
+			sql.append(i == 0 ? "?" : ",?") ;
+			keys[i] = updates.get(i).key() ;
+		}
+		sql.append(')') ;
+		return new HashSet<>(this.jdbcTemplate.queryForList(sql.toString(), String.class, keys)) ;
+	}
+	
+	static class StatusUpdate {
+		
+		final Long messageId ;
+		final String externalId ;
+		final Integer deliveryStatus ;
+		final Date deliveredOn ;
+		final String errorMessage ;
+		final long receivedOn ;
+		//Tries which found no message, and when to try again
+		final int tries ;
+		final long retryOn ;
+		
+		StatusUpdate(final Long messageId, final String externalId, final Integer deliveryStatus, final Date deliveredOn, final String errorMessage) {
+			this(messageId, externalId, deliveryStatus, deliveredOn, errorMessage, System.currentTimeMillis(), 0, 0) ;
+		}
+		
+		private StatusUpdate(final Long messageId, final String externalId, final Integer deliveryStatus, final Date deliveredOn,
+				final String errorMessage, final long receivedOn, final int tries, final long retryOn) {
+			this.messageId = messageId ;
+			this.externalId = externalId ;
+			this.receivedOn = receivedOn ;
+			this.deliveryStatus = deliveryStatus ;
+			this.deliveredOn = deliveredOn ;
+			this.errorMessage = errorMessage ;
+			this.tries = tries ;
+			this.retryOn = retryOn ;
+		}
+		
+		StatusUpdate retry(final int tries, final long retryOn) {
+			return new StatusUpdate(this.messageId, this.externalId, this.deliveryStatus, this.deliveredOn, this.errorMessage,
+					this.receivedOn, tries, retryOn) ;
+		}
+		
+		Object key() {
+			return this.messageId != null ? this.messageId : this.externalId ;
+		}
+	}
+}
@@ -0,0 +1,452 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.fineract.messagegateway.configuration.DispatcherConfig;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.providers.SMSProviderFactory;
+import org.fineract.messagegateway.sms.util.SmsMessagePriorityType;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.fineract.messagegateway.sms.util.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.stereotype.Service;
+
+/**
+ * Dispatches outbound messages to the SMS providers. Messages are partitioned
+ * by SMS bridge id onto a fixed set of worker threads, each draining its own
+ * bounded queue. Different bridges are sent in parallel while messages to the
+ * same bridge are handed to the provider in submission order.
+ * 
+ * Provider calls are asynchronous (see
+ * {@link org.fineract.messagegateway.sms.providers.SMSProvider#sendMessageAsync}),
+ * a worker hands a message over and takes the next one. Each bridge has up to
+ * the provider's getMaxInFlight requests in flight, their results are stored
+ * as the provider answers, so they may complete out of order. A request which
+ * has to wait for its bridge's rate limit is held back on a timer, the worker
+ * goes on with other bridges and the transactional lane meanwhile.
+ * 
+ * Each partition has a transactional and a promotional lane. The worker
+ * drains the transactional lane first (strict priority), or when
+ * dispatcher.transactional-weight is set, lets one promotional message through
+ * after that many transactional ones, so that OTPs and confirmations do not
+ * queue behind a bulk campaign. Callers must have admitted the
+ * messages through the {@link AdmissionController}, each one is released
+ * again when its send attempt is over.
+ * 
+ * In virtual thread mode the partition workers only pace the queue, lease
+ * renewal runs on a virtual thread per batch (bounded per
+ * partition by dispatcher.max-in-flight until the batch completed). Ordering
+ * per bridge is then best effort.
+ * 
+ * A worker taking a message of a provider which sends several messages per
+ * request (see {@link org.fineract.messagegateway.sms.providers.SMSProvider#getMaxBatchSize})
+ * takes what else is queued, up to dispatcher.batch-size, optionally waiting
+ * dispatcher.batch-linger-millis for more. Those messages go out in one
+ * provider request per bridge.
+ * 
+ * Messages left waiting for another attempt after a transient provider
+ * failure keep their lease and sit in a delay queue until their next attempt
+ * time, a single retry thread dispatches them again from there.
+ */
+@Service
+public class MessageDispatcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(MessageDispatcher.class);
+	
+	private final SMSProviderFactory smsProviderFactory ;
+	
+	private final DispatcherConfig dispatcherConfig ;
+	
+	private final GaugeService gaugeService ;
+	
+	private final OutboxService outboxService ;
+	
+	private final AdmissionController admissionController ;
+	
+	private DispatchPartition[] partitions ;
+	
+	private ExecutorService sendExecutor ;
+	
+	private final DelayQueue<DelayedMessage> retries = new DelayQueue<>() ;
+	
+	private Thread retryThread ;
+	
+	@Autowired
+	public MessageDispatcher(final SMSProviderFactory smsProviderFactory,
+			final DispatcherConfig dispatcherConfig,
+			final GaugeService gaugeService,
+			final OutboxService outboxService,
+			final AdmissionController admissionController) {
+		this.smsProviderFactory = smsProviderFactory ;
+		this.dispatcherConfig = dispatcherConfig ;
+		this.gaugeService = gaugeService ;
+		this.outboxService = outboxService ;
+		this.admissionController = admissionController ;
+	}
+	
+	@PostConstruct
+	public void init() {
+		final int workers = this.dispatcherConfig.getWorkerThreads() ;
+		logger.info("Starting message dispatcher with "+workers+" partitions.....");
+		if(this.dispatcherConfig.isVirtualThreadMode()) {
+			logger.info("Provider calls will run on virtual threads");
+			this.sendExecutor = VirtualThreads.newVirtualThreadPerTaskExecutor() ;
+		}
+		this.partitions = new DispatchPartition[workers] ;
+		for(int i = 0 ; i < workers; i++) {
+			this.partitions[i] = new DispatchPartition(i, this.dispatcherConfig.getQueueCapacity()) ;
+			this.partitions[i].start();
+		}
+		this.retryThread = new Thread("sms-retry") {
+			@Override
+			public void run() {
+				redispatchRetries() ;
+			}
+		} ;
+		this.retryThread.start();
+	}
+	
+	@PreDestroy
+	public void destroy() {
+		logger.info("Stopping message dispatcher.....");
+		for(DispatchPartition partition: this.partitions) {
+			partition.interrupt();
+		}
+		this.retryThread.interrupt();
+		if(this.sendExecutor != null) {
+			this.sendExecutor.shutdown();
+		}
+	}
+	
+	/**
+	 * Hands the messages over to the partition owning their bridge. Blocks
+	 * while the target partition queue is full.
+	 */
+	public void dispatch(final Collection<SMSMessage> messages) {
+		for(SMSMessage message: messages) {
+			dispatch(message) ;
+		}
+	}
+	
+	public void dispatch(final SMSMessage message) {
+		DispatchPartition partition = partitionFor(message.getBridgeId()) ;
+		try {
+			partition.put(message);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.admissionController.release(1);
+			logger.error("Interrupted while dispatching message "+message.getId()+", left for recovery");
+		}
+	}
+	
+	public int[] getQueueDepths() {
+		int[] depths = new int[this.partitions.length] ;
+		for(int i = 0 ; i < this.partitions.length; i++) {
+			depths[i] = this.partitions[i].size() ;
+		}
+		return depths ;
+	}
+	
+	/**
+	 * Hands the messages to their providers, the result of each is stored
+	 * when its provider answered.
+	 * 
+	 * @return completes once the results are stored
+	 */
+	private CompletableFuture<Void> send(final List<SMSMessage> messages) {
+		try {
+			final List<SMSMessage> leased = new ArrayList<>(messages.size()) ;
+			for(SMSMessage message: messages) {
+				if(this.outboxService.renewLease(message)) {
+					leased.add(message) ;
+				} else {
+					logger.info("Lease on message "+message.getId()+" is gone, not sending it");
+				}
+			}
+			if(!leased.isEmpty()) {
+				return this.smsProviderFactory.sendShortMessages(leased).handle(new BiFunction<Void, Throwable, Void>() {
+					@Override
+					public Void apply(final Void result, final Throwable error) {
+						try {
+							if(error != null) {
+								logger.error("Dispatching "+messages.size()+" messages failed with reason "+error.getMessage(), error);
+							}
+							for(SMSMessage message: leased) {
+								complete(message) ;
+							}
+						} finally {
+							admissionController.release(messages.size());
+						}
+						return null ;
+					}
+				}) ;
+			}
+		} catch (RuntimeException e) {
+			logger.error("Dispatching "+messages.size()+" messages failed with reason "+e.getMessage(), e);
+		}
+		this.admissionController.release(messages.size());
+		return CompletableFuture.completedFuture(null) ;
+	}
+	
+	private void complete(final SMSMessage message) {
+		try {
+			final boolean retry = message.isRetryScheduled() ;
+			if(retry) {
+				this.outboxService.holdUntil(message, message.getNextAttemptOn());
+			} else if(!SmsMessageStatusType.PENDING.getValue().equals(message.getDeliveryStatus())) {
+				message.releaseLease();
+			}
+			this.outboxService.saveDispatchResult(message) ;
+			if(retry) {
+				this.retries.put(new DelayedMessage(message));
+				this.gaugeService.submit("retry.queue", this.retries.size());
+			}
+		} catch (RuntimeException e) {
+			logger.error("Dispatching message "+message.getId()+" failed with reason "+e.getMessage(), e);
+		}
+	}
+	
+	private void redispatchRetries() {
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				final SMSMessage message = this.retries.take().message ;
+				this.gaugeService.submit("retry.queue", this.retries.size());
+				this.admissionController.acquire(1);
+				dispatch(message) ;
+			} catch (InterruptedException e) {
+				break ;
+			}
+		}
+	}
+	
+	private DispatchPartition partitionFor(final Long bridgeId) {
+		long key = bridgeId == null ? 0 : bridgeId ;
+		return this.partitions[(int) Math.floorMod(key, (long) this.partitions.length)] ;
+	}
+	
+	class DispatchPartition extends Thread {
+		
+		final int index ;
+		final BlockingQueue<QueuedMessage> transactional ;
+		final BlockingQueue<QueuedMessage> promotional ;
+		//one permit per message waiting in either lane
+		final Semaphore queued ;
+		final Semaphore inFlight ;
+		int transactionalStreak ;
+		
+		DispatchPartition(final int index, final int capacity) {
+			super("sms-dispatch-" + index) ;
+			this.index = index ;
+			this.transactional = new ArrayBlockingQueue<>(capacity) ;
+			this.promotional = new ArrayBlockingQueue<>(capacity) ;
+			this.queued = new Semaphore(0) ;
+			this.inFlight = new Semaphore(dispatcherConfig.getMaxInFlight()) ;
+		}
+		
+		void put(final SMSMessage message) throws InterruptedException {
+			if(SmsMessagePriorityType.PROMOTIONAL.equals(message.getPriorityType())) {
+				this.promotional.put(new QueuedMessage(message));
+			} else {
+				this.transactional.put(new QueuedMessage(message));
+			}
+			this.queued.release();
+			reportQueueDepth();
+		}
+		
+		QueuedMessage take() throws InterruptedException {
+			this.queued.acquire();
+			return next() ;
+		}
+		
+		//null if nothing was queued within timeoutMillis
+		QueuedMessage poll(final long timeoutMillis) throws InterruptedException {
+			if(!this.queued.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				return null ;
+			}
+			return next() ;
+		}
+		
+		private QueuedMessage next() {
+			final int weight = dispatcherConfig.getTransactionalWeight() ;
+			QueuedMessage next = null ;
+			if(weight <= 0 || this.transactionalStreak < weight) {
+				next = this.transactional.poll() ;
+			}
+			if(next == null) {
+				next = this.promotional.poll() ;
+			}
+			if(next == null) {
+				next = this.transactional.poll() ;
+			}
+			final boolean promotionalMessage = SmsMessagePriorityType.PROMOTIONAL.equals(next.message.getPriorityType()) ;
+			this.transactionalStreak = promotionalMessage ? 0 : this.transactionalStreak + 1 ;
+			gaugeService.submit("dispatcher.partition." + this.index + (promotionalMessage ? ".promotional" : ".transactional") + ".wait",
+					System.currentTimeMillis() - next.enqueuedOn);
+			return next ;
+		}
+		
+		int size() {
+			return this.transactional.size() + this.promotional.size() ;
+		}
+		
+		void reportQueueDepth() {
+			gaugeService.submit("dispatcher.partition." + this.index + ".transactional.queue", this.transactional.size());
+			gaugeService.submit("dispatcher.partition." + this.index + ".promotional.queue", this.promotional.size());
+		}
+		
+		/**
+		 * Adds what is queued, or arrives within dispatcher.batch-linger-millis,
+		 * up to dispatcher.batch-size messages.
+		 */
+		void drain(final List<SMSMessage> taken) throws InterruptedException {
+			final long lingerUntil = System.currentTimeMillis() + dispatcherConfig.getBatchLingerMillis() ;
+			while(taken.size() < dispatcherConfig.getBatchSize()) {
+				final QueuedMessage next = poll(Math.max(0, lingerUntil - System.currentTimeMillis())) ;
+				if(next == null) {
+					break ;
+				}
+				taken.add(next.message) ;
+			}
+		}
+		
+		/**
+		 * Groups the messages by bridge, messages of providers without batch
+		 * support are sent on their own.
+		 */
+		List<List<SMSMessage>> batches(final List<SMSMessage> taken) {
+			final List<List<SMSMessage>> batches = new ArrayList<>() ;
+			final Map<Long, List<SMSMessage>> byBridge = new LinkedHashMap<>() ;
+			for(SMSMessage message: taken) {
+				if(taken.size() == 1 || smsProviderFactory.getMaxBatchSize(message) == 1) {
+					batches.add(Collections.singletonList(message)) ;
+					continue ;
+				}
+				List<SMSMessage> sameBridge = byBridge.get(message.getBridgeId()) ;
+				if(sameBridge == null) {
+					sameBridge = new ArrayList<>() ;
+					byBridge.put(message.getBridgeId(), sameBridge) ;
+					batches.add(sameBridge) ;
+				}
+				sameBridge.add(message) ;
+			}
+			return batches ;
+		}
+		
+		@Override
+		public void run() {
+			while (!isInterrupted()) {
+				final List<SMSMessage> taken = new ArrayList<>() ;
+				try {
+					taken.add(take().message) ;
+					if(dispatcherConfig.getBatchSize() > 1 && smsProviderFactory.getMaxBatchSize(taken.get(0)) > 1) {
+						drain(taken) ;
+					}
+				} catch (InterruptedException e) {
+					break ;
+				}
+				reportQueueDepth();
+				for(final List<SMSMessage> batch: batches(taken)) {
+					if(sendExecutor == null) {
+						send(batch) ;
+						continue ;
+					}
+					try {
+						this.inFlight.acquire();
+					} catch (InterruptedException e) {
+						return ;
+					}
+					sendExecutor.execute(new Runnable() {
+						@Override
+						public void run() {
+							boolean handedOver = false ;
+							try {
+								send(batch).whenComplete(new BiConsumer<Void, Throwable>() {
+									@Override
+									public void accept(final Void result, final Throwable error) {
+										inFlight.release();
+									}
+								}) ;
+								handedOver = true ;
+							} finally {
+								if(!handedOver) {
+									inFlight.release();
+								}
+							}
+						}
+					});
+				}
+			}
+		}
+	}
+	
+	static class DelayedMessage implements Delayed {
+		
+		final SMSMessage message ;
+		final long dueOn ;
+		
+		DelayedMessage(final SMSMessage message) {
+			this.message = message ;
+			this.dueOn = message.getNextAttemptOn().getTime() ;
+		}
+
+		@Override
+		public long getDelay(final TimeUnit unit) {
+			return unit.convert(this.dueOn - System.currentTimeMillis(), TimeUnit.MILLISECONDS) ;
+		}
+
+		@Override
+		public int compareTo(final Delayed other) {
+			return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS)) ;
+		}
+	}
+	
+	static class QueuedMessage {
+		
+		final SMSMessage message ;
+		final long enqueuedOn ;
+		
+		QueuedMessage(final SMSMessage message) {
+			this.message = message ;
+			this.enqueuedOn = System.currentTimeMillis() ;
+		}
+	}
+}
@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.fineract.messagegateway.configuration.OutboxConfig;
+import org.fineract.messagegateway.configuration.SchedulerConfig;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.util.HierarchicalTimingWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Sends messages with a send_at at their due time. Only messages due within
+ * the next window are held, in a {@link HierarchicalTimingWheel}, they are
+ * leased from the outbox in send_at order every load interval. Messages due
+ * further out cost nothing until their window comes up.
+ */
+@Service
+public class MessageScheduler {
+
+	private static final Logger logger = LoggerFactory.getLogger(MessageScheduler.class);
+	
+	private final OutboxService outboxService ;
+	
+	private final MessageDispatcher messageDispatcher ;
+	
+	private final AdmissionController admissionController ;
+	
+	private final SchedulerConfig schedulerConfig ;
+	
+	private final OutboxConfig outboxConfig ;
+	
+	private final GaugeService gaugeService ;
+	
+	private HierarchicalTimingWheel<SMSMessage> wheel ;
+	
+	private ScheduledExecutorService scheduledExecutorService ;
+	
+	@Autowired
+	public MessageScheduler(final OutboxService outboxService,
+			final MessageDispatcher messageDispatcher,
+			final AdmissionController admissionController,
+			final SchedulerConfig schedulerConfig,
+			final OutboxConfig outboxConfig,
+			final GaugeService gaugeService) {
+		this.outboxService = outboxService ;
+		this.messageDispatcher = messageDispatcher ;
+		this.admissionController = admissionController ;
+		this.schedulerConfig = schedulerConfig ;
+		this.outboxConfig = outboxConfig ;
+		this.gaugeService = gaugeService ;
+	}
+	
+	@PostConstruct
+	public void init() {
+		final long tick = this.schedulerConfig.getTickMillis() ;
+		final long loadInterval = this.schedulerConfig.getLoadIntervalSeconds() ;
+		this.wheel = new HierarchicalTimingWheel<>(tick, this.schedulerConfig.getWheelSize(), System.currentTimeMillis()) ;
+		//Loading runs on its own thread so that a slow query does not hold up due messages
+		this.scheduledExecutorService = Executors.newScheduledThreadPool(2) ;
+		this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				tick() ;
+			}
+		}, tick, tick, TimeUnit.MILLISECONDS) ;
+		this.scheduledExecutorService.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				load() ;
+			}
+		}, 0, loadInterval, TimeUnit.SECONDS) ;
+	}
+	
+	@PreDestroy
+	public void destroy() {
+		this.scheduledExecutorService.shutdownNow() ;
+	}
+	
+	/**
+	 * @return true if the message is due within the window held in memory and
+	 * can be passed to {@link #schedule(Collection)} right after it was saved
+	 */
+	public boolean isWithinWindow(final SMSMessage message, final long nowMillis) {
+		return message.getSendAt().getTime() <= windowEnd(nowMillis) ;
+	}
+	
+	/**
+	 * Holds leased messages until their send_at, messages already due are dispatched right away.
+	 */
+	public void schedule(final Collection<SMSMessage> messages) {
+		final List<SMSMessage> due = new ArrayList<>() ;
+		synchronized (this.wheel) {
+			for(SMSMessage message: messages) {
+				if(!this.wheel.add(message, message.getSendAt().getTime())) {
+					due.add(message) ;
+				}
+			}
+		}
+		dispatch(due) ;
+	}
+	
+	void tick() {
+		final List<SMSMessage> due ;
+		final int held ;
+		synchronized (this.wheel) {
+			due = this.wheel.advance(System.currentTimeMillis()) ;
+			held = this.wheel.size() ;
+		}
+		try {
+			dispatch(due) ;
+		} catch (RuntimeException e) {
+			//Leases run out lease-seconds after send_at, the outbox poller picks these messages up then
+			logger.error("Dispatching "+due.size()+" scheduled messages failed with reason "+e.getMessage(), e);
+		}
+		if(!due.isEmpty()) {
+			this.gaugeService.submit("scheduler.held", held);
+		}
+	}
+	
+	void load() {
+		final int batchSize = this.outboxConfig.getClaimBatchSize() ;
+		try {
+			List<SMSMessage> claimed ;
+			do {
+				int room ;
+				synchronized (this.wheel) {
+					room = this.schedulerConfig.getMaxHeld() - this.wheel.size() ;
+				}
+				if(room <= 0) {
+					logger.warn("Scheduler holds "+this.schedulerConfig.getMaxHeld()+" messages, leaving the rest of the window in the database");
+					break ;
+				}
+				claimed = this.outboxService.claimDue(windowEnd(System.currentTimeMillis()), Math.min(room, batchSize)) ;
+				if(!claimed.isEmpty()) {
+					logger.debug("Loaded "+claimed.size()+" scheduled messages");
+					schedule(claimed) ;
+				}
+			} while (claimed.size() == batchSize) ;
+			synchronized (this.wheel) {
+				this.gaugeService.submit("scheduler.held", this.wheel.size());
+			}
+		} catch (RuntimeException e) {
+			logger.error("Loading scheduled messages failed with reason "+e.getMessage(), e);
+		}
+	}
+	
+	private void dispatch(final List<SMSMessage> due) {
+		if(due.isEmpty()) {
+			return ;
+		}
+		//Messages sharing a send_at can come due together in numbers beyond what can be admitted at once
+		for(List<SMSMessage> chunk: Lists.partition(due, this.admissionController.getMaxBatchSize())) {
+			try {
+				this.admissionController.acquire(chunk.size());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return ;
+			}
+			this.messageDispatcher.dispatch(chunk);
+		}
+	}
+	
+	private long windowEnd(final long nowMillis) {
+		return nowMillis + this.schedulerConfig.getWindowSeconds() * 1000L ;
+	}
+}
@@ -0,0 +1,257 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.fineract.messagegateway.configuration.OutboxConfig;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Writes new outbound messages with multi-row INSERTs instead of one
+ * Hibernate INSERT per message. Ids are taken as one range from
+ * m_id_sequence up front, so a batch of n messages costs one round trip for
+ * the ids plus one per outbox.insert-batch-size rows. A statement holds fewer
+ * rows if their text would make it longer than outbox.insert-statement-bytes.
+ * All rows of a call are written in a single transaction.
+ * <p>
+ * A message is stored once per tenant and internal id. Messages already
+ * stored, typically by a client retrying a request which timed out, are
+ * left out, the unique (tenant_id, internal_id) key settles requests racing
+ * each other.
+ * 
+ * New messages must only be inserted through here, m_id_sequence and the
+ * AUTO_INCREMENT of m_outbound_messages know nothing of each other.
+ */
+@Service
+public class OutboundMessageWriter {
+
+	private static final String SEQUENCE_NAME = "m_outbound_messages" ;
+	
+	private static final String ALLOCATE_IDS = "update m_id_sequence set next_val=last_insert_id(next_val + ?) where name=?" ;
+	
+	private static final String INSERT = "insert into m_outbound_messages (id, tenant_id, external_id, internal_id, submitted_on_date,"
+			+ " delivered_on_date, delivery_status, delivery_error_message, source_address, mobile_number, message, sms_bridge_id,"
+			+ " priority, send_at, attempt_count, next_attempt_on, lease_owner, lease_expires_on, campaign_id) values " ;
+	
+	private static final String ROW = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)" ;
+	
+	//Ids, dates, numbers and separators of one row
+	private static final int ROW_BYTES = 160 ;
+	
+	private static final String STORED_INTERNAL_IDS = "select internal_id from m_outbound_messages where tenant_id=? and internal_id in " ;
+	
+	private final JdbcTemplate jdbcTemplate ;
+	
+	private final TransactionTemplate transactionTemplate ;
+	
+	private final OutboxConfig outboxConfig ;
+	
+	@Autowired
+	public OutboundMessageWriter(final DataSource dataSource,
+			final PlatformTransactionManager transactionManager,
+			final OutboxConfig outboxConfig) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource) ;
+		this.transactionTemplate = new TransactionTemplate(transactionManager) ;
+		this.outboxConfig = outboxConfig ;
+	}
+	
+	/**
+	 * Inserts the messages which are not stored yet and assigns their ids.
+	 * 
+	 * @return the messages inserted
+	 */
+	public List<SMSMessage> insert(final Collection<SMSMessage> messages) {
+		List<SMSMessage> rows = withoutStored(messages) ;
+		if(rows.isEmpty()) {
+			return rows ;
+		}
+		//Outside the insert transaction, the sequence row must not stay locked while rows are written
+		long id = allocateIds(rows.size()) ;
+		for(SMSMessage message: rows) {
+			message.assignId(id++);
+		}
+		try {
+			insertAll(rows) ;
+		} catch (DataIntegrityViolationException e) {
+			//Another request stored some of the messages meanwhile, the transaction was rolled back
+			rows = withoutStored(rows) ;
+			insertAll(rows) ;
+		}
+		return rows ;
+	}
+	
+	private void insertAll(final List<SMSMessage> rows) {
+		final int batchSize = Math.max(1, this.outboxConfig.getInsertBatchSize()) ;
+		final int statementBytes = this.outboxConfig.getInsertStatementBytes() ;
+		this.transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(final TransactionStatus status) {
+				int from = 0 ;
+				while(from < rows.size()) {
+					//At least one row per statement, however long its text
+					int to = from + 1 ;
+					int bytes = estimatedBytes(rows.get(from)) ;
+					while(to < rows.size() && to - from < batchSize) {
+						bytes += estimatedBytes(rows.get(to)) ;
+						if(bytes > statementBytes) break ;
+						to++ ;
+					}
+					insertRows(rows.subList(from, to)) ;
+					from = to ;
+				}
+			}
+		}) ;
+	}
+	
+	//Size of a row's values in the statement, text counted one byte per character
+	private static int estimatedBytes(final SMSMessage message) {
+		return ROW_BYTES + length(message.getMessage()) + length(message.getMobileNumber()) + length(message.getExternalId())
+				+ length(message.getSourceAddress()) + length(message.getDeliveryErrorMessage()) ;
+	}
+	
+	private static int length(final String value) {
+		return value == null ? 0 : value.length() ;
+	}
+	
+	//One lookup per tenant along the (tenant_id, internal_id) key
+	private List<SMSMessage> withoutStored(final Collection<SMSMessage> messages) {
+		final Map<Long, Set<Long>> internalIds = new HashMap<>() ;
+		for(SMSMessage message: messages) {
+			if(message.getInternalId() == null) {
+				continue ;
+			}
+			Set<Long> ids = internalIds.get(message.getTenantId()) ;
+			if(ids == null) {
+				ids = new HashSet<>() ;
+				internalIds.put(message.getTenantId(), ids) ;
+			}
+			ids.add(message.getInternalId()) ;
+		}
+		final Map<Long, Set<Long>> stored = new HashMap<>() ;
+		for(Map.Entry<Long, Set<Long>> tenant: internalIds.entrySet()) {
+			final String idList = tenant.getValue().toString().replace("[", "(").replace("]", ")") ;
+			stored.put(tenant.getKey(), new HashSet<>(this.jdbcTemplate.queryForList(STORED_INTERNAL_IDS + idList,
+					Long.class, tenant.getKey()))) ;
+		}
+		final List<SMSMessage> rows = new ArrayList<>(messages.size()) ;
+		for(SMSMessage message: messages) {
+			final Set<Long> storedIds = stored.get(message.getTenantId()) ;
+			if(storedIds == null || !storedIds.contains(message.getInternalId())) {
+				rows.add(message) ;
+			}
+		}
+		return rows ;
+	}
+	
+	/**
+	 * @return first id of a range of count ids reserved for the caller
+	 */
+	private long allocateIds(final int count) {
+		return this.jdbcTemplate.execute(new ConnectionCallback<Long>() {
+			@Override
+			public Long doInConnection(final Connection connection) throws SQLException, DataAccessException {
+				try (PreparedStatement update = connection.prepareStatement(ALLOCATE_IDS)) {
+					update.setInt(1, count);
+					update.setString(2, SEQUENCE_NAME);
+					if(update.executeUpdate() != 1) {
+						throw new IllegalStateException("m_id_sequence has no row for "+SEQUENCE_NAME) ;
+					}
+				}
+				//last_insert_id() is kept per connection, so this reads our own update
+				try (Statement select = connection.createStatement();
+						ResultSet rs = select.executeQuery("select last_insert_id()")) {
+					rs.next() ;
+					return rs.getLong(1) - count ;
+				}
+			}
+		}) ;
+	}
+	
+	private void insertRows(final List<SMSMessage> rows) {
+		final StringBuilder sql = new StringBuilder(INSERT) ;
+		final List<Object> args = new ArrayList<>(rows.size() * 19) ;
+		final List<Integer> types = new ArrayList<>(rows.size() * 19) ;
+		for(SMSMessage message: rows) {
+			if(!args.isEmpty()) {
+				sql.append(", ") ;
+			}
+			sql.append(ROW) ;
+			add(args, types, message.getId(), Types.BIGINT) ;
+			add(args, types, message.getTenantId(), Types.BIGINT) ;
+			add(args, types, message.getExternalId(), Types.VARCHAR) ;
+			add(args, types, message.getInternalId(), Types.BIGINT) ;
+			add(args, types, timestamp(message.getSubmittedOnDate()), Types.TIMESTAMP) ;
+			add(args, types, timestamp(message.getDeliveredOnDate()), Types.TIMESTAMP) ;
+			add(args, types, message.getDeliveryStatus(), Types.INTEGER) ;
+			add(args, types, message.getDeliveryErrorMessage(), Types.VARCHAR) ;
+			add(args, types, message.getSourceAddress(), Types.VARCHAR) ;
+			add(args, types, message.getMobileNumber(), Types.VARCHAR) ;
+			add(args, types, message.getMessage(), Types.VARCHAR) ;
+			add(args, types, message.getBridgeId(), Types.BIGINT) ;
+			add(args, types, message.getPriority(), Types.INTEGER) ;
+			add(args, types, timestamp(message.getSendAt()), Types.TIMESTAMP) ;
+			add(args, types, message.getAttemptCount(), Types.INTEGER) ;
+			add(args, types, timestamp(message.getNextAttemptOn()), Types.TIMESTAMP) ;
+			add(args, types, message.getLeaseOwner(), Types.VARCHAR) ;
+			add(args, types, timestamp(message.getLeaseExpiresOn()), Types.TIMESTAMP) ;
+			add(args, types, message.getCampaignId(), Types.BIGINT) ;
+		}
+		final int[] argTypes = new int[types.size()] ;
+		for(int i = 0 ; i < argTypes.length; i++) {
+			argTypes[i] = types.get(i) ;
+		}
+		this.jdbcTemplate.update(sql.toString(), args.toArray(), argTypes) ;
+	}
+	
+	private static void add(final List<Object> args, final List<Integer> types, final Object value, final int type) {
+		args.add(value) ;
+		types.add(type) ;
+	}
+	
+	private static Timestamp timestamp(final Date date) {
+		return date == null ? null : new Timestamp(date.getTime()) ;
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.fineract.messagegateway.configuration.OutboxConfig;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Periodically claims PENDING messages nobody is working on (never leased,
+ * or leased by a node which did not finish them in time) and hands them to
+ * the local dispatcher while it has room for them.
+ */
+@Service
+public class OutboxPoller {
+
+	private static final Logger logger = LoggerFactory.getLogger(OutboxPoller.class);
+	
+	private final OutboxService outboxService ;
+	
+	private final MessageDispatcher messageDispatcher ;
+	
+	private final OutboxConfig outboxConfig ;
+	
+	private final AdmissionController admissionController ;
+	
+	private ScheduledExecutorService scheduledExecutorService ;
+	
+	@Autowired
+	public OutboxPoller(final OutboxService outboxService,
+			final MessageDispatcher messageDispatcher,
+			final OutboxConfig outboxConfig,
+			final AdmissionController admissionController) {
+		this.outboxService = outboxService ;
+		this.messageDispatcher = messageDispatcher ;
+		this.outboxConfig = outboxConfig ;
+		this.admissionController = admissionController ;
+	}
+	
+	@PostConstruct
+	public void init() {
+		logger.info("Starting outbox poller for node "+this.outboxConfig.getNodeId());
+		final long interval = this.outboxConfig.getPollIntervalSeconds() ;
+		this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor() ;
+		this.scheduledExecutorService.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				poll() ;
+			}
+		}, interval, interval, TimeUnit.SECONDS) ;
+	}
+	
+	@PreDestroy
+	public void destroy() {
+		this.scheduledExecutorService.shutdownNow() ;
+	}
+	
+	void poll() {
+		final int batchSize = Math.min(this.outboxConfig.getClaimBatchSize(), this.admissionController.getMaxBatchSize()) ;
+		try {
+			List<SMSMessage> claimed ;
+			do {
+				if(!this.admissionController.tryAdmit(batchSize)) {
+					logger.debug("Dispatcher is busy, leaving outbox rows for later");
+					break ;
+				}
+				try {
+					claimed = this.outboxService.claimPending(batchSize) ;
+				} catch (RuntimeException e) {
+					this.admissionController.release(batchSize);
+					throw e ;
+				}
+				this.admissionController.release(batchSize - claimed.size());
+				if(!claimed.isEmpty()) {
+					logger.info("Claimed "+claimed.size()+" pending messages from outbox");
+					this.messageDispatcher.dispatch(claimed);
+				}
+			} while (claimed.size() == batchSize) ;
+		} catch (RuntimeException e) {
+			logger.error("Polling outbox failed with reason "+e.getMessage(), e);
+		}
+	}
+}
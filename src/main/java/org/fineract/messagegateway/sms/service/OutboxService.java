@@ -0,0 +1,234 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.fineract.messagegateway.configuration.OutboxConfig;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.repository.SmsOutboundMessageRepository;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusTransitions;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Durable outbox over m_outbound_messages. A node only sends a PENDING
+ * message while it holds an unexpired lease on the row, leases are claimed
+ * with a single conditional UPDATE so several gateway nodes can share the
+ * table without sending the same message twice. Rows of a node that dies
+ * become claimable again once their lease expires. Messages with a future
+ * send_at are left to {@link MessageScheduler}.
+ */
+@Service
+public class OutboxService {
+
+	private static final int MAX_OWNER_LENGTH = 40 ;
+	
+	private static final String CLAIM_PENDING = "update m_outbound_messages set lease_owner=?, lease_expires_on=?"
+			+ " where delivery_status=? and (lease_expires_on is null or lease_expires_on < ?) and (send_at is null or send_at <= ?)"
+			+ " order by priority, id limit ?" ;
+	
+	private static final String CLAIM_BY_ID = "update m_outbound_messages set lease_owner=?, lease_expires_on=?"
+			+ " where delivery_status=? and (lease_expires_on is null or lease_expires_on < ?) and (send_at is null or send_at <= ?) and id in " ;
+	
+	//Scheduled messages stay leased until lease-seconds past their send_at
+	private static final String CLAIM_DUE = "update m_outbound_messages set lease_owner=?, lease_expires_on=timestampadd(SECOND, ?, greatest(send_at, ?))"
+			+ " where delivery_status=? and send_at <= ? and (lease_expires_on is null or lease_expires_on < ?) order by send_at limit ?" ;
+	
+	private static final String RENEW = "update m_outbound_messages set lease_expires_on=?"
+			+ " where id=? and lease_owner=? and delivery_status=?" ;
+	
+	//MySQL assigns left to right, delivery_status goes last as the columns before it test the stored status
+	private static final String DISPATCH_RESULT = "update m_outbound_messages set external_id=coalesce(?, external_id),"
+			+ " submitted_on_date=coalesce(?, submitted_on_date), source_address=coalesce(?, source_address), attempt_count=?, next_attempt_on=?, lease_owner=?, lease_expires_on=?,"
+			+ " delivered_on_date=case when %1$s then ? else delivered_on_date end,"
+			+ " delivery_error_message=case when %1$s then ? else delivery_error_message end,"
+			+ " delivery_status=case when %1$s then ? else delivery_status end where id=?" ;
+	
+	private final SmsOutboundMessageRepository smsOutboundMessageRepository ;
+	
+	private final JdbcTemplate jdbcTemplate ;
+	
+	private final OutboxConfig outboxConfig ;
+	
+	private final AtomicLong leaseSequence = new AtomicLong() ;
+	
+	@Autowired
+	public OutboxService(final SmsOutboundMessageRepository smsOutboundMessageRepository,
+			final DataSource dataSource,
+			final OutboxConfig outboxConfig) {
+		this.smsOutboundMessageRepository = smsOutboundMessageRepository ;
+		this.jdbcTemplate = new JdbcTemplate(dataSource) ;
+		this.outboxConfig = outboxConfig ;
+	}
+	
+	/**
+	 * Leases newly received messages to this node before they are saved, so
+	 * that other nodes leave them alone while they are dispatched locally.
+	 * Scheduled messages are leased until lease-seconds past their send_at.
+	 */
+	public void lease(final Collection<SMSMessage> messages) {
+		final String owner = newLeaseOwner() ;
+		final long now = System.currentTimeMillis() ;
+		final Date expiry = leaseExpiry(now) ;
+		for(SMSMessage message: messages) {
+			if(message.isScheduledAfter(now)) {
+				message.lease(owner, leaseExpiry(message.getSendAt().getTime()));
+			}else {
+				message.lease(owner, expiry);
+			}
+		}
+	}
+	
+	/**
+	 * Claims up to limit PENDING messages which are not leased by any live node.
+	 */
+	public List<SMSMessage> claimPending(final int limit) {
+		final String owner = newLeaseOwner() ;
+		final Timestamp now = new Timestamp(System.currentTimeMillis()) ;
+		int claimed = this.jdbcTemplate.update(CLAIM_PENDING, owner, new Timestamp(leaseExpiry().getTime()),
+				SmsMessageStatusType.PENDING.getValue(), now, now, limit) ;
+		if(claimed == 0) {
+			return Collections.emptyList() ;
+		}
+		return this.smsOutboundMessageRepository.findByLeaseOwner(owner) ;
+	}
+	
+	/**
+	 * Claims the given messages, skipping the ones which are no longer PENDING
+	 * or are leased by another node.
+	 */
+	public List<SMSMessage> claim(final Collection<SMSMessage> messages) {
+		final List<Long> ids = new ArrayList<>() ;
+		for(SMSMessage message: messages) {
+			ids.add(message.getId()) ;
+		}
+		return claimIds(ids) ;
+	}
+	
+	/**
+	 * Claims the messages with the given ids, see {@link #claim(Collection)}.
+	 */
+	public List<SMSMessage> claimIds(final Collection<Long> ids) {
+		if(ids.isEmpty()) {
+			return Collections.emptyList() ;
+		}
+		final String owner = newLeaseOwner() ;
+		String idList = ids.toString().replace("[", "(").replace("]", ")") ;
+		final Timestamp now = new Timestamp(System.currentTimeMillis()) ;
+		int claimed = this.jdbcTemplate.update(CLAIM_BY_ID + idList, owner, new Timestamp(leaseExpiry().getTime()),
+				SmsMessageStatusType.PENDING.getValue(), now, now) ;
+		if(claimed == 0) {
+			return Collections.emptyList() ;
+		}
+		return this.smsOutboundMessageRepository.findByLeaseOwner(owner) ;
+	}
+	
+	/**
+	 * Claims up to limit PENDING messages whose send_at is before the given
+	 * time, earliest first. Served by the (delivery_status, send_at) index.
+	 */
+	public List<SMSMessage> claimDue(final long untilMillis, final int limit) {
+		final String owner = newLeaseOwner() ;
+		final Timestamp now = new Timestamp(System.currentTimeMillis()) ;
+		int claimed = this.jdbcTemplate.update(CLAIM_DUE, owner, this.outboxConfig.getLeaseSeconds(), now,
+				SmsMessageStatusType.PENDING.getValue(), new Timestamp(untilMillis), now, limit) ;
+		if(claimed == 0) {
+			return Collections.emptyList() ;
+		}
+		return this.smsOutboundMessageRepository.findByLeaseOwner(owner) ;
+	}
+	
+	/**
+	 * Extends the lease right before the message is handed to the provider.
+	 * 
+	 * @return false if this node lost the lease, in which case the message must not be sent
+	 */
+	public boolean renewLease(final SMSMessage message) {
+		if(message.getLeaseOwner() == null) {
+			return false ;
+		}
+		final Date expiry = leaseExpiry() ;
+		int renewed = this.jdbcTemplate.update(RENEW, new Timestamp(expiry.getTime()), message.getId(), message.getLeaseOwner(),
+				SmsMessageStatusType.PENDING.getValue()) ;
+		if(renewed == 1) {
+			message.lease(message.getLeaseOwner(), expiry);
+			return true ;
+		}
+		return false ;
+	}
+	
+	/**
+	 * Keeps a message waiting for its next attempt leased until lease-seconds past that attempt.
+	 */
+	public void holdUntil(final SMSMessage message, final Date time) {
+		message.lease(message.getLeaseOwner(), leaseExpiry(time.getTime()));
+	}
+	
+	/**
+	 * Stores what sending did to the message. The delivery status is only
+	 * moved forward, a provider report which was written while the message
+	 * was being sent is kept.
+	 */
+	public void saveDispatchResult(final SMSMessage message) {
+		final SmsMessageStatusType status = SmsMessageStatusType.fromInt(message.getDeliveryStatus()) ;
+		final String sql = String.format(DISPATCH_RESULT, SmsMessageStatusTransitions.condition(status, true)) ;
+		this.jdbcTemplate.update(sql, message.getExternalId(),
+				toTimestamp(message.getSubmittedOnDate()),
+				message.getSourceAddress(),
+				message.getAttemptCount(),
+				toTimestamp(message.getNextAttemptOn()),
+				message.getLeaseOwner(),
+				toTimestamp(message.getLeaseExpiresOn()),
+				toTimestamp(message.getDeliveredOnDate()),
+				message.getDeliveryErrorMessage(),
+				message.getDeliveryStatus(),
+				message.getId()) ;
+	}
+	
+	private static Timestamp toTimestamp(final Date date) {
+		return date == null ? null : new Timestamp(date.getTime()) ;
+	}
+	
+	private String newLeaseOwner() {
+		String nodeId = this.outboxConfig.getNodeId() ;
+		if(nodeId.length() > MAX_OWNER_LENGTH) {
+			nodeId = nodeId.substring(0, MAX_OWNER_LENGTH) ;
+		}
+		return nodeId + ":" + this.leaseSequence.incrementAndGet() ;
+	}
+	
+	private Date leaseExpiry() {
+		return leaseExpiry(System.currentTimeMillis()) ;
+	}
+	
+	private Date leaseExpiry(final long fromMillis) {
+		return new Date(fromMillis + this.outboxConfig.getLeaseSeconds() * 1000L) ;
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.fineract.messagegateway.configuration.OutboxConfig;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Sends the PENDING messages a restart left behind. Starts as soon as the
+ * application context is refreshed and walks the pending rows in id order,
+ * a page at a time (id > last id of the previous page, served by the
+ * (delivery_status, id) index), so rows leaving PENDING meanwhile do not
+ * shift the pages and deep pages cost as little as the first one.
+ * <p>
+ * Pages are claimed, loaded and handed to the dispatch partitions by
+ * outbox.recovery-threads threads in parallel, admission control holds the
+ * walk back while the dispatcher is full. Progress is logged and reported in
+ * the recovery.scanned and recovery.claimed gauges.
+ */
+@Service
+public class PendingMessagesRecovery implements ApplicationListener<ContextRefreshedEvent> {
+
+	private static final Logger logger = LoggerFactory.getLogger(PendingMessagesRecovery.class);
+	
+	private static final String PENDING_IDS = "select id from m_outbound_messages where delivery_status=? and id > ? order by id limit ?" ;
+	
+	//Pages between two progress log lines
+	private static final int LOG_EVERY_PAGES = 100 ;
+	
+	private final JdbcTemplate jdbcTemplate ;
+	
+	private final OutboxService outboxService ;
+	
+	private final MessageDispatcher messageDispatcher ;
+	
+	private final AdmissionController admissionController ;
+	
+	private final OutboxConfig outboxConfig ;
+	
+	private final GaugeService gaugeService ;
+	
+	private final AtomicBoolean started = new AtomicBoolean() ;
+	
+	private final AtomicLong claimed = new AtomicLong() ;
+	
+	private ExecutorService walker ;
+	
+	private ThreadPoolExecutor claimers ;
+	
+	@Autowired
+	public PendingMessagesRecovery(final DataSource dataSource,
+			final OutboxService outboxService,
+			final MessageDispatcher messageDispatcher,
+			final AdmissionController admissionController,
+			final OutboxConfig outboxConfig,
+			final GaugeService gaugeService) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource) ;
+		this.outboxService = outboxService ;
+		this.messageDispatcher = messageDispatcher ;
+		this.admissionController = admissionController ;
+		this.outboxConfig = outboxConfig ;
+		this.gaugeService = gaugeService ;
+	}
+	
+	@PostConstruct
+	public void init() {
+		final int threads = this.outboxConfig.getRecoveryThreads() ;
+		this.walker = Executors.newSingleThreadExecutor() ;
+		//A full queue makes the walker claim the page itself, so it never reads far ahead of the claims
+		this.claimers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(threads), new ThreadPoolExecutor.CallerRunsPolicy()) ;
+	}
+	
+	@PreDestroy
+	public void destroy() {
+		this.walker.shutdownNow() ;
+		this.claimers.shutdownNow() ;
+	}
+	
+	@Override
+	public void onApplicationEvent(final ContextRefreshedEvent event) {
+		if(!this.started.compareAndSet(false, true)) {
+			return ;
+		}
+		this.walker.execute(new Runnable() {
+			@Override
+			public void run() {
+				recover() ;
+			}
+		});
+	}
+	
+	void recover() {
+		logger.info("Sending Pending Messages on bootup.....");
+		final long startedOn = System.currentTimeMillis() ;
+		final int pageSize = Math.min(this.outboxConfig.getRecoveryPageSize(), this.admissionController.getMaxBatchSize()) ;
+		long lastId = 0 ;
+		long scanned = 0 ;
+		int pages = 0 ;
+		try {
+			while(!Thread.currentThread().isInterrupted()) {
+				final List<Long> ids = this.jdbcTemplate.queryForList(PENDING_IDS, Long.class,
+						SmsMessageStatusType.PENDING.getValue(), lastId, pageSize) ;
+				if(ids.isEmpty()) {
+					break ;
+				}
+				lastId = ids.get(ids.size() - 1) ;
+				scanned += ids.size() ;
+				this.claimers.execute(new Runnable() {
+					@Override
+					public void run() {
+						recoverPage(ids) ;
+					}
+				});
+				this.gaugeService.submit("recovery.scanned", scanned);
+				if(++pages % LOG_EVERY_PAGES == 0) {
+					logger.info("Recovery read "+scanned+" pending messages up to id "+lastId+", claimed "+this.claimed.get()
+							+" in "+(System.currentTimeMillis() - startedOn)/1000+"s");
+				}
+			}
+			this.claimers.shutdown() ;
+			this.claimers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS) ;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			//Whatever is left is picked up by the outbox poller
+			logger.error("Recovering pending messages failed after id "+lastId+" with reason "+e.getMessage(), e);
+		}
+		logger.info("Recovery read "+scanned+" pending messages, claimed "+this.claimed.get()+" in "
+				+(System.currentTimeMillis() - startedOn)/1000+"s");
+	}
+	
+	private void recoverPage(final List<Long> ids) {
+		try {
+			this.admissionController.acquire(ids.size());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return ;
+		}
+		final List<SMSMessage> messages ;
+		try {
+			messages = this.outboxService.claimIds(ids) ;
+		} catch (RuntimeException e) {
+			this.admissionController.release(ids.size());
+			logger.error("Claiming "+ids.size()+" pending messages failed with reason "+e.getMessage(), e);
+			return ;
+		}
+		//Other nodes may be recovering the same rows, only what this node could claim is sent
+		this.admissionController.release(ids.size() - messages.size());
+		this.messageDispatcher.dispatch(messages);
+		this.gaugeService.submit("recovery.claimed", this.claimed.addAndGet(messages.size()));
+	}
+}
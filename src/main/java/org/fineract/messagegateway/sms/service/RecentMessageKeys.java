@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.fineract.messagegateway.configuration.CacheConfig;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.stereotype.Service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Internal ids of the messages this node received lately, per tenant, so
+ * that a client retrying a request is answered without a database lookup.
+ * Only a filter in front of the unique (tenant_id, internal_id) key, keys
+ * evicted here or received by another node are caught by
+ * {@link OutboundMessageWriter}.
+ */
+@Service
+public class RecentMessageKeys {
+
+	private final CacheConfig cacheConfig ;
+	
+	private final CounterService counterService ;
+	
+	private Cache<Key, Boolean> keys ;
+	
+	@Autowired
+	public RecentMessageKeys(final CacheConfig cacheConfig,
+			final CounterService counterService) {
+		this.cacheConfig = cacheConfig ;
+		this.counterService = counterService ;
+	}
+	
+	@PostConstruct
+	public void init() {
+		this.keys = CacheBuilder.newBuilder()
+				.maximumSize(this.cacheConfig.getRecentKeysMaxSize())
+				.expireAfterWrite(this.cacheConfig.getRecentKeysTtlMinutes(), TimeUnit.MINUTES)
+				.build() ;
+	}
+	
+	/**
+	 * Leaves out messages received before and messages repeating an internal
+	 * id of the same request, they are added to duplicates instead.
+	 * 
+	 * @return the messages which may be new
+	 */
+	public List<SMSMessage> withoutDuplicates(final Long tenantId, final Collection<SMSMessage> messages, final List<SMSMessage> duplicates) {
+		final List<SMSMessage> fresh = new ArrayList<>(messages.size()) ;
+		final Set<Long> seen = new HashSet<>() ;
+		for(SMSMessage message: messages) {
+			final Long internalId = message.getInternalId() ;
+			if(internalId == null) {
+				fresh.add(message) ;
+			}else if(!seen.add(internalId) || this.keys.getIfPresent(new Key(tenantId, internalId)) != null) {
+				this.counterService.increment("ingest.duplicate.recent");
+				duplicates.add(message) ;
+			}else {
+				fresh.add(message) ;
+			}
+		}
+		return fresh ;
+	}
+	
+	public void remember(final Long tenantId, final Collection<SMSMessage> messages) {
+		for(SMSMessage message: messages) {
+			if(message.getInternalId() != null) {
+				this.keys.put(new Key(tenantId, message.getInternalId()), Boolean.TRUE);
+			}
+		}
+	}
+	
+	static class Key {
+		
+		final Long tenantId ;
+		final Long internalId ;
+		
+		Key(final Long tenantId, final Long internalId) {
+			this.tenantId = tenantId ;
+			this.internalId = internalId ;
+		}
+		
+		@Override
+		public boolean equals(final Object obj) {
+			if(!(obj instanceof Key)) {
+				return false ;
+			}
+			final Key other = (Key) obj ;
+			return this.tenantId.equals(other.tenantId) && this.internalId.equals(other.internalId) ;
+		}
+		
+		@Override
+		public int hashCode() {
+			return 31 * this.tenantId.hashCode() + this.internalId.hashCode() ;
+		}
+	}
+}
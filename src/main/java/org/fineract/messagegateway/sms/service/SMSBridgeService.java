@@ -23,6 +23,10 @@ import java.util.Collection;
 import org.fineract.messagegateway.service.SecurityService;
 import org.fineract.messagegateway.sms.domain.SMSBridge;
 import org.fineract.messagegateway.sms.exception.SMSBridgeNotFoundException;
+import org.fineract.messagegateway.sms.providers.BridgeCache;
+import org.fineract.messagegateway.sms.providers.BridgeCircuitBreaker;
+import org.fineract.messagegateway.sms.providers.BridgeInFlightLimiter;
+import org.fineract.messagegateway.sms.providers.BridgeRateLimiter;
 import org.fineract.messagegateway.sms.repository.SMSBridgeRepository;
 import org.fineract.messagegateway.sms.serialization.SmsBridgeSerializer;
 import org.fineract.messagegateway.tenants.domain.Tenant;
@@ -39,13 +43,29 @@ public class SMSBridgeService {
 	
 	private final SecurityService securityService ;
 	
+	private final BridgeRateLimiter bridgeRateLimiter ;
+	
+	private final BridgeCircuitBreaker bridgeCircuitBreaker ;
+	
+	private final BridgeInFlightLimiter bridgeInFlightLimiter ;
+	
+	private final BridgeCache bridgeCache ;
+	
 	@Autowired
 	public SMSBridgeService(final SMSBridgeRepository smsBridgeRepository,
 			final SmsBridgeSerializer smsBridgeService,
-			final SecurityService securityService) {
+			final SecurityService securityService,
+			final BridgeRateLimiter bridgeRateLimiter,
+			final BridgeCircuitBreaker bridgeCircuitBreaker,
+			final BridgeInFlightLimiter bridgeInFlightLimiter,
+			final BridgeCache bridgeCache) {
 		this.smsBridgeRepository = smsBridgeRepository;
 		this.smsBridgeService = smsBridgeService ;
 		this.securityService = securityService ;
+		this.bridgeRateLimiter = bridgeRateLimiter ;
+		this.bridgeCircuitBreaker = bridgeCircuitBreaker ;
+		this.bridgeInFlightLimiter = bridgeInFlightLimiter ;
+		this.bridgeCache = bridgeCache ;
 	}
 
 	public Collection<SMSBridge> retrieveProviderDetails(final String tenantId, final String tenantAppKey) {
@@ -70,6 +90,7 @@ public class SMSBridgeService {
 		}
 		this.smsBridgeService.validateUpdate(json, bridge);
 		this.smsBridgeRepository.save(bridge);
+		this.bridgeCache.invalidate(tenant.getId(), bridgeId);
 	}
 	
 	public Long deleteSmsBridge(final String tenantId, final String tenantAppKey, final Long bridgeId) throws SMSBridgeNotFoundException{
@@ -80,6 +101,10 @@ public class SMSBridgeService {
 		}
 		
 		this.smsBridgeRepository.delete(bridge);
+		this.bridgeCache.invalidate(tenant.getId(), bridgeId);
+		this.bridgeRateLimiter.invalidate(bridgeId);
+		this.bridgeCircuitBreaker.invalidate(bridgeId);
+		this.bridgeInFlightLimiter.invalidate(bridgeId);
 		return bridgeId ;
 	}
 	
@@ -20,29 +20,27 @@ package org.fineract.messagegateway.sms.service;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
-import javax.annotation.PostConstruct;
 import javax.sql.DataSource;
 
 import org.fineract.messagegateway.service.SecurityService;
 import org.fineract.messagegateway.sms.data.DeliveryStatusData;
+import org.fineract.messagegateway.sms.data.SubmissionData;
 import org.fineract.messagegateway.sms.domain.SMSMessage;
-import org.fineract.messagegateway.sms.providers.SMSProviderFactory;
-import org.fineract.messagegateway.sms.repository.SmsOutboundMessageRepository;
+import org.fineract.messagegateway.sms.util.SmsMessagePriorityType;
 import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
 import org.fineract.messagegateway.tenants.domain.Tenant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.boot.actuate.metrics.CounterService;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
@@ -52,48 +50,125 @@ public class SMSMessageService {
 
 	 private static final Logger logger = LoggerFactory.getLogger(SMSMessageService.class);
 	 
-	private final SmsOutboundMessageRepository smsOutboundMessageRepository ;
+	private final JdbcTemplate jdbcTemplate ;
 	
-	private final SMSProviderFactory smsProviderFactory ;
+	private final MessageDispatcher messageDispatcher ;
 	
-	private final JdbcTemplate jdbcTemplate ;
+	private final OutboxService outboxService ;
 	
-	private ExecutorService executorService ;
+	private final AdmissionController admissionController ;
 	
-	private ScheduledExecutorService scheduledExecutorService ;
+	private final MessageScheduler messageScheduler ;
+	
+	private final OutboundMessageWriter outboundMessageWriter ;
 	
 	private final SecurityService securityService ;
 	
+	private final RecentMessageKeys recentMessageKeys ;
+	
+	private final CounterService counterService ;
+	
 	
 	@Autowired
-	public SMSMessageService(final SmsOutboundMessageRepository smsOutboundMessageRepository,
-			final SMSProviderFactory smsProviderFactory,
-			final DataSource dataSource,
-			final SecurityService securityService) {
-		this.smsOutboundMessageRepository = smsOutboundMessageRepository ;
-		this.smsProviderFactory = smsProviderFactory ;
+	public SMSMessageService(final DataSource dataSource,
+			final SecurityService securityService,
+			final MessageDispatcher messageDispatcher,
+			final OutboxService outboxService,
+			final AdmissionController admissionController,
+			final MessageScheduler messageScheduler,
+			final OutboundMessageWriter outboundMessageWriter,
+			final RecentMessageKeys recentMessageKeys,
+			final CounterService counterService) {
 		this.jdbcTemplate = new JdbcTemplate(dataSource) ;
 		this.securityService = securityService ;
+		this.messageDispatcher = messageDispatcher ;
+		this.outboxService = outboxService ;
+		this.admissionController = admissionController ;
+		this.messageScheduler = messageScheduler ;
+		this.outboundMessageWriter = outboundMessageWriter ;
+		this.recentMessageKeys = recentMessageKeys ;
+		this.counterService = counterService ;
+	}
+	
+	/**
+	 * Stores and sends the messages. Messages whose internal id the tenant
+	 * used before are not sent again but reported as duplicates.
+	 */
+	public SubmissionData sendShortMessage(final String tenantId, final String tenantAppKey, final Collection<SMSMessage> received) {
+		return submit(tenantId, tenantAppKey, received, false) ;
 	}
 	
-	@PostConstruct
-	public void init() {
-		logger.debug("Intializing SMSMessage Service.....");
-		executorService = Executors.newSingleThreadExecutor();
-		scheduledExecutorService = Executors.newSingleThreadScheduledExecutor() ;
-		scheduledExecutorService.schedule(new BootupPendingMessagesTask(this.smsOutboundMessageRepository, this.smsProviderFactory) , 1, TimeUnit.MINUTES) ;
-		//When do I have to shutdown  scheduledExecutorService ? :-( as it is no use after triggering BootupPendingMessagesTask
-		//Shutdown scheduledExecutorService on application close event
+	/**
+	 * Like {@link #sendShortMessage(String, String, Collection)}, but messages
+	 * the dispatcher has no room for are only stored instead of turned down,
+	 * the outbox poller sends them later. For uploads stored while they are read.
+	 */
+	public SubmissionData queueShortMessage(final String tenantId, final String tenantAppKey, final Collection<SMSMessage> received) {
+		return submit(tenantId, tenantAppKey, received, true) ;
 	}
 	
-	public void sendShortMessage(final String tenantId, final String tenantAppKey, final Collection<SMSMessage> messages) {
+	private SubmissionData submit(final String tenantId, final String tenantAppKey, final Collection<SMSMessage> received, final boolean overflowToOutbox) {
 		logger.debug("Request Received to send messages.....");
 		Tenant tenant = this.securityService.authenticate(tenantId, tenantAppKey) ;
+		final List<SMSMessage> duplicates = new ArrayList<>() ;
+		final List<SMSMessage> messages = this.recentMessageKeys.withoutDuplicates(tenant.getId(), received, duplicates) ;
+		final long now = System.currentTimeMillis() ;
+		final List<SMSMessage> immediate = new ArrayList<>() ;
+		final List<SMSMessage> nearTerm = new ArrayList<>() ;
+		final List<SMSMessage> later = new ArrayList<>() ;
+		boolean promotional = true ;
 		for(SMSMessage message: messages) {
 			message.setTenant(tenant.getId());
+			if(!message.isScheduledAfter(now)) {
+				immediate.add(message) ;
+				promotional &= SmsMessagePriorityType.PROMOTIONAL.equals(message.getPriorityType()) ;
+			}else if(this.messageScheduler.isWithinWindow(message, now)) {
+				nearTerm.add(message) ;
+			}else {
+				later.add(message) ;
+			}
 		}
-		this.smsOutboundMessageRepository.save(messages) ;
-		this.executorService.execute(new MessageTask(tenant, this.smsOutboundMessageRepository, this.smsProviderFactory, messages));
+		//Mixed batches are admitted as transactional, scheduled messages only once they are due
+		if(!immediate.isEmpty() && !overflowToOutbox) {
+			this.admissionController.admit(immediate.size(), promotional);
+		}else if(!immediate.isEmpty() && !this.admissionController.tryAdmit(immediate.size(), promotional)) {
+			//Stored unleased for the outbox poller, like messages of a later window
+			later.addAll(immediate) ;
+			immediate.clear();
+		}
+		final List<SMSMessage> inserted ;
+		try {
+			//Messages due after the current window are left unleased for whichever node loads that window
+			this.outboxService.lease(immediate);
+			this.outboxService.lease(nearTerm);
+			inserted = this.outboundMessageWriter.insert(messages) ;
+		} catch (RuntimeException e) {
+			this.admissionController.release(immediate.size());
+			throw e ;
+		}
+		this.recentMessageKeys.remember(tenant.getId(), messages);
+		if(inserted.size() < messages.size()) {
+			//Stored before by another node or longer ago than this node remembers
+			final Set<SMSMessage> stored = Collections.newSetFromMap(new IdentityHashMap<SMSMessage, Boolean>()) ;
+			stored.addAll(inserted) ;
+			for(SMSMessage message: messages) {
+				if(!stored.contains(message)) {
+					this.counterService.increment("ingest.duplicate.stored");
+					duplicates.add(message) ;
+				}
+			}
+			final int admitted = immediate.size() ;
+			immediate.retainAll(stored) ;
+			nearTerm.retainAll(stored) ;
+			this.admissionController.release(admitted - immediate.size());
+		}
+		this.messageDispatcher.dispatch(immediate);
+		this.messageScheduler.schedule(nearTerm);
+		final List<Long> duplicateIds = new ArrayList<>(duplicates.size()) ;
+		for(SMSMessage message: duplicates) {
+			duplicateIds.add(message.getInternalId()) ;
+		}
+		return new SubmissionData(inserted.size(), duplicateIds) ;
 	}
 	
 	public Collection<DeliveryStatusData> getDeliveryStatus(final String tenantId, final String tenantAppKey, final Collection<Long> internalIds) {
@@ -130,55 +205,4 @@ public class SMSMessageService {
 			return data;
 		}
 	}
-	
-	class MessageTask implements Runnable {
-
-		final Collection<SMSMessage> messages ;
-		final SmsOutboundMessageRepository smsOutboundMessageRepository ;
-		final SMSProviderFactory smsProviderFactory ;
-		final Tenant tenant ;
-		
-		public MessageTask(final Tenant tenant, final SmsOutboundMessageRepository smsOutboundMessageRepository, 
-				final SMSProviderFactory smsProviderFactory,
-				final Collection<SMSMessage> messages) {
-			this.tenant = tenant ;
-			this.messages = messages ;
-			this.smsOutboundMessageRepository = smsOutboundMessageRepository ;
-			this.smsProviderFactory = smsProviderFactory ;
-		}
-		
-		@Override
-		public void run() {
-			this.smsProviderFactory.sendShortMessage(messages);
-			this.smsOutboundMessageRepository.save(messages) ;
-		}
-	}
-	
-	class BootupPendingMessagesTask implements Callable<Integer> {
-
-		final SmsOutboundMessageRepository smsOutboundMessageRepository ;
-		final SMSProviderFactory smsProviderFactory ;
-		public BootupPendingMessagesTask(final SmsOutboundMessageRepository smsOutboundMessageRepository, 
-				final SMSProviderFactory smsProviderFactory) {
-			this.smsOutboundMessageRepository = smsOutboundMessageRepository ;
-			this.smsProviderFactory = smsProviderFactory ;
-		}
-
-		@Override
-		public Integer call() throws Exception {
-			logger.info("Sending Pending Messages on bootup.....");
-			Integer page = 0;
-			Integer initialSize = 200;
-			Integer totalPageSize = 0;
-			do {
-				PageRequest pageRequest = new PageRequest(page, initialSize);
-				Page<SMSMessage> messages = this.smsOutboundMessageRepository.findByDeliveryStatus(SmsMessageStatusType.PENDING.getValue(), pageRequest) ;
-				page++;
-				totalPageSize = messages.getTotalPages();
-				this.smsProviderFactory.sendShortMessage(messages.getContent());
-				this.smsOutboundMessageRepository.save(messages) ;
-			}while (page < totalPageSize);
-			return totalPageSize;
-		}
-	}
 }
@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.fineract.messagegateway.configuration.OutboxConfig;
+import org.fineract.messagegateway.configuration.SweeperConfig;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Fails messages which never got a delivery report and releases PENDING
+ * messages a node holds on to without sending them. Every
+ * sweeper.interval-seconds one node, the one holding a MySQL named lock,
+ * moves WAITING_FOR_REPORT rows submitted more than
+ * sweeper.report-timeout-seconds ago to FAILED, sweeper.batch-size rows per
+ * UPDATE along the (delivery_status, submitted_on_date) index. A report
+ * written meanwhile wins, only rows still waiting are touched.
+ * <p>
+ * {@link OutboxPoller} claims PENDING messages again once the lease of the
+ * node which lost them expired. A node which is alive but lost the task of a
+ * message would keep it for the whole outbox.lease-seconds though, so the
+ * sweep also releases PENDING rows whose lease was taken or renewed more than
+ * sweeper.pending-timeout-seconds ago. A lease always runs lease-seconds from
+ * when the message is due (now, its send_at or its next attempt), so messages
+ * held for a later send time or attempt are not touched. The node which had
+ * the message cannot renew the released lease and does not send it.
+ */
+@Service
+public class StaleMessageSweeper {
+
+	private static final Logger logger = LoggerFactory.getLogger(StaleMessageSweeper.class);
+	
+	private static final String LOCK_NAME = "message-gateway.sweeper" ;
+	
+	private static final String EXPIRE_WAITING = "update m_outbound_messages set delivery_error_message=?, delivery_status=?"
+			+ " where delivery_status=? and submitted_on_date < ? order by submitted_on_date limit ?" ;
+	
+	private static final String RELEASE_PENDING = "update m_outbound_messages set lease_owner=null, lease_expires_on=null"
+			+ " where delivery_status=? and lease_expires_on > ? and lease_expires_on < ? limit ?" ;
+	
+	private final JdbcTemplate jdbcTemplate ;
+	
+	private final SweeperConfig sweeperConfig ;
+	
+	private final OutboxConfig outboxConfig ;
+	
+	private final GaugeService gaugeService ;
+	
+	private ScheduledExecutorService scheduledExecutorService ;
+	
+	@Autowired
+	public StaleMessageSweeper(final DataSource dataSource,
+			final SweeperConfig sweeperConfig,
+			final OutboxConfig outboxConfig,
+			final GaugeService gaugeService) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource) ;
+		this.sweeperConfig = sweeperConfig ;
+		this.outboxConfig = outboxConfig ;
+		this.gaugeService = gaugeService ;
+	}
+	
+	@PostConstruct
+	public void init() {
+		final long interval = this.sweeperConfig.getIntervalSeconds() ;
+		this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor() ;
+		this.scheduledExecutorService.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				sweep() ;
+			}
+		}, interval, interval, TimeUnit.SECONDS) ;
+	}
+	
+	@PreDestroy
+	public void destroy() {
+		this.scheduledExecutorService.shutdownNow() ;
+	}
+	
+	void sweep() {
+		try {
+			//The named lock belongs to the connection, so it is taken, used and released on one
+			this.jdbcTemplate.execute(new ConnectionCallback<Void>() {
+				@Override
+				public Void doInConnection(final Connection connection) throws SQLException, DataAccessException {
+					if(!namedLock(connection, "select get_lock(?, 0)")) {
+						logger.debug("Another node is sweeping stale messages");
+						return null ;
+					}
+					try {
+						expireWaitingForReport(connection) ;
+						releaseStalePending(connection) ;
+					} finally {
+						namedLock(connection, "select release_lock(?)") ;
+					}
+					return null ;
+				}
+			}) ;
+		} catch (RuntimeException e) {
+			logger.error("Sweeping stale messages failed with reason "+e.getMessage(), e);
+		}
+	}
+	
+	private void expireWaitingForReport(final Connection connection) throws SQLException {
+		final int timeoutSeconds = this.sweeperConfig.getReportTimeoutSeconds() ;
+		final int batchSize = this.sweeperConfig.getBatchSize() ;
+		final Timestamp submittedBefore = new Timestamp(System.currentTimeMillis() - timeoutSeconds * 1000L) ;
+		int expired = 0 ;
+		try (PreparedStatement update = connection.prepareStatement(EXPIRE_WAITING)) {
+			update.setString(1, "No delivery report received within "+timeoutSeconds+" seconds");
+			update.setInt(2, SmsMessageStatusType.FAILED.getValue());
+			update.setInt(3, SmsMessageStatusType.WAITING_FOR_REPORT.getValue());
+			update.setTimestamp(4, submittedBefore);
+			update.setInt(5, batchSize);
+			int updated ;
+			do {
+				updated = update.executeUpdate() ;
+				expired += updated ;
+			} while (updated == batchSize && !Thread.currentThread().isInterrupted()) ;
+		}
+		this.gaugeService.submit("sweeper.expired", expired);
+		if(expired > 0) {
+			logger.info("Failed "+expired+" messages which got no delivery report within "+timeoutSeconds+" seconds");
+		}
+	}
+	
+	private void releaseStalePending(final Connection connection) throws SQLException {
+		final int timeoutSeconds = this.sweeperConfig.getPendingTimeoutSeconds() ;
+		final int batchSize = this.sweeperConfig.getBatchSize() ;
+		final long now = System.currentTimeMillis() ;
+		//Leases expiring before this were taken or renewed more than timeoutSeconds ago
+		final Timestamp leasedBefore = new Timestamp(now + (this.outboxConfig.getLeaseSeconds() - timeoutSeconds) * 1000L) ;
+		int released = 0 ;
+		try (PreparedStatement update = connection.prepareStatement(RELEASE_PENDING)) {
+			update.setInt(1, SmsMessageStatusType.PENDING.getValue());
+			update.setTimestamp(2, new Timestamp(now));
+			update.setTimestamp(3, leasedBefore);
+			update.setInt(4, batchSize);
+			int updated ;
+			do {
+				updated = update.executeUpdate() ;
+				released += updated ;
+			} while (updated == batchSize && !Thread.currentThread().isInterrupted()) ;
+		}
+		this.gaugeService.submit("sweeper.released", released);
+		if(released > 0) {
+			logger.info("Released "+released+" PENDING messages which were not sent within "+timeoutSeconds+" seconds of being leased");
+		}
+	}
+	
+	private static boolean namedLock(final Connection connection, final String sql) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			statement.setString(1, LOCK_NAME);
+			try (ResultSet rs = statement.executeQuery()) {
+				return rs.next() && rs.getInt(1) == 1 ;
+			}
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel (Varghese and Lauck). Level 0 has wheelSize
+ * buckets of tickMs each, every further level covers wheelSize times the span
+ * of the level below with buckets as wide as that whole level. Items are put
+ * into the finest level that can hold their expiration and trickle down when
+ * the bucket of a coarser level comes due. Adding an item and advancing the
+ * clock by one tick are O(1) regardless of how many items are held.
+ * 
+ * Not thread safe by itself, callers synchronize.
+ */
+public class HierarchicalTimingWheel<T> {
+
+	private final long tickMs ;
+	
+	private final int wheelSize ;
+	
+	private final List<Level> levels = new ArrayList<>() ;
+	
+	//start of the current level 0 tick
+	private long currentTime ;
+	
+	private int size ;
+	
+	public HierarchicalTimingWheel(final long tickMs, final int wheelSize, final long startMs) {
+		if(tickMs <= 0 || wheelSize < 2) {
+			throw new IllegalArgumentException("tickMs must be positive and wheelSize at least 2") ;
+		}
+		this.tickMs = tickMs ;
+		this.wheelSize = wheelSize ;
+		this.currentTime = startMs - (startMs % tickMs) ;
+		this.levels.add(new Level(tickMs)) ;
+	}
+	
+	/**
+	 * Expirations are rounded up to the next tick, an item never comes out of
+	 * {@link #advance(long)} before its expiration.
+	 * 
+	 * @return false if the item is already due, the caller should then process
+	 * it right away
+	 */
+	public boolean add(final T item, final long expirationMs) {
+		final long dueMs = ((expirationMs + this.tickMs - 1) / this.tickMs) * this.tickMs ;
+		if(dueMs <= this.currentTime) {
+			return false ;
+		}
+		int index = 0 ;
+		while(true) {
+			if(index == this.levels.size()) {
+				final Level below = this.levels.get(index - 1) ;
+				this.levels.add(new Level(below.tickMs * this.wheelSize)) ;
+			}
+			final Level level = this.levels.get(index) ;
+			final long levelStart = this.currentTime - (this.currentTime % level.tickMs) ;
+			if(dueMs < levelStart + level.tickMs * this.wheelSize) {
+				level.add(item, expirationMs, dueMs) ;
+				this.size++ ;
+				return true ;
+			}
+			index++ ;
+		}
+	}
+	
+	/**
+	 * Moves the clock forward to nowMs, one tick at a time.
+	 * 
+	 * @return the items which expired on the way, in expiration order per tick
+	 */
+	public List<T> advance(final long nowMs) {
+		final List<T> expired = new ArrayList<>() ;
+		while(this.currentTime + this.tickMs <= nowMs) {
+			this.currentTime += this.tickMs ;
+			//Coarser levels first so that their items cascade into buckets checked in this same tick
+			for(int i = this.levels.size() - 1; i >= 0; i--) {
+				final Bucket<T> bucket = this.levels.get(i).bucketAt(this.currentTime) ;
+				if(bucket.start < 0 || bucket.start > this.currentTime) {
+					continue ;
+				}
+				final List<Entry<T>> entries = bucket.entries ;
+				bucket.reset() ;
+				for(Entry<T> entry: entries) {
+					this.size-- ;
+					if(!add(entry.item, entry.expirationMs)) {
+						expired.add(entry.item) ;
+					}
+				}
+			}
+		}
+		return expired ;
+	}
+	
+	public int size() {
+		return this.size ;
+	}
+	
+	public long getCurrentTime() {
+		return this.currentTime ;
+	}
+	
+	class Level {
+		
+		final long tickMs ;
+		final List<Bucket<T>> buckets ;
+		
+		Level(final long tickMs) {
+			this.tickMs = tickMs ;
+			this.buckets = new ArrayList<>(wheelSize) ;
+			for(int i = 0 ; i < wheelSize; i++) {
+				this.buckets.add(new Bucket<T>()) ;
+			}
+		}
+		
+		void add(final T item, final long expirationMs, final long dueMs) {
+			final long virtualId = dueMs / this.tickMs ;
+			final Bucket<T> bucket = this.buckets.get((int) (virtualId % wheelSize)) ;
+			bucket.start = virtualId * this.tickMs ;
+			bucket.entries.add(new Entry<>(item, expirationMs)) ;
+		}
+		
+		Bucket<T> bucketAt(final long timeMs) {
+			return this.buckets.get((int) ((timeMs / this.tickMs) % wheelSize)) ;
+		}
+	}
+	
+	static class Bucket<T> {
+		
+		//start of the time span this bucket currently holds, -1 while empty
+		long start = -1 ;
+		List<Entry<T>> entries = new ArrayList<>() ;
+		
+		void reset() {
+			this.start = -1 ;
+			this.entries = new ArrayList<>() ;
+		}
+	}
+	
+	static class Entry<T> {
+		
+		final T item ;
+		final long expirationMs ;
+		
+		Entry(final T item, final long expirationMs) {
+			this.item = item ;
+			this.expirationMs = expirationMs ;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.util;
+
+/** 
+ * SMS message priority predefined enum constants, lower values are dispatched first
+ **/
+public enum SmsMessagePriorityType {
+	TRANSACTIONAL(100, "smsMessagePriorityType.transactional"), // OTPs, repayment confirmations and other time critical messages
+	PROMOTIONAL(200, "smsMessagePriorityType.promotional"); // bulk campaigns which may wait behind transactional traffic
+	
+	private final Integer value;
+    private final String code;
+
+    /** 
+     * get enum constant by value
+     * 
+     * @param priorityValue the value of the enum constant
+     * @return enum constant, TRANSACTIONAL for unknown values
+     **/
+    public static SmsMessagePriorityType fromInt(final Integer priorityValue) {
+        SmsMessagePriorityType enumeration = SmsMessagePriorityType.TRANSACTIONAL;
+        if (priorityValue != null && priorityValue == 200) {
+        	enumeration = SmsMessagePriorityType.PROMOTIONAL;
+        }
+        return enumeration;
+    }
+
+    /** 
+     * get enum constant by name or value
+     * 
+     * @param priority TRANSACTIONAL, PROMOTIONAL or the numeric value of the enum constant
+     * @return enum constant, TRANSACTIONAL for null
+     **/
+    public static SmsMessagePriorityType fromString(final String priority) {
+        if (priority == null) {
+        	return SmsMessagePriorityType.TRANSACTIONAL;
+        }
+        for (SmsMessagePriorityType type: SmsMessagePriorityType.values()) {
+        	if (type.name().equalsIgnoreCase(priority) || type.getValue().toString().equals(priority)) {
+        		return type;
+        	}
+        }
+        throw new IllegalArgumentException("Unknown message priority "+priority);
+    }
+
+    /** 
+     * SmsMessagePriorityType constructor  
+     **/
+    private SmsMessagePriorityType(final Integer value, final String code) {
+        this.value = value;
+        this.code = code;
+    }
+
+    /** 
+     * @return enum constant value 
+     **/
+    public Integer getValue() {
+        return this.value;
+    }
+
+    /** 
+     * @return enum constant 
+     **/
+    public String getCode() {
+        return this.code;
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Allowed delivery status transitions. A message only moves forward,
+ * PENDING -> WAITING_FOR_REPORT -> SENT -> DELIVERED or FAILED, steps may be
+ * skipped and DELIVERED and FAILED are final. Provider reports arrive out of
+ * order, a transition which is not allowed is a stale report and is dropped.
+ */
+public final class SmsMessageStatusTransitions {
+
+	private SmsMessageStatusTransitions() {
+	}
+	
+	public static boolean isFinal(final SmsMessageStatusType status) {
+		return SmsMessageStatusType.DELIVERED.equals(status) || SmsMessageStatusType.FAILED.equals(status) ;
+	}
+	
+	public static boolean isAllowed(final SmsMessageStatusType from, final SmsMessageStatusType to) {
+		if(SmsMessageStatusType.INVALID.equals(from) || SmsMessageStatusType.INVALID.equals(to) || isFinal(from)) {
+			return false ;
+		}
+		return to.getValue() > from.getValue() ;
+	}
+	
+	/**
+	 * @return values of the statuses a message may move to status from, empty if none
+	 */
+	public static List<Integer> sourcesOf(final SmsMessageStatusType status) {
+		final List<Integer> sources = new ArrayList<>() ;
+		for(SmsMessageStatusType from: SmsMessageStatusType.values()) {
+			if(isAllowed(from, status)) {
+				sources.add(from.getValue()) ;
+			}
+		}
+		return Collections.unmodifiableList(sources) ;
+	}
+	
+	/**
+	 * SQL condition for a conditional UPDATE which applies the transition to
+	 * status, or keeps status when the row is in it already if includeSelf is set.
+	 * Only made of the enum values, never of request data.
+	 */
+	public static String condition(final SmsMessageStatusType status, final boolean includeSelf) {
+		final List<Integer> sources = new ArrayList<>(sourcesOf(status)) ;
+		if(includeSelf) {
+			sources.add(status.getValue()) ;
+		}
+		if(sources.isEmpty()) {
+			return "1=0" ;
+		}
+		final StringBuilder condition = new StringBuilder("delivery_status in (") ;
+		for(int i = 0 ; i < sources.size(); i++) {
+			if(i > 0) {
+				condition.append(',') ;
+			}
+			condition.append(sources.get(i)) ;
+		}
+		return condition.append(')').toString() ;
+	}
+}
@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual threads for dispatcher.mode=virtual. Resolved reflectively, the
+ * gateway is still built for Java 8 while virtual threads need a Java 21
+ * runtime.
+ */
+public final class VirtualThreads {
+
+	private VirtualThreads() {
+	}
+	
+	public static boolean isAvailable() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor") ;
+			return true ;
+		} catch (NoSuchMethodException e) {
+			return false ;
+		}
+	}
+	
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor") ;
+			return (ExecutorService) factory.invoke(null) ;
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("dispatcher.mode=virtual requires a Java runtime with virtual threads (21 or later)", e) ;
+		}
+	}
+}
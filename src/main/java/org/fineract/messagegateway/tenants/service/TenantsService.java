@@ -42,6 +42,8 @@ public class TenantsService {
 	public String createTenant(final Tenant tenant) {
 		tenant.setTenantAppKey(this.securityService.generateApiKey(tenant.getTenantId()));
 		this.tenantRepository.save(tenant) ;
+		//Requests with the new credentials may have been rejected and cached as such
+		this.securityService.invalidateTenant(tenant.getTenantId());
 		return tenant.getTenantAppKey() ;
 	}
 	
@@ -0,0 +1,37 @@
+--
+-- Licensed to the Apache Software Foundation (ASF) under one
+-- or more contributor license agreements. See the NOTICE file
+-- distributed with this work for additional information
+-- regarding copyright ownership. The ASF licenses this file
+-- to you under the Apache License, Version 2.0 (the
+-- "License"); you may not use this file except in compliance
+-- with the License. You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing,
+-- software distributed under the License is distributed on an
+-- "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+-- KIND, either express or implied. See the License for the
+-- specific language governing permissions and limitations
+-- under the License.
+--
+
+-- A message is stored once per tenant and internal id, so that a client retrying a request does not get
+-- it sent twice. Rows repeating an earlier message are moved to m_outbound_messages_duplicate first, the
+-- earliest one stays. Duplicates are found by a grouped scan of the V9 (tenant_id, internal_id) index,
+-- only the duplicate rows are copied and removed. The lookup index then becomes the unique key.
+CREATE TABLE m_outbound_messages_duplicate LIKE m_outbound_messages;
+
+INSERT INTO m_outbound_messages_duplicate
+  SELECT m.* FROM m_outbound_messages m
+  JOIN (SELECT tenant_id, internal_id, MIN(id) AS first_id FROM m_outbound_messages
+        GROUP BY tenant_id, internal_id HAVING COUNT(*) > 1) d
+    ON d.tenant_id = m.tenant_id AND d.internal_id = m.internal_id AND m.id > d.first_id;
+
+DELETE m FROM m_outbound_messages m
+  JOIN m_outbound_messages_duplicate d ON d.id = m.id;
+
+ALTER TABLE m_outbound_messages
+  DROP INDEX `m_outbound_messages_tenant_internal_id`,
+  ADD UNIQUE INDEX `m_outbound_messages_tenant_internal_id` (`tenant_id`, `internal_id`);
@@ -0,0 +1,35 @@
+--
+-- Licensed to the Apache Software Foundation (ASF) under one
+-- or more contributor license agreements. See the NOTICE file
+-- distributed with this work for additional information
+-- regarding copyright ownership. The ASF licenses this file
+-- to you under the Apache License, Version 2.0 (the
+-- "License"); you may not use this file except in compliance
+-- with the License. You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing,
+-- software distributed under the License is distributed on an
+-- "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+-- KIND, either express or implied. See the License for the
+-- specific language governing permissions and limitations
+-- under the License.
+--
+
+CREATE TABLE m_sms_campaign (
+  id                      BIGINT(20) PRIMARY KEY NOT NULL AUTO_INCREMENT,
+  tenant_id               BIGINT(20)                                      NOT NULL,
+  sms_bridge_id           BIGINT(20)                                      NOT NULL,
+  message                 VARCHAR(4096)                                   NOT NULL,
+  priority                INT(3)                                          NOT NULL DEFAULT 200,
+  send_at                 TIMESTAMP                                       NULL DEFAULT NULL,
+  description             VARCHAR(500)                                    NULL DEFAULT NULL,
+  created_on              TIMESTAMP                                       NULL DEFAULT NULL,
+  CONSTRAINT `m_sms_campaign_1` FOREIGN KEY (`sms_bridge_id`) REFERENCES `m_sms_bridge` (`id`)
+);
+
+-- Campaign progress is counted per delivery status from the campaign's messages
+ALTER TABLE m_outbound_messages
+  ADD COLUMN campaign_id                BIGINT(20)                    NULL DEFAULT NULL,
+  ADD INDEX `m_outbound_messages_campaign_status` (`campaign_id`, `delivery_status`);
@@ -0,0 +1,32 @@
+--
+-- Licensed to the Apache Software Foundation (ASF) under one
+-- or more contributor license agreements. See the NOTICE file
+-- distributed with this work for additional information
+-- regarding copyright ownership. The ASF licenses this file
+-- to you under the Apache License, Version 2.0 (the
+-- "License"); you may not use this file except in compliance
+-- with the License. You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing,
+-- software distributed under the License is distributed on an
+-- "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+-- KIND, either express or implied. See the License for the
+-- specific language governing permissions and limitations
+-- under the License.
+--
+
+-- tenant_id and internal_id only ever hold the numeric ids the gateway writes, as VARCHAR every lookup
+-- by a number cast each row and could not use an index. The dates are nullable in the entity, declared
+-- NULL they also lose the implicit ON UPDATE CURRENT_TIMESTAMP MySQL gives the first TIMESTAMP column.
+-- One ALTER so that the table is rebuilt once. external_id is indexed by V8.
+ALTER TABLE m_outbound_messages
+  MODIFY COLUMN tenant_id               BIGINT(20)                    NOT NULL,
+  MODIFY COLUMN internal_id             BIGINT(20)                    NOT NULL,
+  MODIFY COLUMN submitted_on_date       TIMESTAMP                     NULL DEFAULT NULL,
+  MODIFY COLUMN delivered_on_date       TIMESTAMP                     NULL DEFAULT NULL,
+  ADD INDEX `m_outbound_messages_tenant_internal_id` (`tenant_id`, `internal_id`),
+  ADD INDEX `m_outbound_messages_status_id` (`delivery_status`, `id`);
+
+CREATE INDEX m_tenants_tenant_app_key ON m_tenants (tenant_id, tenant_app_key);
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.MigrationVersion;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * MySQL database of the benchmark harnesses, a scratch schema which is
+ * dropped and migrated again for every run. Connects to bench.url as
+ * bench.username with bench.password, the schema is bench.database.
+ */
+final class BenchmarkDatabase {
+
+	private static final String DRIVER = "org.drizzle.jdbc.DrizzleDriver" ;
+	
+	private static final String URL = System.getProperty("bench.url", "jdbc:mysql:thin://localhost:3306/") ;
+	
+	private static final String USERNAME = System.getProperty("bench.username", "root") ;
+	
+	private static final String PASSWORD = System.getProperty("bench.password", "mysql") ;
+	
+	private static final String DATABASE = System.getProperty("bench.database", "messagegateway_bench") ;
+	
+	private static final long COPY_CHUNK = 500000 ;
+	
+	private static final String SEED = "insert into m_outbound_messages (id, tenant_id, external_id, internal_id, sms_bridge_id, mobile_number,"
+			+ " submitted_on_date, delivered_on_date, delivery_status, message) values (1, ?, 'ext-1', 1, 1, '9999999999', now(), now(), ?,"
+			+ " 'Your one time password is 123456, it is valid for 10 minutes.')" ;
+	
+	//Copies the rows from..to as the rows n + from..n + to
+	private static final String COPY = "insert into m_outbound_messages (id, tenant_id, external_id, internal_id, sms_bridge_id, mobile_number,"
+			+ " submitted_on_date, delivered_on_date, delivery_status, message)"
+			+ " select id + ?, mod(id + ?, ?) + 1, concat('ext-', id + ?), id + ?, sms_bridge_id, mobile_number, submitted_on_date,"
+			+ " delivered_on_date, if(id + ? > ?, ?, ?), message from m_outbound_messages where id between ? and ?" ;
+	
+	private BenchmarkDatabase() {
+	}
+	
+	/**
+	 * @param connections largest number of connections the harness uses at once
+	 */
+	static DataSource dataSource(final int connections) throws Exception {
+		Class.forName(DRIVER) ;
+		try (Connection connection = DriverManager.getConnection(URL + "mysql", USERNAME, PASSWORD);
+				Statement statement = connection.createStatement()) {
+			statement.execute("create database if not exists " + DATABASE) ;
+		}
+		final org.apache.tomcat.jdbc.pool.DataSource dataSource = new org.apache.tomcat.jdbc.pool.DataSource() ;
+		dataSource.setDriverClassName(DRIVER);
+		dataSource.setUrl(URL + DATABASE);
+		dataSource.setUsername(USERNAME);
+		dataSource.setPassword(PASSWORD);
+		//Flyway holds two connections while migrating
+		final int size = Math.max(2, connections) ;
+		dataSource.setInitialSize(size);
+		dataSource.setMaxActive(size);
+		dataSource.setMaxIdle(size);
+		dataSource.setMinIdle(size);
+		return dataSource ;
+	}
+	
+	/**
+	 * Drops everything in the schema and migrates it up to version, the
+	 * latest migration if version is null. V1 seeds tenant 1 and bridge 1.
+	 */
+	static void recreate(final DataSource dataSource, final String version) {
+		flyway(dataSource, version).clean();
+		migrate(dataSource, version) ;
+	}
+	
+	/**
+	 * Migrates the schema further up to version, the latest migration if
+	 * version is null.
+	 */
+	static void migrate(final DataSource dataSource, final String version) {
+		flyway(dataSource, version).migrate() ;
+	}
+	
+	private static Flyway flyway(final DataSource dataSource, final String version) {
+		final Flyway flyway = new Flyway() ;
+		flyway.setDataSource(dataSource);
+		if(version != null) {
+			flyway.setTarget(MigrationVersion.fromVersion(version));
+		}
+		return flyway ;
+	}
+	
+	/**
+	 * Fills the empty m_outbound_messages with rows messages by doubling it.
+	 * Message k has internal id k, external id ext-k and belongs to tenant
+	 * k % tenants + 1. The newest pending messages are PENDING, the others
+	 * DELIVERED. Uses only columns which exist since V1.
+	 */
+	static void fill(final JdbcTemplate jdbcTemplate, final long rows, final long pending, final int tenants) {
+		final int delivered = SmsMessageStatusType.DELIVERED.getValue() ;
+		final int pendingStatus = SmsMessageStatusType.PENDING.getValue() ;
+		jdbcTemplate.update(SEED, 1 % tenants + 1, rows > pending ? delivered : pendingStatus) ;
+		long filled = 1 ;
+		while(filled < rows) {
+			final long copied = Math.min(filled, rows - filled) ;
+			for(long from = 1 ; from <= copied; from += COPY_CHUNK) {
+				final long to = Math.min(copied, from + COPY_CHUNK - 1) ;
+				jdbcTemplate.update(COPY, filled, filled, tenants, filled, filled, filled, rows - pending, pendingStatus, delivered, from, to) ;
+			}
+			filled += copied ;
+		}
+		jdbcTemplate.execute("analyze table m_outbound_messages") ;
+	}
+	
+	static void close(final DataSource dataSource) {
+		((org.apache.tomcat.jdbc.pool.DataSource) dataSource).close();
+	}
+}
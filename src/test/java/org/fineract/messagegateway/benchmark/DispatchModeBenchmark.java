@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.fineract.messagegateway.configuration.DispatcherConfig;
+import org.fineract.messagegateway.configuration.ProviderClientConfig;
+import org.fineract.messagegateway.constants.MessageGatewayConstants;
+import org.fineract.messagegateway.exception.MessageGatewayException;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.domain.SMSBridgeConfig;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.providers.BridgeInFlightLimiter;
+import org.fineract.messagegateway.sms.providers.BridgeInFlightLimiter.InFlight;
+import org.fineract.messagegateway.sms.providers.SMSProvider;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.fineract.messagegateway.sms.util.VirtualThreads;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Compares dispatcher.mode platform and virtual on a provider whose SDK
+ * blocks for bench.latency-millis per message, like an HTTP round trip. The
+ * messages go through {@link SMSProvider#sendMessageAsync} and are bounded by
+ * the bridge's Max_Connections through {@link BridgeInFlightLimiter}, as the
+ * dispatcher sends them. The virtual run needs a Java 21 runtime.
+ * <p>
+ * gradle benchmark -Pharness=DispatchModeBenchmark -Dbench.messages=20000 -Dbench.latency-millis=200
+ */
+public class DispatchModeBenchmark {
+
+	private static final int MESSAGES = Integer.getInteger("bench.messages", 20000) ;
+	
+	private static final int LATENCY_MILLIS = Integer.getInteger("bench.latency-millis", 200) ;
+	
+	private static final int MAX_CONNECTIONS = Integer.getInteger("bench.max-connections", 1000) ;
+	
+	private static final int ASYNC_THREADS = Integer.getInteger("bench.async-threads", 64) ;
+	
+	public static void main(final String[] args) throws Exception {
+		System.out.println("messages="+MESSAGES+" latency-millis="+LATENCY_MILLIS+" Max_Connections="+MAX_CONNECTIONS
+				+" async-threads="+ASYNC_THREADS+" java="+System.getProperty("java.version"));
+		run("platform") ;
+		if(VirtualThreads.isAvailable()) {
+			run("virtual") ;
+		} else {
+			System.out.println("virtual: skipped, needs a Java 21 runtime");
+		}
+	}
+	
+	private static void run(final String mode) throws Exception {
+		final BlockingProvider provider = new BlockingProvider() ;
+		ReflectionTestUtils.setField(provider, "providerClientConfig", providerClientConfig()) ;
+		ReflectionTestUtils.setField(provider, "dispatcherConfig", dispatcherConfig(mode)) ;
+		provider.initClients();
+		try {
+			//Warms up the executor and the JIT
+			send(provider, Math.min(MESSAGES, 2000)) ;
+			final ThreadMXBean threads = ManagementFactory.getThreadMXBean() ;
+			threads.resetPeakThreadCount();
+			final long start = System.nanoTime() ;
+			send(provider, MESSAGES) ;
+			final double seconds = (System.nanoTime() - start) / 1e9 ;
+			System.out.println(String.format("%-8s %8.2f s %10.0f msg/s  peak platform threads %d", mode, seconds, MESSAGES / seconds,
+					threads.getPeakThreadCount()));
+		} finally {
+			provider.closeClients();
+		}
+	}
+	
+	private static void send(final SMSProvider provider, final int messages) throws Exception {
+		final SMSBridge bridge = bridge() ;
+		final BridgeInFlightLimiter inFlightLimiter = new BridgeInFlightLimiter() ;
+		final CountDownLatch done = new CountDownLatch(messages) ;
+		final InFlight inFlight = inFlightLimiter.limitFor(bridge, provider.getMaxInFlight(bridge)) ;
+		for(int i = 0 ; i < messages; i++) {
+			final SMSMessage message = SMSMessage.getPendingMessages(null, (long) i, 1L, null, null, null, null, "9999999999", "Hello", 1L) ;
+			final Runnable request = new Runnable() {
+				@Override
+				public void run() {
+					provider.sendMessageAsync(bridge, message).whenComplete(new BiConsumer<SMSMessage, Throwable>() {
+						@Override
+						public void accept(final SMSMessage result, final Throwable error) {
+							final Runnable next = inFlight.release() ;
+							if(next != null) {
+								next.run();
+							}
+							done.countDown();
+						}
+					}) ;
+				}
+			} ;
+			if(inFlight.tryStart(request)) {
+				request.run();
+			}
+		}
+		done.await();
+	}
+	
+	private static SMSBridge bridge() {
+		final SMSBridge bridge = new SMSBridge(1L) ;
+		ReflectionTestUtils.setField(bridge, "id", 1L) ;
+		bridge.getBridgeConfigurations().add(new SMSBridgeConfig(MessageGatewayConstants.PROVIDER_MAX_CONNECTIONS, String.valueOf(MAX_CONNECTIONS))) ;
+		return bridge ;
+	}
+	
+	private static ProviderClientConfig providerClientConfig() {
+		final ProviderClientConfig config = new ProviderClientConfig() ;
+		ReflectionTestUtils.setField(config, "maxClients", 10) ;
+		ReflectionTestUtils.setField(config, "idleMinutes", 30) ;
+		ReflectionTestUtils.setField(config, "maxConnections", 20) ;
+		ReflectionTestUtils.setField(config, "asyncThreads", ASYNC_THREADS) ;
+		return config ;
+	}
+	
+	private static DispatcherConfig dispatcherConfig(final String mode) {
+		final DispatcherConfig config = new DispatcherConfig() ;
+		ReflectionTestUtils.setField(config, "mode", mode) ;
+		return config ;
+	}
+	
+	//Stands in for an SDK which only has blocking calls
+	static class BlockingProvider extends SMSProvider {
+		
+		@Override
+		public void sendMessage(final SMSBridge smsBridgeConfig, final SMSMessage message) throws MessageGatewayException {
+			try {
+				TimeUnit.MILLISECONDS.sleep(LATENCY_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MessageGatewayException("Interrupted") ;
+			}
+			message.setDeliveryStatus(SmsMessageStatusType.WAITING_FOR_REPORT.getValue());
+		}
+	}
+}
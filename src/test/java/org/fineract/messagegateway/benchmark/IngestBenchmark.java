@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.fineract.messagegateway.configuration.OutboxConfig;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.service.OutboundMessageWriter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Compares storing a POST /sms batch with one INSERT per message, as the
+ * Hibernate save of AUTO_INCREMENT rows did, against
+ * {@link OutboundMessageWriter}. Both write all messages of a batch in one
+ * transaction into a freshly migrated schema, the per message INSERTs into a
+ * copy of m_outbound_messages.
+ * <p>
+ * gradle benchmark -Pharness=IngestBenchmark -Dbench.batch-sizes=1000,10000 -Dbench.rounds=3
+ */
+public class IngestBenchmark {
+
+	private static final String[] BATCH_SIZES = System.getProperty("bench.batch-sizes", "1000,10000").split(",") ;
+	
+	private static final int ROUNDS = Integer.getInteger("bench.rounds", 3) ;
+	
+	private static final int INSERT_BATCH_SIZE = Integer.getInteger("bench.insert-batch-size", 200) ;
+	
+	private static final int INSERT_STATEMENT_BYTES = Integer.getInteger("bench.insert-statement-bytes", 24000) ;
+	
+	private static final String INSERT_ROW = "insert into m_outbound_messages_per_row (tenant_id, external_id, internal_id, submitted_on_date,"
+			+ " delivered_on_date, delivery_status, delivery_error_message, source_address, mobile_number, message, sms_bridge_id)"
+			+ " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)" ;
+	
+	private static long nextInternalId = 1 ;
+	
+	public static void main(final String[] args) throws Exception {
+		System.out.println("batch-sizes="+String.join(",", BATCH_SIZES)+" rounds="+ROUNDS+" insert-batch-size="+INSERT_BATCH_SIZE
+				+" insert-statement-bytes="+INSERT_STATEMENT_BYTES);
+		final DataSource dataSource = BenchmarkDatabase.dataSource(2) ;
+		try {
+			BenchmarkDatabase.recreate(dataSource, null) ;
+			final DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource) ;
+			final OutboundMessageWriter writer = new OutboundMessageWriter(dataSource, transactionManager, outboxConfig()) ;
+			final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager) ;
+			final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource) ;
+			//Same columns and indexes, the AUTO_INCREMENT ids of the per row inserts would collide with m_id_sequence
+			jdbcTemplate.execute("create table m_outbound_messages_per_row like m_outbound_messages") ;
+			//Warms up the connections and the JIT
+			insertPerRow(jdbcTemplate, transactionTemplate, messages(1000)) ;
+			writer.insert(messages(1000)) ;
+			for(String batchSize: BATCH_SIZES) {
+				final int size = Integer.parseInt(batchSize.trim()) ;
+				long perRow = 0 ;
+				long batched = 0 ;
+				for(int round = 0 ; round < ROUNDS; round++) {
+					List<SMSMessage> messages = messages(size) ;
+					long start = System.nanoTime() ;
+					insertPerRow(jdbcTemplate, transactionTemplate, messages) ;
+					perRow += System.nanoTime() - start ;
+					messages = messages(size) ;
+					start = System.nanoTime() ;
+					writer.insert(messages) ;
+					batched += System.nanoTime() - start ;
+				}
+				report(size, "per row", perRow) ;
+				report(size, "batched", batched) ;
+			}
+		} finally {
+			BenchmarkDatabase.close(dataSource);
+		}
+	}
+	
+	private static void report(final int size, final String path, final long nanos) {
+		final double millis = nanos / 1e6 / ROUNDS ;
+		System.out.println(String.format("%6d messages %-8s %10.1f ms %10.0f msg/s", size, path, millis, size * 1000 / millis));
+	}
+	
+	private static void insertPerRow(final JdbcTemplate jdbcTemplate, final TransactionTemplate transactionTemplate,
+			final List<SMSMessage> messages) {
+		transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(final TransactionStatus status) {
+				for(final SMSMessage message: messages) {
+					final KeyHolder keyHolder = new GeneratedKeyHolder() ;
+					jdbcTemplate.update(new PreparedStatementCreator() {
+						@Override
+						public PreparedStatement createPreparedStatement(final Connection connection) throws SQLException {
+							final PreparedStatement insert = connection.prepareStatement(INSERT_ROW, Statement.RETURN_GENERATED_KEYS) ;
+							insert.setLong(1, message.getTenantId());
+							insert.setString(2, message.getExternalId());
+							insert.setLong(3, message.getInternalId());
+							insert.setTimestamp(4, new Timestamp(message.getSubmittedOnDate().getTime()));
+							insert.setTimestamp(5, null);
+							insert.setInt(6, message.getDeliveryStatus());
+							insert.setString(7, message.getDeliveryErrorMessage());
+							insert.setString(8, message.getSourceAddress());
+							insert.setString(9, message.getMobileNumber());
+							insert.setString(10, message.getMessage());
+							insert.setLong(11, message.getBridgeId());
+							return insert ;
+						}
+					}, keyHolder) ;
+					message.assignId(keyHolder.getKey().longValue());
+				}
+			}
+		}) ;
+	}
+	
+	private static List<SMSMessage> messages(final int count) {
+		final List<SMSMessage> messages = new ArrayList<>(count) ;
+		final Date now = new Date() ;
+		for(int i = 0 ; i < count; i++) {
+			messages.add(SMSMessage.getPendingMessages(null, nextInternalId++, 1L, now, null, null, null, "9999999999",
+					"Your one time password is 123456, it is valid for 10 minutes.", 1L)) ;
+		}
+		return messages ;
+	}
+	
+	private static OutboxConfig outboxConfig() {
+		final OutboxConfig config = new OutboxConfig() ;
+		ReflectionTestUtils.setField(config, "insertBatchSize", INSERT_BATCH_SIZE) ;
+		ReflectionTestUtils.setField(config, "insertStatementBytes", INSERT_STATEMENT_BYTES) ;
+		return config ;
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.sql.DataSource;
+
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Times the three lookups on m_outbound_messages at bench.rows rows, first on
+ * the schema before V8 (VARCHAR ids, no secondary indexes), then after
+ * migrating the same rows to the latest version. The lookups are
+ * getDeliveryStatus (tenant_id=? and internal_id in (...)), a delivery
+ * report matched by external_id, and a page of PENDING ids as the recovery
+ * reads them. Each lookup is repeated bench.lookups times or for
+ * bench.lookup-seconds, whichever ends first, the median is reported.
+ * <p>
+ * gradle benchmark -Pharness=LookupBenchmark -Dbench.rows=50000000
+ */
+public class LookupBenchmark {
+
+	private static final long ROWS = Long.getLong("bench.rows", 50000000L) ;
+	
+	private static final int TENANTS = Integer.getInteger("bench.tenants", 100) ;
+	
+	//The newest rows are PENDING, the others DELIVERED
+	private static final long PENDING = Long.getLong("bench.pending", 100000L) ;
+	
+	private static final int LOOKUPS = Integer.getInteger("bench.lookups", 200) ;
+	
+	private static final int LOOKUP_SECONDS = Integer.getInteger("bench.lookup-seconds", 120) ;
+	
+	private static final int INTERNAL_IDS = 100 ;
+	
+	private static final int PAGE_SIZE = 1000 ;
+	
+	private static final String BASELINE_VERSION = "7" ;
+	
+	private static final String DELIVERY_STATUS = "select internal_id, external_id, delivered_on_date, delivery_status, delivery_error_message"
+			+ " from m_outbound_messages m where m.tenant_id=? and m.internal_id in " ;
+	
+	private static final String BY_EXTERNAL_ID = "select id from m_outbound_messages where external_id=?" ;
+	
+	private static final String PENDING_IDS = "select id from m_outbound_messages where delivery_status=? and id > ? order by id limit ?" ;
+	
+	public static void main(final String[] args) throws Exception {
+		System.out.println("rows="+ROWS+" tenants="+TENANTS+" pending="+PENDING+" lookups="+LOOKUPS+" lookup-seconds="+LOOKUP_SECONDS);
+		final DataSource dataSource = BenchmarkDatabase.dataSource(1) ;
+		try {
+			final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource) ;
+			BenchmarkDatabase.recreate(dataSource, BASELINE_VERSION) ;
+			long start = System.nanoTime() ;
+			BenchmarkDatabase.fill(jdbcTemplate, ROWS, PENDING, TENANTS) ;
+			System.out.println(String.format("loaded %d rows in %.0f s", ROWS, (System.nanoTime() - start) / 1e9));
+			lookups(jdbcTemplate, "V" + BASELINE_VERSION) ;
+			start = System.nanoTime() ;
+			BenchmarkDatabase.migrate(dataSource, null) ;
+			System.out.println(String.format("migrated to the latest version in %.0f s", (System.nanoTime() - start) / 1e9));
+			lookups(jdbcTemplate, "latest") ;
+		} finally {
+			BenchmarkDatabase.close(dataSource);
+		}
+	}
+	
+	private static void lookups(final JdbcTemplate jdbcTemplate, final String schema) {
+		final Random random = new Random(42) ;
+		time(schema, "getDeliveryStatus", new Lookup() {
+			@Override
+			void run() {
+				//Ids of one tenant, row k belongs to tenant k % TENANTS + 1
+				final long first = 1 + (long) (random.nextDouble() * (ROWS - INTERNAL_IDS * (long) TENANTS)) ;
+				final List<Long> internalIds = new ArrayList<>(INTERNAL_IDS) ;
+				for(int i = 0 ; i < INTERNAL_IDS; i++) {
+					internalIds.add(first + i * (long) TENANTS) ;
+				}
+				final String idList = internalIds.toString().replace("[", "(").replace("]", ")") ;
+				jdbcTemplate.queryForList(DELIVERY_STATUS + idList, first % TENANTS + 1) ;
+			}
+		}) ;
+		time(schema, "external_id", new Lookup() {
+			@Override
+			void run() {
+				jdbcTemplate.queryForList(BY_EXTERNAL_ID, Long.class, "ext-" + (1 + (long) (random.nextDouble() * ROWS))) ;
+			}
+		}) ;
+		time(schema, "PENDING page", new Lookup() {
+			@Override
+			void run() {
+				final long after = ROWS - PENDING + (long) (random.nextDouble() * Math.max(0, PENDING - PAGE_SIZE)) ;
+				jdbcTemplate.queryForList(PENDING_IDS, Long.class, SmsMessageStatusType.PENDING.getValue(), after, PAGE_SIZE) ;
+			}
+		}) ;
+	}
+	
+	private static void time(final String schema, final String name, final Lookup lookup) {
+		final long until = System.nanoTime() + LOOKUP_SECONDS * 1000000000L ;
+		final List<Long> nanos = new ArrayList<>() ;
+		while(nanos.size() < LOOKUPS && (nanos.isEmpty() || System.nanoTime() < until)) {
+			final long start = System.nanoTime() ;
+			lookup.run();
+			nanos.add(System.nanoTime() - start) ;
+		}
+		final Long[] sorted = nanos.toArray(new Long[nanos.size()]) ;
+		Arrays.sort(sorted);
+		System.out.println(String.format("%-7s %-18s median %10.2f ms  max %10.2f ms  (%d lookups)", schema, name,
+				sorted[sorted.length / 2] / 1e6, sorted[sorted.length - 1] / 1e6, sorted.length));
+	}
+	
+	abstract static class Lookup {
+		
+		abstract void run() ;
+	}
+}
@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.benchmark;
+
+import java.util.Collection;
+
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+
+import org.fineract.messagegateway.configuration.DispatcherConfig;
+import org.fineract.messagegateway.configuration.OutboxConfig;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.repository.SmsOutboundMessageRepository;
+import org.fineract.messagegateway.sms.service.AdmissionController;
+import org.fineract.messagegateway.sms.service.MessageDispatcher;
+import org.fineract.messagegateway.sms.service.OutboxService;
+import org.fineract.messagegateway.sms.service.PendingMessagesRecovery;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.Database;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Times {@link PendingMessagesRecovery} on a backlog of bench.rows PENDING
+ * messages. Pages are claimed and loaded through the JPA repository as in
+ * the application, the dispatcher is replaced by one which releases the
+ * messages right away, so only recovering them is measured, not sending.
+ * <p>
+ * For comparison a few pages are read as the former BootupPendingMessagesTask
+ * read them, by offset through findByDeliveryStatus, at depths spread over
+ * the backlog. Their mean times the number of pages estimates how long
+ * walking the whole backlog that way takes.
+ * <p>
+ * gradle benchmark -Pharness=RecoveryBenchmark -Dbench.rows=5000000
+ */
+public class RecoveryBenchmark {
+
+	private static final long ROWS = Long.getLong("bench.rows", 5000000L) ;
+	
+	private static final int PAGE_SIZE = Integer.getInteger("bench.recovery-page-size", 1000) ;
+	
+	private static final int THREADS = Integer.getInteger("bench.recovery-threads", 4) ;
+	
+	private static final int HIGH_WATER_MARK = Integer.getInteger("bench.high-water-mark", 20000) ;
+	
+	private static final int OFFSET_SAMPLES = Integer.getInteger("bench.offset-samples", 5) ;
+	
+	private static final GaugeService GAUGES = new GaugeService() {
+		@Override
+		public void submit(final String metricName, final double value) {
+		}
+	} ;
+	
+	private static final CounterService COUNTERS = new CounterService() {
+		@Override
+		public void increment(final String metricName) {
+		}
+		
+		@Override
+		public void decrement(final String metricName) {
+		}
+		
+		@Override
+		public void reset(final String metricName) {
+		}
+	} ;
+	
+	public static void main(final String[] args) throws Exception {
+		System.out.println("rows="+ROWS+" recovery-page-size="+PAGE_SIZE+" recovery-threads="+THREADS
+				+" high-water-mark="+HIGH_WATER_MARK);
+		//Walker, claimers, and the walker claiming a page itself when the claimers are busy
+		final DataSource dataSource = BenchmarkDatabase.dataSource(THREADS + 2) ;
+		try {
+			final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource) ;
+			BenchmarkDatabase.recreate(dataSource, null) ;
+			long start = System.nanoTime() ;
+			BenchmarkDatabase.fill(jdbcTemplate, ROWS, ROWS, 100) ;
+			System.out.println(String.format("loaded %d pending rows in %.0f s", ROWS, (System.nanoTime() - start) / 1e9));
+			final SmsOutboundMessageRepository repository = repository(dataSource) ;
+			if(OFFSET_SAMPLES > 0) {
+				offsetPages(repository) ;
+			}
+			final OutboxConfig outboxConfig = outboxConfig() ;
+			final AdmissionController admissionController = new AdmissionController(dispatcherConfig(), GAUGES, COUNTERS) ;
+			final PendingMessagesRecovery recovery = new PendingMessagesRecovery(dataSource,
+					new OutboxService(repository, dataSource, outboxConfig), new ReleasingDispatcher(admissionController),
+					admissionController, outboxConfig, GAUGES) ;
+			recovery.init();
+			try {
+				start = System.nanoTime() ;
+				ReflectionTestUtils.invokeMethod(recovery, "recover") ;
+				final double seconds = (System.nanoTime() - start) / 1e9 ;
+				final long claimed = jdbcTemplate.queryForObject("select count(*) from m_outbound_messages where lease_owner is not null", Long.class) ;
+				System.out.println(String.format("keyset recovery: claimed and loaded %d of %d messages in %.0f s, %.0f msg/s", claimed, ROWS,
+						seconds, claimed / seconds));
+			} finally {
+				recovery.destroy();
+			}
+		} finally {
+			BenchmarkDatabase.close(dataSource);
+		}
+	}
+	
+	private static void offsetPages(final SmsOutboundMessageRepository repository) {
+		final int pages = (int) ((ROWS + PAGE_SIZE - 1) / PAGE_SIZE) ;
+		double total = 0 ;
+		for(int sample = 0 ; sample < OFFSET_SAMPLES; sample++) {
+			final int page = (int) ((pages - 1) * (long) sample / Math.max(1, OFFSET_SAMPLES - 1)) ;
+			final long start = System.nanoTime() ;
+			repository.findByDeliveryStatus(SmsMessageStatusType.PENDING.getValue(), new PageRequest(page, PAGE_SIZE)) ;
+			final double seconds = (System.nanoTime() - start) / 1e9 ;
+			total += seconds ;
+			System.out.println(String.format("offset paging: page %d of %d read in %.2f s", page + 1, pages, seconds));
+		}
+		System.out.println(String.format("offset paging: reading all %d pages estimated at %.0f s", pages, total / OFFSET_SAMPLES * pages));
+	}
+	
+	private static SmsOutboundMessageRepository repository(final DataSource dataSource) {
+		final HibernateJpaVendorAdapter vendorAdapter = new HibernateJpaVendorAdapter() ;
+		vendorAdapter.setDatabase(Database.MYSQL);
+		final LocalContainerEntityManagerFactoryBean entityManagerFactory = new LocalContainerEntityManagerFactoryBean() ;
+		entityManagerFactory.setDataSource(dataSource);
+		entityManagerFactory.setJpaVendorAdapter(vendorAdapter);
+		entityManagerFactory.setPackagesToScan(SMSMessage.class.getPackage().getName());
+		entityManagerFactory.afterPropertiesSet();
+		final EntityManager entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory.getObject()) ;
+		return new JpaRepositoryFactory(entityManager).getRepository(SmsOutboundMessageRepository.class) ;
+	}
+	
+	private static OutboxConfig outboxConfig() {
+		final OutboxConfig config = new OutboxConfig() ;
+		ReflectionTestUtils.setField(config, "leaseSeconds", 300) ;
+		ReflectionTestUtils.setField(config, "recoveryPageSize", PAGE_SIZE) ;
+		ReflectionTestUtils.setField(config, "recoveryThreads", THREADS) ;
+		config.init();
+		return config ;
+	}
+	
+	private static DispatcherConfig dispatcherConfig() {
+		final DispatcherConfig config = new DispatcherConfig() ;
+		ReflectionTestUtils.setField(config, "queueCapacity", HIGH_WATER_MARK) ;
+		ReflectionTestUtils.setField(config, "highWaterMark", HIGH_WATER_MARK) ;
+		ReflectionTestUtils.setField(config, "promotionalShare", 0.8) ;
+		return config ;
+	}
+	
+	//Hands every message straight back as if it had been sent
+	static class ReleasingDispatcher extends MessageDispatcher {
+		
+		private final AdmissionController admissionController ;
+		
+		ReleasingDispatcher(final AdmissionController admissionController) {
+			super(null, null, null, null, admissionController) ;
+			this.admissionController = admissionController ;
+		}
+		
+		@Override
+		public void dispatch(final Collection<SMSMessage> messages) {
+			this.admissionController.release(messages.size());
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.fineract.messagegateway.configuration.CacheConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class CacheInvalidationServiceTest {
+
+	private JdbcTemplate jdbcTemplate ;
+	
+	private CacheInvalidationService service ;
+	
+	private final List<String> invalidated = new ArrayList<>() ;
+	
+	@Before
+	public void setUp() {
+		final CacheConfig cacheConfig = new CacheConfig() ;
+		ReflectionTestUtils.setField(cacheConfig, "invalidationRetentionMinutes", 60) ;
+		this.service = new CacheInvalidationService(mock(DataSource.class), cacheConfig) ;
+		this.jdbcTemplate = mock(JdbcTemplate.class) ;
+		ReflectionTestUtils.setField(this.service, "jdbcTemplate", this.jdbcTemplate) ;
+		this.service.register("bridge", new Consumer<String>() {
+			@Override
+			public void accept(final String key) {
+				invalidated.add(key) ;
+			}
+		});
+	}
+	
+	@Test
+	public void rowReadAgainWithinTheWindowIsAppliedOnce() {
+		pollReturns(row(1, "1:10"), row(2, "1:11")) ;
+		this.service.poll();
+		pollReturns(row(1, "1:10"), row(2, "1:11"), row(3, "1:12")) ;
+		this.service.poll();
+		this.service.poll();
+		assertEquals(Arrays.asList("1:10", "1:11", "1:12"), this.invalidated) ;
+	}
+	
+	@Test
+	public void rowBecomingVisibleLateIsStillApplied() {
+		pollReturns(row(2, "1:11")) ;
+		this.service.poll();
+		//The transaction of id 1 committed after the one of id 2
+		pollReturns(row(1, "1:10"), row(2, "1:11")) ;
+		this.service.poll();
+		assertEquals(Arrays.asList("1:11", "1:10"), this.invalidated) ;
+	}
+	
+	@Test
+	public void ownInvalidationIsNotAppliedAgainByThePoll() {
+		doAnswer(new Answer<Integer>() {
+			@Override
+			public Integer answer(final InvocationOnMock invocation) {
+				final Map<String, Object> key = new HashMap<>() ;
+				key.put("GENERATED_KEY", 5L) ;
+				((KeyHolder) invocation.getArguments()[1]).getKeyList().add(key) ;
+				return 1 ;
+			}
+		}).when(this.jdbcTemplate).update(any(PreparedStatementCreator.class), any(KeyHolder.class)) ;
+		this.service.publish("bridge", "1:10");
+		pollReturns(row(5, "1:10")) ;
+		this.service.poll();
+		assertEquals(Collections.singletonList("1:10"), this.invalidated) ;
+	}
+	
+	@SafeVarargs
+	private final void pollReturns(final Map<String, Object>... rows) {
+		when(this.jdbcTemplate.queryForList(anyString(), anyLong())).thenReturn(Arrays.asList(rows)) ;
+	}
+	
+	private static Map<String, Object> row(final long id, final String key) {
+		final Map<String, Object> row = new HashMap<>() ;
+		row.put("id", id) ;
+		row.put("cache_name", "bridge") ;
+		row.put("cache_key", key) ;
+		return row ;
+	}
+}
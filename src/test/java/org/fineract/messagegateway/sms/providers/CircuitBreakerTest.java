@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.fineract.messagegateway.sms.providers.CircuitBreaker.State;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+	private static final long OPEN_MILLIS = 1000 ;
+	
+	@Test
+	public void opensAfterConsecutiveFailures() {
+		final CircuitBreaker breaker = new CircuitBreaker(3, OPEN_MILLIS) ;
+		assertFalse(breaker.onFailure(0)) ;
+		assertFalse(breaker.onFailure(0)) ;
+		assertTrue(breaker.onFailure(0)) ;
+		assertEquals(State.OPEN, breaker.getState()) ;
+		assertFalse(breaker.tryAcquire(OPEN_MILLIS - 1)) ;
+	}
+	
+	@Test
+	public void successResetsTheFailureCount() {
+		final CircuitBreaker breaker = new CircuitBreaker(3, OPEN_MILLIS) ;
+		breaker.onFailure(0) ;
+		breaker.onFailure(0) ;
+		assertFalse(breaker.onSuccess()) ;
+		assertFalse(breaker.onFailure(0)) ;
+		assertFalse(breaker.onFailure(0)) ;
+		assertEquals(State.CLOSED, breaker.getState()) ;
+	}
+	
+	@Test
+	public void letsOneProbeThroughOnceOpenTimeIsOver() {
+		final CircuitBreaker breaker = open() ;
+		assertTrue(breaker.tryAcquire(OPEN_MILLIS)) ;
+		assertEquals(State.HALF_OPEN, breaker.getState()) ;
+		assertFalse(breaker.tryAcquire(OPEN_MILLIS + 1)) ;
+	}
+	
+	@Test
+	public void successfulProbeClosesTheCircuit() {
+		final CircuitBreaker breaker = open() ;
+		breaker.tryAcquire(OPEN_MILLIS) ;
+		assertTrue(breaker.onSuccess()) ;
+		assertEquals(State.CLOSED, breaker.getState()) ;
+		assertTrue(breaker.tryAcquire(OPEN_MILLIS + 1)) ;
+	}
+	
+	@Test
+	public void failedProbeReopensTheCircuit() {
+		final CircuitBreaker breaker = open() ;
+		breaker.tryAcquire(OPEN_MILLIS) ;
+		assertTrue(breaker.onFailure(OPEN_MILLIS + 10)) ;
+		assertEquals(State.OPEN, breaker.getState()) ;
+		assertFalse(breaker.tryAcquire(2 * OPEN_MILLIS)) ;
+		assertEquals(2 * OPEN_MILLIS + 10, breaker.getRetryAt(OPEN_MILLIS + 20)) ;
+	}
+	
+	@Test
+	public void probeWhichNeverReportsIsReplaced() {
+		final CircuitBreaker breaker = open() ;
+		breaker.tryAcquire(OPEN_MILLIS) ;
+		assertFalse(breaker.tryAcquire(2 * OPEN_MILLIS - 1)) ;
+		assertTrue(breaker.tryAcquire(2 * OPEN_MILLIS)) ;
+	}
+	
+	@Test
+	public void thresholdIsAtLeastOne() {
+		final CircuitBreaker breaker = new CircuitBreaker(0, OPEN_MILLIS) ;
+		assertEquals(1, breaker.getFailureThreshold()) ;
+		assertTrue(breaker.onFailure(0)) ;
+	}
+	
+	private static CircuitBreaker open() {
+		final CircuitBreaker breaker = new CircuitBreaker(1, OPEN_MILLIS) ;
+		breaker.onFailure(0) ;
+		return breaker ;
+	}
+}
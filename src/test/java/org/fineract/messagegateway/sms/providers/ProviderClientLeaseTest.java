@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+
+import org.fineract.messagegateway.configuration.DispatcherConfig;
+import org.fineract.messagegateway.configuration.ProviderClientConfig;
+import org.fineract.messagegateway.exception.MessageGatewayException;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ProviderClientLeaseTest {
+
+	private ClientProvider provider ;
+	
+	private SMSBridge bridge ;
+	
+	@Before
+	public void setUp() {
+		this.provider = new ClientProvider() ;
+		final ProviderClientConfig providerClientConfig = new ProviderClientConfig() ;
+		ReflectionTestUtils.setField(providerClientConfig, "maxClients", 10) ;
+		ReflectionTestUtils.setField(providerClientConfig, "idleMinutes", 30) ;
+		ReflectionTestUtils.setField(providerClientConfig, "asyncThreads", 1) ;
+		final DispatcherConfig dispatcherConfig = new DispatcherConfig() ;
+		ReflectionTestUtils.setField(dispatcherConfig, "mode", "platform") ;
+		ReflectionTestUtils.setField(this.provider, "providerClientConfig", providerClientConfig) ;
+		ReflectionTestUtils.setField(this.provider, "dispatcherConfig", dispatcherConfig) ;
+		this.provider.initClients();
+		this.bridge = new SMSBridge(1L) ;
+		ReflectionTestUtils.setField(this.bridge, "id", 1L) ;
+	}
+	
+	@After
+	public void tearDown() {
+		this.provider.closeClients();
+	}
+	
+	@Test
+	public void leasesShareTheClientOfABridge() {
+		try (SMSProvider.ClientLease<FakeClient> first = this.provider.lease(this.bridge);
+				SMSProvider.ClientLease<FakeClient> second = this.provider.lease(this.bridge)) {
+			assertSame(first.get(), second.get()) ;
+		}
+		assertEquals(1, this.provider.created) ;
+	}
+	
+	@Test
+	public void invalidatedClientIsClosedOnceItsLastLeaseIsOver() {
+		final SMSProvider.ClientLease<FakeClient> first = this.provider.lease(this.bridge) ;
+		final SMSProvider.ClientLease<FakeClient> second = this.provider.lease(this.bridge) ;
+		this.provider.invalidateClients(this.bridge.getId());
+		assertFalse(first.get().closed) ;
+		first.close();
+		first.close();
+		assertFalse(second.get().closed) ;
+		second.close();
+		assertTrue(second.get().closed) ;
+	}
+	
+	@Test
+	public void invalidatedClientWithoutLeasesIsClosedRightAway() {
+		final FakeClient client ;
+		try (SMSProvider.ClientLease<FakeClient> lease = this.provider.lease(this.bridge)) {
+			client = lease.get() ;
+		}
+		this.provider.invalidateClients(this.bridge.getId());
+		assertTrue(client.closed) ;
+	}
+	
+	@Test
+	public void leaseAfterInvalidationGetsANewClient() {
+		final SMSProvider.ClientLease<FakeClient> old = this.provider.lease(this.bridge) ;
+		this.provider.invalidateClients(this.bridge.getId());
+		try (SMSProvider.ClientLease<FakeClient> lease = this.provider.lease(this.bridge)) {
+			assertNotSame(old.get(), lease.get()) ;
+			assertFalse(lease.get().closed) ;
+		}
+		old.close();
+		assertEquals(2, this.provider.created) ;
+	}
+	
+	static class FakeClient implements Closeable {
+		
+		boolean closed ;
+		
+		@Override
+		public void close() {
+			this.closed = true ;
+		}
+	}
+	
+	static class ClientProvider extends SMSProvider {
+		
+		int created ;
+		
+		SMSProvider.ClientLease<FakeClient> lease(final SMSBridge smsBridge) {
+			return leaseClient(smsBridge, new Callable<FakeClient>() {
+				@Override
+				public FakeClient call() {
+					created++ ;
+					return new FakeClient() ;
+				}
+			}) ;
+		}
+		
+		@Override
+		public void sendMessage(final SMSBridge smsBridgeConfig, final SMSMessage message) throws MessageGatewayException {
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.fineract.messagegateway.configuration.RetryConfig;
+import org.fineract.messagegateway.constants.MessageGatewayConstants;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.domain.SMSBridgeConfig;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.CounterService;
+
+public class RetryPolicyTest {
+
+	private RetryPolicy retryPolicy ;
+	
+	@Before
+	public void setUp() {
+		final RetryConfig retryConfig = mock(RetryConfig.class) ;
+		when(retryConfig.getMaxAttempts()).thenReturn(3) ;
+		when(retryConfig.getInitialBackoffMillis()).thenReturn(1000) ;
+		when(retryConfig.getMaxBackoffSeconds()).thenReturn(60) ;
+		this.retryPolicy = new RetryPolicy(retryConfig, mock(CounterService.class)) ;
+	}
+	
+	@Test
+	public void backoffDoublesWithEveryAttempt() {
+		long delay = 1000 ;
+		for(int attempt = 1 ; attempt <= 6; attempt++) {
+			for(int i = 0 ; i < 100; i++) {
+				final long backoff = this.retryPolicy.backoffMillis(attempt) ;
+				assertTrue("attempt "+attempt+" backoff "+backoff, backoff >= delay / 2 && backoff <= delay) ;
+			}
+			delay *= 2 ;
+		}
+	}
+	
+	@Test
+	public void backoffIsCappedAtTheMaximum() {
+		for(int i = 0 ; i < 100; i++) {
+			final long backoff = this.retryPolicy.backoffMillis(100) ;
+			assertTrue("backoff "+backoff, backoff >= 30000 && backoff <= 60000) ;
+		}
+	}
+	
+	@Test
+	public void backoffIsJittered() {
+		long lowest = Long.MAX_VALUE ;
+		long highest = Long.MIN_VALUE ;
+		for(int i = 0 ; i < 100; i++) {
+			final long backoff = this.retryPolicy.backoffMillis(4) ;
+			lowest = Math.min(lowest, backoff) ;
+			highest = Math.max(highest, backoff) ;
+		}
+		assertTrue(highest > lowest) ;
+	}
+	
+	@Test
+	public void messageWithAttemptsLeftStaysPending() {
+		final SMSMessage message = message(1) ;
+		final long before = System.currentTimeMillis() ;
+		assertTrue(this.retryPolicy.retryLater(new SMSBridge(1L), message, "timeout")) ;
+		assertEquals(SmsMessageStatusType.PENDING.getValue(), message.getDeliveryStatus()) ;
+		assertNotNull(message.getNextAttemptOn()) ;
+		assertTrue(message.getNextAttemptOn().getTime() >= before + 500) ;
+		assertTrue(message.isRetryScheduled()) ;
+		assertEquals("timeout", message.getDeliveryErrorMessage()) ;
+	}
+	
+	@Test
+	public void messageOutOfAttemptsFails() {
+		final SMSMessage message = message(3) ;
+		assertFalse(this.retryPolicy.retryLater(new SMSBridge(1L), message, "timeout")) ;
+		assertEquals(SmsMessageStatusType.FAILED.getValue(), message.getDeliveryStatus()) ;
+		assertNull(message.getNextAttemptOn()) ;
+	}
+	
+	@Test
+	public void bridgeMayLimitTheAttempts() {
+		final SMSBridge bridge = new SMSBridge(1L) ;
+		bridge.getBridgeConfigurations().add(new SMSBridgeConfig(MessageGatewayConstants.PROVIDER_MAX_ATTEMPTS, "1")) ;
+		assertFalse(this.retryPolicy.retryLater(bridge, message(1), "timeout")) ;
+	}
+	
+	private static SMSMessage message(final int attempts) {
+		final SMSMessage message = SMSMessage.getPendingMessages(null, 1L, 1L, null, null, null, null, "9999999999", "Hello", 1L) ;
+		for(int i = 0 ; i < attempts; i++) {
+			message.startAttempt();
+		}
+		return message ;
+	}
+}
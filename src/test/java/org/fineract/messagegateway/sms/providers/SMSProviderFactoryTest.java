@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.fineract.messagegateway.constants.MessageGatewayConstants;
+import org.fineract.messagegateway.exception.MessageGatewayException;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.domain.SMSBridgeConfig;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class SMSProviderFactoryTest {
+
+	private static final long LIMITED_BRIDGE_ID = 1L ;
+	
+	private static final long OPEN_BRIDGE_ID = 2L ;
+	
+	//One request in flight, the provider answers when the test says so
+	private static final long HELD_BRIDGE_ID = 3L ;
+	
+	//Max_TPS of the limited bridge, the message after one which was owed a permit waits 500 ms
+	private static final int MAX_TPS = 2 ;
+	
+	//Sent on, by message id
+	private final Map<Long, Long> sentOn = new ConcurrentHashMap<>() ;
+	
+	//Replies of the held bridge's provider, by message id
+	private final Map<Long, CompletableFuture<SMSMessage>> replies = new ConcurrentHashMap<>() ;
+	
+	private SMSProviderFactory factory ;
+	
+	@Before
+	public void setUp() {
+		final SMSProvider provider = new RecordingProvider() ;
+		final BridgeCache bridgeCache = mock(BridgeCache.class) ;
+		when(bridgeCache.resolve(1L, LIMITED_BRIDGE_ID)).thenReturn(new ResolvedBridge(bridge(LIMITED_BRIDGE_ID, true), provider)) ;
+		when(bridgeCache.resolve(1L, OPEN_BRIDGE_ID)).thenReturn(new ResolvedBridge(bridge(OPEN_BRIDGE_ID, false), provider)) ;
+		when(bridgeCache.resolve(1L, HELD_BRIDGE_ID)).thenReturn(new ResolvedBridge(bridge(HELD_BRIDGE_ID, false), new HeldProvider())) ;
+		final BridgeCircuitBreaker bridgeCircuitBreaker = mock(BridgeCircuitBreaker.class) ;
+		when(bridgeCircuitBreaker.allow(any(SMSBridge.class), any(SMSMessage.class))).thenReturn(true) ;
+		this.factory = new SMSProviderFactory(bridgeCache, new BridgeRateLimiter(), mock(RetryPolicy.class), bridgeCircuitBreaker,
+				new BridgeInFlightLimiter()) ;
+		this.factory.init();
+	}
+	
+	@After
+	public void tearDown() {
+		this.factory.destroy();
+	}
+	
+	@Test
+	public void messageOwedPermitsDoesNotHoldUpTheCaller() throws Exception {
+		//Takes the burst and owes one permit
+		send(message(1L, LIMITED_BRIDGE_ID), message(2L, LIMITED_BRIDGE_ID)).get(1, TimeUnit.SECONDS) ;
+		final long start = System.nanoTime() ;
+		final CompletableFuture<Void> owed = send(message(3L, LIMITED_BRIDGE_ID)) ;
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(250)) ;
+		assertFalse(owed.isDone()) ;
+		owed.get(5, TimeUnit.SECONDS) ;
+		assertTrue(this.sentOn.get(3L) - start >= TimeUnit.MILLISECONDS.toNanos(1000 / MAX_TPS - 50)) ;
+	}
+	
+	@Test
+	public void otherBridgesAreSentWhileALimitedOneWaits() throws Exception {
+		send(message(1L, LIMITED_BRIDGE_ID), message(2L, LIMITED_BRIDGE_ID)).get(1, TimeUnit.SECONDS) ;
+		final CompletableFuture<Void> owed = send(message(3L, LIMITED_BRIDGE_ID)) ;
+		send(message(4L, OPEN_BRIDGE_ID)).get(1, TimeUnit.SECONDS) ;
+		assertFalse(owed.isDone()) ;
+		owed.get(5, TimeUnit.SECONDS) ;
+		assertTrue(this.sentOn.get(4L) < this.sentOn.get(3L)) ;
+	}
+	
+	@Test
+	public void messagesOfALimitedBridgeLeaveInOrder() throws Exception {
+		final CompletableFuture<Void> first = send(message(1L, LIMITED_BRIDGE_ID)) ;
+		final CompletableFuture<Void> second = send(message(2L, LIMITED_BRIDGE_ID)) ;
+		final CompletableFuture<Void> third = send(message(3L, LIMITED_BRIDGE_ID)) ;
+		final CompletableFuture<Void> fourth = send(message(4L, LIMITED_BRIDGE_ID)) ;
+		CompletableFuture.allOf(first, second, third, fourth).get(5, TimeUnit.SECONDS) ;
+		assertEquals(4, this.sentOn.size()) ;
+		for(long id = 1 ; id < 4; id++) {
+			assertTrue(this.sentOn.get(id) < this.sentOn.get(id + 1)) ;
+		}
+	}
+	
+	@Test
+	public void requestBeyondTheInFlightLimitDoesNotHoldUpTheCaller() throws Exception {
+		final CompletableFuture<Void> first = send(message(1L, HELD_BRIDGE_ID)) ;
+		final long start = System.nanoTime() ;
+		final CompletableFuture<Void> second = send(message(2L, HELD_BRIDGE_ID)) ;
+		send(message(3L, OPEN_BRIDGE_ID)).get(1, TimeUnit.SECONDS) ;
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(250)) ;
+		assertFalse(this.sentOn.containsKey(2L)) ;
+		assertFalse(second.isDone()) ;
+		//The first request gives its slot to the second one
+		this.replies.get(1L).complete(null) ;
+		first.get(1, TimeUnit.SECONDS) ;
+		awaitSent(2L) ;
+		this.replies.get(2L).complete(null) ;
+		second.get(1, TimeUnit.SECONDS) ;
+	}
+	
+	@Test
+	public void waitingRequestsStartInOrder() throws Exception {
+		final CompletableFuture<Void> first = send(message(1L, HELD_BRIDGE_ID)) ;
+		final CompletableFuture<Void> second = send(message(2L, HELD_BRIDGE_ID)) ;
+		final CompletableFuture<Void> third = send(message(3L, HELD_BRIDGE_ID)) ;
+		for(long id = 1 ; id <= 3; id++) {
+			awaitSent(id) ;
+			assertEquals(id, this.replies.size()) ;
+			this.replies.get(id).complete(null) ;
+		}
+		CompletableFuture.allOf(first, second, third).get(1, TimeUnit.SECONDS) ;
+	}
+	
+	private void awaitSent(final Long id) throws InterruptedException {
+		final long until = System.currentTimeMillis() + 1000 ;
+		while(!this.replies.containsKey(id) && System.currentTimeMillis() < until) {
+			TimeUnit.MILLISECONDS.sleep(5);
+		}
+		assertTrue("message "+id+" was not sent", this.replies.containsKey(id)) ;
+	}
+	
+	private CompletableFuture<Void> send(final SMSMessage... messages) {
+		return this.factory.sendShortMessages(Arrays.asList(messages)) ;
+	}
+	
+	private static SMSMessage message(final Long id, final Long bridgeId) {
+		final SMSMessage message = SMSMessage.getPendingMessages(null, id, 1L, null, null, null, null, "9999999999", "Hello", bridgeId) ;
+		message.assignId(id);
+		return message ;
+	}
+	
+	private static SMSBridge bridge(final Long id, final boolean limited) {
+		final SMSBridge bridge = new SMSBridge(1L) ;
+		ReflectionTestUtils.setField(bridge, "id", id) ;
+		if(limited) {
+			bridge.getBridgeConfigurations().add(new SMSBridgeConfig(MessageGatewayConstants.PROVIDER_MAX_TPS, String.valueOf(MAX_TPS))) ;
+			bridge.getBridgeConfigurations().add(new SMSBridgeConfig(MessageGatewayConstants.PROVIDER_BURST_SIZE, "1")) ;
+		}
+		return bridge ;
+	}
+	
+	//Takes every message right away and notes when
+	class RecordingProvider extends SMSProvider {
+		
+		@Override
+		public void sendMessage(final SMSBridge smsBridgeConfig, final SMSMessage message) throws MessageGatewayException {
+		}
+		
+		@Override
+		public CompletableFuture<SMSMessage> sendMessageAsync(final SMSBridge smsBridgeConfig, final SMSMessage message) {
+			sentOn.put(message.getId(), System.nanoTime()) ;
+			return CompletableFuture.completedFuture(message) ;
+		}
+		
+		@Override
+		public int getMaxInFlight(final SMSBridge smsBridge) {
+			return 10 ;
+		}
+	}
+	
+	class HeldProvider extends RecordingProvider {
+		
+		@Override
+		public CompletableFuture<SMSMessage> sendMessageAsync(final SMSBridge smsBridgeConfig, final SMSMessage message) {
+			sentOn.put(message.getId(), System.nanoTime()) ;
+			final CompletableFuture<SMSMessage> reply = new CompletableFuture<>() ;
+			replies.put(message.getId(), reply) ;
+			return reply ;
+		}
+		
+		@Override
+		public int getMaxInFlight(final SMSBridge smsBridge) {
+			return 1 ;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SenderPoolTest {
+
+	private static final int RECIPIENTS = 100000 ;
+	
+	@Test
+	public void parsesTrimmedDistinctNumbers() {
+		final SenderPool pool = SenderPool.parse(" +111, +222,,+111 ,") ;
+		assertEquals(Arrays.asList("+111", "+222"), pool.getSenders()) ;
+		assertTrue(pool.contains("+222")) ;
+		assertFalse(pool.contains("+333")) ;
+	}
+	
+	@Test
+	public void bridgeWithoutNumbersHasEmptyPool() {
+		assertTrue(SenderPool.parse(null).isEmpty()) ;
+		assertTrue(SenderPool.parse(" , ").isEmpty()) ;
+		assertNull(SenderPool.parse(null).senderFor("9999999999")) ;
+	}
+	
+	@Test
+	public void recipientKeepsItsNumber() {
+		final SenderPool pool = SenderPool.parse("+111,+222,+333") ;
+		final SenderPool reordered = SenderPool.parse("+333,+111,+222") ;
+		for(int i = 0 ; i < 1000; i++) {
+			final String recipient = recipient(i) ;
+			assertEquals(pool.senderFor(recipient), pool.senderFor(recipient)) ;
+			assertEquals(pool.senderFor(recipient), reordered.senderFor(recipient)) ;
+		}
+	}
+	
+	@Test
+	public void recipientsAreSpreadEvenly() {
+		final SenderPool pool = SenderPool.parse("+111,+222,+333,+444") ;
+		final Map<String, Integer> counts = new HashMap<>() ;
+		for(int i = 0 ; i < RECIPIENTS; i++) {
+			final String sender = pool.senderFor(recipient(i)) ;
+			final Integer counted = counts.get(sender) ;
+			counts.put(sender, counted == null ? 1 : counted + 1) ;
+		}
+		assertEquals(4, counts.size()) ;
+		for(Integer count: counts.values()) {
+			final double share = count / (double) RECIPIENTS ;
+			assertTrue("share "+share, Math.abs(share - 0.25) < 0.02) ;
+		}
+	}
+	
+	@Test
+	public void addingANumberOnlyMovesRecipientsToIt() {
+		final SenderPool four = SenderPool.parse("+111,+222,+333,+444") ;
+		final SenderPool five = SenderPool.parse("+111,+222,+333,+444,+555") ;
+		int moved = 0 ;
+		for(int i = 0 ; i < RECIPIENTS; i++) {
+			final String recipient = recipient(i) ;
+			final String before = four.senderFor(recipient) ;
+			final String after = five.senderFor(recipient) ;
+			if(!before.equals(after)) {
+				assertEquals("+555", after) ;
+				moved++ ;
+			}
+		}
+		final double share = moved / (double) RECIPIENTS ;
+		assertTrue("moved "+share, Math.abs(share - 0.2) < 0.02) ;
+	}
+	
+	private static String recipient(final int i) {
+		return String.valueOf(9000000000L + i * 7919L) ;
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+	//Slack for the time passing between two calls on a slow build machine
+	private static final long SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(20) ;
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsRateWhichIsNotPositive() {
+		new TokenBucket(0, 10) ;
+	}
+	
+	@Test
+	public void burstIsAtLeastOnePermit() {
+		assertEquals(1, new TokenBucket(10, 0).getBurstSize()) ;
+	}
+	
+	@Test
+	public void burstIsServedWithoutWaiting() {
+		final TokenBucket bucket = new TokenBucket(10, 5) ;
+		for(int i = 0 ; i < 5; i++) {
+			assertEquals(0, bucket.reserve(1)) ;
+		}
+	}
+	
+	@Test
+	public void permitsBeyondTheBurstAreOwedAtTheRate() {
+		final TokenBucket bucket = new TokenBucket(10, 5) ;
+		//Takes the burst and owes one permit, the caller after it waits for that one
+		assertEquals(0, bucket.reserve(6)) ;
+		final long wait = bucket.reserve(1) ;
+		assertTrue("waited "+wait, wait > TimeUnit.MILLISECONDS.toNanos(100) - SLACK_NANOS) ;
+		assertTrue("waited "+wait, wait <= TimeUnit.MILLISECONDS.toNanos(100)) ;
+	}
+	
+	@Test
+	public void reserveReturnsWithoutWaitingForOwedPermits() {
+		final TokenBucket bucket = new TokenBucket(1, 1) ;
+		bucket.reserve(2) ;
+		final long start = System.nanoTime() ;
+		final long wait = bucket.reserve(1) ;
+		//The caller is told to wait a second, holding the messages back is up to it
+		assertTrue("waited "+wait, wait > TimeUnit.SECONDS.toNanos(1) - SLACK_NANOS) ;
+		assertTrue(System.nanoTime() - start < SLACK_NANOS) ;
+	}
+	
+	@Test
+	public void waitingCallersAreServedInArrivalOrder() {
+		final TokenBucket bucket = new TokenBucket(10, 1) ;
+		bucket.reserve(1) ;
+		long previous = bucket.reserve(1) ;
+		for(int i = 0 ; i < 3; i++) {
+			final long wait = bucket.reserve(1) ;
+			assertTrue(wait > previous + TimeUnit.MILLISECONDS.toNanos(100) - SLACK_NANOS) ;
+			previous = wait ;
+		}
+	}
+	
+	@Test
+	public void bucketRefillsWhileIdle() throws InterruptedException {
+		final TokenBucket bucket = new TokenBucket(100, 5) ;
+		bucket.reserve(5) ;
+		TimeUnit.MILLISECONDS.sleep(60);
+		//5 permits came back in 50 ms, the burst caps what is stored
+		for(int i = 0 ; i < 5; i++) {
+			assertEquals(0, bucket.reserve(1)) ;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers.impl.infobip;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.fineract.messagegateway.configuration.DispatcherConfig;
+import org.fineract.messagegateway.configuration.HostConfig;
+import org.fineract.messagegateway.configuration.ProviderClientConfig;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import infobip.api.client.SendMultipleTextualSmsAdvanced;
+import infobip.api.config.BasicAuthConfiguration;
+import infobip.api.model.Destination;
+import infobip.api.model.Status;
+import infobip.api.model.sms.mt.send.Message;
+import infobip.api.model.sms.mt.send.SMSResponse;
+import infobip.api.model.sms.mt.send.SMSResponseDetails;
+import infobip.api.model.sms.mt.send.textual.SMSAdvancedTextualRequest;
+
+public class InfoBipMessageProviderTest {
+
+	//InfoBip's PENDING status group
+	private static final int PENDING_GROUP = 1 ;
+	
+	private InfoBipMessageProvider provider ;
+	
+	@After
+	public void tearDown() {
+		if(this.provider != null) {
+			this.provider.closeClients();
+		}
+	}
+	
+	@Test
+	public void responseEntriesAreMatchedByMessageId() throws Exception {
+		//Answers in reverse order and leaves the second message out
+		this.provider = provider(new AnsweringClient(2, 0)) ;
+		final List<SMSMessage> messages = Arrays.asList(message(7L), message(8L), message(9L)) ;
+		this.provider.sendMessages(bridge(), messages);
+		assertEquals("7-1", messages.get(0).getExternalId()) ;
+		assertEquals(SmsMessageStatusType.SENT.getValue(), messages.get(0).getDeliveryStatus()) ;
+		assertNull(messages.get(1).getExternalId()) ;
+		assertEquals(SmsMessageStatusType.FAILED.getValue(), messages.get(1).getDeliveryStatus()) ;
+		assertEquals("9-1", messages.get(2).getExternalId()) ;
+		assertEquals(SmsMessageStatusType.SENT.getValue(), messages.get(2).getDeliveryStatus()) ;
+	}
+	
+	@Test
+	public void everyAttemptHasItsOwnMessageId() throws Exception {
+		this.provider = provider(new AnsweringClient(0)) ;
+		final SMSMessage message = message(7L) ;
+		message.startAttempt();
+		this.provider.sendMessage(bridge(), message);
+		assertEquals("7-2", message.getExternalId()) ;
+	}
+	
+	private static InfoBipMessageProvider provider(final SendMultipleTextualSmsAdvanced client) {
+		final HostConfig hostConfig = new HostConfig() ;
+		ReflectionTestUtils.setField(hostConfig, "protocol", "https") ;
+		ReflectionTestUtils.setField(hostConfig, "hostName", "localhost") ;
+		ReflectionTestUtils.setField(hostConfig, "port", 9191) ;
+		final InfoBipMessageProvider provider = new InfoBipMessageProvider(hostConfig) {
+			@Override
+			SendMultipleTextualSmsAdvanced get(final SMSBridge smsBridgeConfig) {
+				return client ;
+			}
+		} ;
+		final ProviderClientConfig providerClientConfig = new ProviderClientConfig() ;
+		ReflectionTestUtils.setField(providerClientConfig, "maxClients", 10) ;
+		ReflectionTestUtils.setField(providerClientConfig, "idleMinutes", 30) ;
+		ReflectionTestUtils.setField(providerClientConfig, "asyncThreads", 1) ;
+		final DispatcherConfig dispatcherConfig = new DispatcherConfig() ;
+		ReflectionTestUtils.setField(dispatcherConfig, "mode", "platform") ;
+		ReflectionTestUtils.setField(provider, "providerClientConfig", providerClientConfig) ;
+		ReflectionTestUtils.setField(provider, "dispatcherConfig", dispatcherConfig) ;
+		provider.initClients();
+		return provider ;
+	}
+	
+	private static SMSBridge bridge() {
+		final SMSBridge bridge = new SMSBridge(1L, "InfoBip", "InfoBip", "InfoBip", "+91", "InfoBip bridge") ;
+		ReflectionTestUtils.setField(bridge, "id", 1L) ;
+		return bridge ;
+	}
+	
+	private static SMSMessage message(final Long id) {
+		final SMSMessage message = SMSMessage.getPendingMessages(null, id, 1L, null, null, null, null, "9999999999", "Hello", 1L) ;
+		message.assignId(id);
+		message.startAttempt();
+		return message ;
+	}
+	
+	//Answers with an entry for each of the given messages of the request, in the given order
+	static class AnsweringClient extends SendMultipleTextualSmsAdvanced {
+		
+		private final List<Integer> answered ;
+		
+		AnsweringClient(final Integer... answered) {
+			super(new BasicAuthConfiguration("user", "password")) ;
+			this.answered = Arrays.asList(answered) ;
+		}
+		
+		@Override
+		public SMSResponse execute(final SMSAdvancedTextualRequest request) {
+			final List<SMSResponseDetails> sent = new ArrayList<>() ;
+			for(Integer index: this.answered) {
+				final Message message = request.getMessages().get(index) ;
+				final Destination destination = message.getDestinations().get(0) ;
+				final Status status = new Status() ;
+				status.setGroupId(PENDING_GROUP);
+				final SMSResponseDetails details = new SMSResponseDetails() ;
+				details.setMessageId(destination.getMessageId());
+				details.setTo(destination.getTo());
+				details.setStatus(status);
+				sent.add(details) ;
+			}
+			final SMSResponse response = new SMSResponse() ;
+			response.setMessages(sent);
+			return response ;
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers.impl.twilio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.fineract.messagegateway.configuration.DispatcherConfig;
+import org.fineract.messagegateway.configuration.HostConfig;
+import org.fineract.messagegateway.configuration.ProviderClientConfig;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.fineract.messagegateway.sms.util.VirtualThreads;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.twilio.http.HttpClient;
+import com.twilio.http.Request;
+import com.twilio.http.Response;
+import com.twilio.http.TwilioRestClient;
+
+public class TwilioMessageProviderTest {
+
+	private static final String QUEUED = "{\"sid\": \"SM0123456789\", \"status\": \"queued\", \"to\": \"+919999999999\"}" ;
+	
+	private TwilioMessageProvider provider ;
+	
+	@After
+	public void tearDown() {
+		if(this.provider != null) {
+			this.provider.closeClients();
+		}
+	}
+	
+	@Test
+	public void asyncSendRunsTheBlockingCallOnTheProviderExecutor() throws Exception {
+		final RecordingHttpClient httpClient = new RecordingHttpClient(QUEUED, 201) ;
+		this.provider = provider(httpClient, "platform") ;
+		final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				return new Thread(runnable, "provider-async") ;
+			}
+		}) ;
+		ReflectionTestUtils.setField(this.provider, "asyncExecutor", executor) ;
+		final SMSMessage message = message() ;
+		this.provider.sendMessageAsync(bridge(), message).get(5, TimeUnit.SECONDS) ;
+		assertEquals("provider-async", httpClient.thread.getName()) ;
+		assertEquals("SM0123456789", message.getExternalId()) ;
+		assertEquals(SmsMessageStatusType.WAITING_FOR_REPORT.getValue(), message.getDeliveryStatus()) ;
+		assertTrue(httpClient.request.getPostParams().get("StatusCallback").get(0).endsWith("/twilio/report/7")) ;
+	}
+	
+	@Test
+	public void asyncSendRunsOnAVirtualThreadInVirtualMode() throws Exception {
+		Assume.assumeTrue(VirtualThreads.isAvailable()) ;
+		final RecordingHttpClient httpClient = new RecordingHttpClient(QUEUED, 201) ;
+		this.provider = provider(httpClient, "virtual") ;
+		this.provider.sendMessageAsync(bridge(), message()).get(5, TimeUnit.SECONDS) ;
+		assertEquals(Boolean.TRUE, Thread.class.getMethod("isVirtual").invoke(httpClient.thread)) ;
+	}
+	
+	@Test
+	public void rejectedMessageFails() throws Exception {
+		final RecordingHttpClient httpClient = new RecordingHttpClient("{\"code\": 21211, \"message\": \"Invalid 'To' Phone Number\","
+				+ " \"status\": 400}", 400) ;
+		this.provider = provider(httpClient, "platform") ;
+		final SMSMessage message = message() ;
+		this.provider.sendMessageAsync(bridge(), message).get(5, TimeUnit.SECONDS) ;
+		assertEquals(SmsMessageStatusType.FAILED.getValue(), message.getDeliveryStatus()) ;
+	}
+	
+	private static TwilioMessageProvider provider(final HttpClient httpClient, final String mode) {
+		final HostConfig hostConfig = new HostConfig() ;
+		ReflectionTestUtils.setField(hostConfig, "protocol", "https") ;
+		ReflectionTestUtils.setField(hostConfig, "hostName", "localhost") ;
+		ReflectionTestUtils.setField(hostConfig, "port", 9191) ;
+		final TwilioMessageProvider provider = new TwilioMessageProvider(hostConfig) {
+			@Override
+			TwilioRestClient get(final SMSBridge smsBridgeConfig) {
+				return new TwilioRestClient.Builder("AC0123456789", "token").httpClient(httpClient).build() ;
+			}
+		} ;
+		final ProviderClientConfig providerClientConfig = new ProviderClientConfig() ;
+		ReflectionTestUtils.setField(providerClientConfig, "maxClients", 10) ;
+		ReflectionTestUtils.setField(providerClientConfig, "idleMinutes", 30) ;
+		ReflectionTestUtils.setField(providerClientConfig, "asyncThreads", 1) ;
+		final DispatcherConfig dispatcherConfig = new DispatcherConfig() ;
+		ReflectionTestUtils.setField(dispatcherConfig, "mode", mode) ;
+		ReflectionTestUtils.setField(provider, "providerClientConfig", providerClientConfig) ;
+		ReflectionTestUtils.setField(provider, "dispatcherConfig", dispatcherConfig) ;
+		provider.initClients();
+		return provider ;
+	}
+	
+	private static SMSBridge bridge() {
+		final SMSBridge bridge = new SMSBridge(1L, "+15005550006", "Twilio", "Twilio", "+91", "Twilio bridge") ;
+		ReflectionTestUtils.setField(bridge, "id", 1L) ;
+		return bridge ;
+	}
+	
+	private static SMSMessage message() {
+		final SMSMessage message = SMSMessage.getPendingMessages(null, 1L, 1L, null, null, null, null, "9999999999", "Hello", 1L) ;
+		message.assignId(7L);
+		return message ;
+	}
+	
+	//Answers every request with the same response and remembers the last request and its thread
+	static class RecordingHttpClient extends HttpClient {
+		
+		private final String content ;
+		
+		private final int status ;
+		
+		volatile Request request ;
+		
+		volatile Thread thread ;
+		
+		RecordingHttpClient(final String content, final int status) {
+			this.content = content ;
+			this.status = status ;
+		}
+		
+		@Override
+		public Response makeRequest(final Request request) {
+			this.request = request ;
+			this.thread = Thread.currentThread() ;
+			return new Response(this.content, this.status) ;
+		}
+	}
+}
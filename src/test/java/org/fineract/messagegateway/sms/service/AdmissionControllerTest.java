@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.fineract.messagegateway.configuration.DispatcherConfig;
+import org.fineract.messagegateway.exception.PlatformApiDataValidationException;
+import org.fineract.messagegateway.sms.exception.MessageQueueFullException;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class AdmissionControllerTest {
+
+	private AdmissionController admissionController ;
+	
+	@Before
+	public void setUp() {
+		final DispatcherConfig dispatcherConfig = mock(DispatcherConfig.class) ;
+		when(dispatcherConfig.getHighWaterMark()).thenReturn(100) ;
+		when(dispatcherConfig.getPromotionalHighWaterMark()).thenReturn(80) ;
+		this.admissionController = new AdmissionController(dispatcherConfig, mock(GaugeService.class), mock(CounterService.class)) ;
+	}
+	
+	@Test
+	public void admitsUpToTheHighWaterMark() {
+		this.admissionController.admit(60, false);
+		this.admissionController.admit(40, false);
+		assertEquals(100, this.admissionController.getDepth()) ;
+		try {
+			this.admissionController.admit(1, false);
+			fail("Admitted beyond the high-water mark") ;
+		} catch (MessageQueueFullException e) {
+			assertTrue(e.getRetryAfterSeconds() >= 1) ;
+		}
+		assertEquals(1, this.admissionController.getRejected()) ;
+		assertEquals(100, this.admissionController.getDepth()) ;
+	}
+	
+	@Test
+	public void promotionalBatchesLeaveRoomForTransactionalOnes() {
+		this.admissionController.admit(80, true);
+		assertFalse(this.admissionController.tryAdmit(1, true)) ;
+		assertTrue(this.admissionController.tryAdmit(20, false)) ;
+	}
+	
+	@Test
+	public void promotionalShareIsTakenFromTheHighWaterMark() {
+		final DispatcherConfig dispatcherConfig = new DispatcherConfig() ;
+		ReflectionTestUtils.setField(dispatcherConfig, "highWaterMark", 100) ;
+		ReflectionTestUtils.setField(dispatcherConfig, "promotionalShare", 0.6) ;
+		final AdmissionController admissionController = new AdmissionController(dispatcherConfig, mock(GaugeService.class), mock(CounterService.class)) ;
+		assertTrue(admissionController.tryAdmit(60, true)) ;
+		assertFalse(admissionController.tryAdmit(1, true)) ;
+		assertTrue(admissionController.tryAdmit(40, false)) ;
+		assertFalse(admissionController.tryAdmit(1, false)) ;
+	}
+	
+	@Test(expected = PlatformApiDataValidationException.class)
+	public void batchLargerThanTheHighWaterMarkIsRejectedOutright() {
+		this.admissionController.admit(101, false);
+	}
+	
+	@Test(expected = PlatformApiDataValidationException.class)
+	public void promotionalBatchIsLimitedToItsShare() {
+		this.admissionController.admit(81, true);
+	}
+	
+	@Test
+	public void emptyQueueDoesNotTakeAnOversizedBatch() {
+		assertFalse(this.admissionController.tryAdmit(101)) ;
+		assertEquals(0, this.admissionController.getDepth()) ;
+	}
+	
+	@Test
+	public void releaseMakesRoomAgain() {
+		assertTrue(this.admissionController.tryAdmit(100)) ;
+		assertFalse(this.admissionController.tryAdmit(10)) ;
+		this.admissionController.release(10);
+		assertTrue(this.admissionController.tryAdmit(10)) ;
+		this.admissionController.release(0);
+		this.admissionController.release(-5);
+		assertEquals(100, this.admissionController.getDepth()) ;
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void acquireRejectsBatchWhichCanNeverFit() throws InterruptedException {
+		this.admissionController.acquire(this.admissionController.getMaxBatchSize() + 1);
+	}
+	
+	@Test
+	public void acquireWaitsForRelease() throws InterruptedException {
+		this.admissionController.acquire(100);
+		final CountDownLatch acquired = new CountDownLatch(1) ;
+		final Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					admissionController.acquire(50);
+					acquired.countDown();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}) ;
+		producer.start();
+		assertFalse(acquired.await(100, TimeUnit.MILLISECONDS)) ;
+		this.admissionController.release(50);
+		assertTrue(acquired.await(5, TimeUnit.SECONDS)) ;
+		assertEquals(100, this.admissionController.getDepth()) ;
+	}
+}
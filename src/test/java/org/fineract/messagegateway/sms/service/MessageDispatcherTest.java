@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.fineract.messagegateway.configuration.DispatcherConfig;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.providers.SMSProviderFactory;
+import org.fineract.messagegateway.sms.util.SmsMessagePriorityType;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class MessageDispatcherTest {
+
+	private static final int HIGH_WATER_MARK = 100 ;
+	
+	//Message ids in the order the provider factory got them
+	private final List<Long> sent = Collections.synchronizedList(new ArrayList<Long>()) ;
+	
+	private final CountDownLatch firstSending = new CountDownLatch(1) ;
+	
+	//Holds the worker in the first send until the test queued its backlog
+	private final CountDownLatch backlogQueued = new CountDownLatch(1) ;
+	
+	private MessageDispatcher dispatcher ;
+	
+	@After
+	public void tearDown() {
+		if(this.dispatcher != null) {
+			this.dispatcher.destroy();
+		}
+	}
+	
+	@Test
+	public void transactionalMessagesOvertakeAPromotionalBacklog() throws Exception {
+		start(0) ;
+		this.dispatcher.dispatch(message(1L, SmsMessagePriorityType.PROMOTIONAL)) ;
+		assertTrue(this.firstSending.await(5, TimeUnit.SECONDS)) ;
+		this.dispatcher.dispatch(Arrays.asList(message(2L, SmsMessagePriorityType.PROMOTIONAL), message(3L, SmsMessagePriorityType.PROMOTIONAL),
+				message(4L, SmsMessagePriorityType.PROMOTIONAL))) ;
+		this.dispatcher.dispatch(Arrays.asList(message(5L, SmsMessagePriorityType.TRANSACTIONAL), message(6L, SmsMessagePriorityType.TRANSACTIONAL))) ;
+		this.backlogQueued.countDown();
+		assertEquals(Arrays.asList(1L, 5L, 6L, 2L, 3L, 4L), awaitSent(6)) ;
+	}
+	
+	@Test
+	public void transactionalWeightLetsPromotionalMessagesThrough() throws Exception {
+		start(2) ;
+		this.dispatcher.dispatch(message(1L, SmsMessagePriorityType.TRANSACTIONAL)) ;
+		assertTrue(this.firstSending.await(5, TimeUnit.SECONDS)) ;
+		this.dispatcher.dispatch(Arrays.asList(message(2L, SmsMessagePriorityType.PROMOTIONAL), message(3L, SmsMessagePriorityType.PROMOTIONAL))) ;
+		this.dispatcher.dispatch(Arrays.asList(message(4L, SmsMessagePriorityType.TRANSACTIONAL), message(5L, SmsMessagePriorityType.TRANSACTIONAL),
+				message(6L, SmsMessagePriorityType.TRANSACTIONAL), message(7L, SmsMessagePriorityType.TRANSACTIONAL),
+				message(8L, SmsMessagePriorityType.TRANSACTIONAL))) ;
+		this.backlogQueued.countDown();
+		//Message 1 started the streak, one promotional message follows every second transactional one
+		assertEquals(Arrays.asList(1L, 4L, 2L, 5L, 6L, 3L, 7L, 8L), awaitSent(8)) ;
+	}
+	
+	//One partition, so every message shares the worker
+	private void start(final int transactionalWeight) {
+		final SMSProviderFactory smsProviderFactory = mock(SMSProviderFactory.class) ;
+		when(smsProviderFactory.getMaxBatchSize(any(SMSMessage.class))).thenReturn(1) ;
+		when(smsProviderFactory.sendShortMessages(any(Collection.class))).thenAnswer(new Answer<CompletableFuture<Void>>() {
+			@Override
+			public CompletableFuture<Void> answer(final InvocationOnMock invocation) throws Throwable {
+				for(Object message: (Collection<?>) invocation.getArguments()[0]) {
+					sent.add(((SMSMessage) message).getId()) ;
+				}
+				firstSending.countDown();
+				backlogQueued.await(5, TimeUnit.SECONDS) ;
+				return CompletableFuture.completedFuture(null) ;
+			}
+		}) ;
+		final OutboxService outboxService = mock(OutboxService.class) ;
+		when(outboxService.renewLease(any(SMSMessage.class))).thenReturn(true) ;
+		this.dispatcher = new MessageDispatcher(smsProviderFactory, dispatcherConfig(transactionalWeight), mock(GaugeService.class),
+				outboxService, mock(AdmissionController.class)) ;
+		this.dispatcher.init();
+	}
+	
+	private List<Long> awaitSent(final int count) throws InterruptedException {
+		final long until = System.currentTimeMillis() + 5000 ;
+		while(this.sent.size() < count && System.currentTimeMillis() < until) {
+			TimeUnit.MILLISECONDS.sleep(5);
+		}
+		synchronized (this.sent) {
+			return new ArrayList<>(this.sent) ;
+		}
+	}
+	
+	private static SMSMessage message(final Long id, final SmsMessagePriorityType priority) {
+		final SMSMessage message = SMSMessage.getPendingMessages(null, id, 1L, null, null, null, null, "9999999999", "Hello", 1L) ;
+		message.assignId(id);
+		message.setPriority(priority.name());
+		return message ;
+	}
+	
+	private static DispatcherConfig dispatcherConfig(final int transactionalWeight) {
+		final DispatcherConfig config = new DispatcherConfig() ;
+		ReflectionTestUtils.setField(config, "workerThreads", 1) ;
+		ReflectionTestUtils.setField(config, "queueCapacity", HIGH_WATER_MARK) ;
+		ReflectionTestUtils.setField(config, "highWaterMark", HIGH_WATER_MARK) ;
+		ReflectionTestUtils.setField(config, "promotionalShare", 0.8) ;
+		ReflectionTestUtils.setField(config, "transactionalWeight", transactionalWeight) ;
+		ReflectionTestUtils.setField(config, "mode", "platform") ;
+		ReflectionTestUtils.setField(config, "maxInFlight", 10) ;
+		ReflectionTestUtils.setField(config, "batchSize", 1) ;
+		ReflectionTestUtils.setField(config, "batchLingerMillis", 0) ;
+		return config ;
+	}
+}
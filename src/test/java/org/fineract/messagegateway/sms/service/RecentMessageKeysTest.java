@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.fineract.messagegateway.configuration.CacheConfig;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.CounterService;
+
+public class RecentMessageKeysTest {
+
+	private RecentMessageKeys recentMessageKeys ;
+	
+	@Before
+	public void setUp() {
+		final CacheConfig cacheConfig = mock(CacheConfig.class) ;
+		when(cacheConfig.getRecentKeysMaxSize()).thenReturn(1000) ;
+		when(cacheConfig.getRecentKeysTtlMinutes()).thenReturn(60) ;
+		this.recentMessageKeys = new RecentMessageKeys(cacheConfig, mock(CounterService.class)) ;
+		this.recentMessageKeys.init();
+	}
+	
+	@Test
+	public void newMessagesPass() {
+		final List<SMSMessage> duplicates = new ArrayList<>() ;
+		final List<SMSMessage> messages = Arrays.asList(message(1L), message(2L)) ;
+		assertEquals(messages, this.recentMessageKeys.withoutDuplicates(1L, messages, duplicates)) ;
+		assertEquals(Collections.emptyList(), duplicates) ;
+	}
+	
+	@Test
+	public void rememberedMessagesAreDuplicates() {
+		this.recentMessageKeys.remember(1L, Arrays.asList(message(1L)));
+		final List<SMSMessage> duplicates = new ArrayList<>() ;
+		final SMSMessage again = message(1L) ;
+		final SMSMessage fresh = message(2L) ;
+		assertEquals(Arrays.asList(fresh), this.recentMessageKeys.withoutDuplicates(1L, Arrays.asList(again, fresh), duplicates)) ;
+		assertEquals(1, duplicates.size()) ;
+		assertSame(again, duplicates.get(0)) ;
+	}
+	
+	@Test
+	public void internalIdsAreKeptPerTenant() {
+		this.recentMessageKeys.remember(1L, Arrays.asList(message(1L)));
+		final List<SMSMessage> duplicates = new ArrayList<>() ;
+		assertEquals(1, this.recentMessageKeys.withoutDuplicates(2L, Arrays.asList(message(1L)), duplicates).size()) ;
+		assertEquals(Collections.emptyList(), duplicates) ;
+	}
+	
+	@Test
+	public void internalIdRepeatedInOneRequestIsSentOnce() {
+		final List<SMSMessage> duplicates = new ArrayList<>() ;
+		final SMSMessage first = message(1L) ;
+		final SMSMessage second = message(1L) ;
+		assertEquals(Arrays.asList(first), this.recentMessageKeys.withoutDuplicates(1L, Arrays.asList(first, second), duplicates)) ;
+		assertEquals(Arrays.asList(second), duplicates) ;
+	}
+	
+	@Test
+	public void messagesWithoutInternalIdAreNotFiltered() {
+		final List<SMSMessage> duplicates = new ArrayList<>() ;
+		final List<SMSMessage> messages = Arrays.asList(message(null), message(null)) ;
+		this.recentMessageKeys.remember(1L, messages);
+		assertEquals(messages, this.recentMessageKeys.withoutDuplicates(1L, messages, duplicates)) ;
+	}
+	
+	private static SMSMessage message(final Long internalId) {
+		return SMSMessage.getPendingMessages(null, internalId, 1L, null, null, null, null, "9999999999", "Hello", 1L) ;
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.fineract.messagegateway.configuration.OutboxConfig;
+import org.fineract.messagegateway.configuration.SweeperConfig;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class StaleMessageSweeperTest {
+
+	private static final int LEASE_SECONDS = 300 ;
+	
+	private static final int PENDING_TIMEOUT_SECONDS = 120 ;
+	
+	private static final int BATCH_SIZE = 2 ;
+	
+	//Statements by the first words of their SQL
+	private final Map<String, PreparedStatement> statements = new HashMap<>() ;
+	
+	private StaleMessageSweeper sweeper ;
+	
+	@Before
+	public void setUp() throws Exception {
+		final Connection connection = mock(Connection.class) ;
+		when(connection.prepareStatement(anyString())).thenAnswer(new Answer<PreparedStatement>() {
+			@Override
+			public PreparedStatement answer(final InvocationOnMock invocation) {
+				final String sql = (String) invocation.getArguments()[0] ;
+				for(Map.Entry<String, PreparedStatement> statement: statements.entrySet()) {
+					if(sql.startsWith(statement.getKey())) {
+						return statement.getValue() ;
+					}
+				}
+				return mock(PreparedStatement.class) ;
+			}
+		}) ;
+		final DataSource dataSource = mock(DataSource.class) ;
+		when(dataSource.getConnection()).thenReturn(connection) ;
+		final SweeperConfig sweeperConfig = new SweeperConfig() ;
+		ReflectionTestUtils.setField(sweeperConfig, "intervalSeconds", 60) ;
+		ReflectionTestUtils.setField(sweeperConfig, "reportTimeoutSeconds", 172800) ;
+		ReflectionTestUtils.setField(sweeperConfig, "pendingTimeoutSeconds", PENDING_TIMEOUT_SECONDS) ;
+		ReflectionTestUtils.setField(sweeperConfig, "batchSize", BATCH_SIZE) ;
+		final OutboxConfig outboxConfig = new OutboxConfig() ;
+		ReflectionTestUtils.setField(outboxConfig, "leaseSeconds", LEASE_SECONDS) ;
+		this.sweeper = new StaleMessageSweeper(dataSource, sweeperConfig, outboxConfig, mock(GaugeService.class)) ;
+	}
+	
+	@Test
+	public void releasesPendingLeasesTakenLongerAgoThanTheTimeout() throws Exception {
+		lock(true) ;
+		final PreparedStatement release = statement("update m_outbound_messages set lease_owner=null") ;
+		when(release.executeUpdate()).thenReturn(BATCH_SIZE, 1) ;
+		final long now = System.currentTimeMillis() ;
+		this.sweeper.sweep();
+		//Full batches are followed by another one
+		verify(release, times(2)).executeUpdate() ;
+		verify(release).setInt(1, SmsMessageStatusType.PENDING.getValue()) ;
+		final ArgumentCaptor<Timestamp> unexpired = ArgumentCaptor.forClass(Timestamp.class) ;
+		final ArgumentCaptor<Timestamp> leasedBefore = ArgumentCaptor.forClass(Timestamp.class) ;
+		verify(release).setTimestamp(eq(2), unexpired.capture()) ;
+		verify(release).setTimestamp(eq(3), leasedBefore.capture()) ;
+		//Expired leases are the outbox poller's, a lease renewed within the timeout runs out after this
+		assertTrue(Math.abs(unexpired.getValue().getTime() - now) < 1000) ;
+		assertEquals((LEASE_SECONDS - PENDING_TIMEOUT_SECONDS) * 1000L, leasedBefore.getValue().getTime() - unexpired.getValue().getTime()) ;
+	}
+	
+	@Test
+	public void leavesMessagesAloneWhileAnotherNodeSweeps() throws Exception {
+		lock(false) ;
+		final PreparedStatement release = statement("update m_outbound_messages set lease_owner=null") ;
+		this.sweeper.sweep();
+		verify(release, never()).executeUpdate() ;
+	}
+	
+	private void lock(final boolean granted) throws Exception {
+		final ResultSet rs = mock(ResultSet.class) ;
+		when(rs.next()).thenReturn(true) ;
+		when(rs.getInt(1)).thenReturn(granted ? 1 : 0) ;
+		when(statement("select get_lock").executeQuery()).thenReturn(rs) ;
+	}
+	
+	private PreparedStatement statement(final String sqlStart) {
+		final PreparedStatement statement = mock(PreparedStatement.class) ;
+		this.statements.put(sqlStart, statement) ;
+		return statement ;
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class HierarchicalTimingWheelTest {
+
+	private static final long START = 1000000 ;
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsWheelOfOneBucket() {
+		new HierarchicalTimingWheel<String>(10, 1, START) ;
+	}
+	
+	@Test
+	public void itemAlreadyDueIsNotHeld() {
+		final HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(10, 8, START) ;
+		assertFalse(wheel.add("due", START)) ;
+		assertFalse(wheel.add("past", START - 500)) ;
+		assertEquals(0, wheel.size()) ;
+	}
+	
+	@Test
+	public void itemExpiresOnTheTickAfterItsExpiration() {
+		final HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(10, 8, START) ;
+		assertTrue(wheel.add("a", START + 25)) ;
+		assertEquals(Collections.emptyList(), wheel.advance(START + 29)) ;
+		assertEquals(Arrays.asList("a"), wheel.advance(START + 30)) ;
+		assertEquals(0, wheel.size()) ;
+	}
+	
+	@Test
+	public void itemsBeyondTheFirstLevelCascadeDown() {
+		final HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(10, 4, START) ;
+		//Level 0 spans 40 ms, level 1 160 ms, level 2 640 ms
+		final List<Long> expirations = Arrays.asList(START + 30, START + 150, START + 600, START + 2500) ;
+		for(Long expiration: expirations) {
+			assertTrue(wheel.add(expiration, expiration)) ;
+		}
+		assertEquals(4, wheel.size()) ;
+		for(Long expiration: expirations) {
+			assertEquals(Collections.emptyList(), wheel.advance(expiration - 1)) ;
+			assertEquals(Arrays.asList(expiration), wheel.advance(expiration)) ;
+		}
+		assertEquals(0, wheel.size()) ;
+	}
+	
+	@Test
+	public void itemsComeOutInExpirationOrder() {
+		final HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(10, 8, START) ;
+		final List<Long> expirations = new ArrayList<>() ;
+		for(long offset = 10 ; offset <= 5000; offset += 70) {
+			expirations.add(START + offset) ;
+		}
+		final List<Long> shuffled = new ArrayList<>(expirations) ;
+		Collections.shuffle(shuffled);
+		for(Long expiration: shuffled) {
+			wheel.add(expiration, expiration) ;
+		}
+		final List<Long> expired = new ArrayList<>() ;
+		for(long now = START; now <= START + 5000; now += 10) {
+			for(Long expiration: wheel.advance(now)) {
+				assertTrue(expiration <= now) ;
+				expired.add(expiration) ;
+			}
+		}
+		assertEquals(expirations, expired) ;
+	}
+	
+	@Test
+	public void advancingSeveralTicksAtOnceReturnsAllExpired() {
+		final HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(10, 8, START) ;
+		wheel.add("a", START + 10) ;
+		wheel.add("b", START + 70) ;
+		wheel.add("c", START + 300) ;
+		assertEquals(Arrays.asList("a", "b"), wheel.advance(START + 100)) ;
+		assertEquals(1, wheel.size()) ;
+		assertEquals(START + 100, wheel.getCurrentTime()) ;
+	}
+}
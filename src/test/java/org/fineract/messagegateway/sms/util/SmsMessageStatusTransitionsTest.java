@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class SmsMessageStatusTransitionsTest {
+
+	@Test
+	public void deliveredAndFailedAreFinal() {
+		assertTrue(SmsMessageStatusTransitions.isFinal(SmsMessageStatusType.DELIVERED)) ;
+		assertTrue(SmsMessageStatusTransitions.isFinal(SmsMessageStatusType.FAILED)) ;
+		assertFalse(SmsMessageStatusTransitions.isFinal(SmsMessageStatusType.SENT)) ;
+		assertFalse(SmsMessageStatusTransitions.isFinal(SmsMessageStatusType.PENDING)) ;
+	}
+	
+	@Test
+	public void messagesOnlyMoveForward() {
+		assertTrue(SmsMessageStatusTransitions.isAllowed(SmsMessageStatusType.PENDING, SmsMessageStatusType.WAITING_FOR_REPORT)) ;
+		assertTrue(SmsMessageStatusTransitions.isAllowed(SmsMessageStatusType.WAITING_FOR_REPORT, SmsMessageStatusType.SENT)) ;
+		assertTrue(SmsMessageStatusTransitions.isAllowed(SmsMessageStatusType.PENDING, SmsMessageStatusType.DELIVERED)) ;
+		assertFalse(SmsMessageStatusTransitions.isAllowed(SmsMessageStatusType.SENT, SmsMessageStatusType.WAITING_FOR_REPORT)) ;
+		assertFalse(SmsMessageStatusTransitions.isAllowed(SmsMessageStatusType.SENT, SmsMessageStatusType.SENT)) ;
+	}
+	
+	@Test
+	public void finalStatusesAreNeverLeft() {
+		for(SmsMessageStatusType to: SmsMessageStatusType.values()) {
+			assertFalse(SmsMessageStatusTransitions.isAllowed(SmsMessageStatusType.DELIVERED, to)) ;
+			assertFalse(SmsMessageStatusTransitions.isAllowed(SmsMessageStatusType.FAILED, to)) ;
+		}
+	}
+	
+	@Test
+	public void invalidTakesPartInNoTransition() {
+		for(SmsMessageStatusType status: SmsMessageStatusType.values()) {
+			assertFalse(SmsMessageStatusTransitions.isAllowed(SmsMessageStatusType.INVALID, status)) ;
+			assertFalse(SmsMessageStatusTransitions.isAllowed(status, SmsMessageStatusType.INVALID)) ;
+		}
+	}
+	
+	@Test
+	public void sourcesAreTheEarlierStatuses() {
+		assertEquals(Arrays.asList(100, 150), SmsMessageStatusTransitions.sourcesOf(SmsMessageStatusType.SENT)) ;
+		assertEquals(Arrays.asList(100, 150, 200), SmsMessageStatusTransitions.sourcesOf(SmsMessageStatusType.FAILED)) ;
+		assertEquals(Collections.emptyList(), SmsMessageStatusTransitions.sourcesOf(SmsMessageStatusType.PENDING)) ;
+	}
+	
+	@Test
+	public void conditionListsTheSources() {
+		assertEquals("delivery_status in (100,150)", SmsMessageStatusTransitions.condition(SmsMessageStatusType.SENT, false)) ;
+		assertEquals("delivery_status in (100,150,200)", SmsMessageStatusTransitions.condition(SmsMessageStatusType.SENT, true)) ;
+		assertEquals("1=0", SmsMessageStatusTransitions.condition(SmsMessageStatusType.PENDING, false)) ;
+		assertEquals("delivery_status in (100)", SmsMessageStatusTransitions.condition(SmsMessageStatusType.PENDING, true)) ;
+	}
+}